@@ -0,0 +1,115 @@
+package ca.klostermann.philip.location_tracker;
+
+/**
+ * Samples less often at balanced power while the device stays within a
+ * small radius for a while, and more often while it moves fast. Speeds
+ * come from the fix if the provider reports one, otherwise from the
+ * displacement between fixes. All decisions use fix timestamps only, so a
+ * recorded sequence of fixes always produces the same decisions.
+ */
+public class AdaptiveSamplingPolicy implements SamplingPolicy {
+    static final int MODE_MOVING = 0;
+    static final int MODE_STATIONARY = 1;
+    static final int MODE_FAST = 2;
+
+    static final long MIN_INTERVAL = 5000;
+    static final long MAX_STATIONARY_INTERVAL = 15 * 60 * 1000;
+    static final long STATIONARY_AFTER = 5 * 60 * 1000;
+    static final double STATIONARY_RADIUS = 50;
+    /* m/s, about 54 km/h to enter and 36 km/h to leave the fast mode */
+    static final float FAST_SPEED = 15;
+    static final float SLOW_SPEED = 10;
+
+    private final long mBaseInterval;
+
+    private int mMode = MODE_MOVING;
+
+    /* where and when the device was last seen moving */
+    private boolean mHasAnchor;
+    private long mAnchorTime;
+    private double mAnchorLatitude;
+    private double mAnchorLongitude;
+
+    private boolean mHasLast;
+    private long mLastTime;
+    private double mLastLatitude;
+    private double mLastLongitude;
+
+    public AdaptiveSamplingPolicy(long baseIntervalMillis) {
+        mBaseInterval = Math.max(MIN_INTERVAL, baseIntervalMillis);
+    }
+
+    @Override
+    public boolean onFix(long time, double latitude, double longitude, float speed, float accuracy) {
+        if (mHasLast && speed <= 0 && time > mLastTime) {
+            speed = (float)(Geo.distance(mLastLatitude, mLastLongitude, latitude, longitude)
+                    * 1000 / (time - mLastTime));
+        }
+        mHasLast = true;
+        mLastTime = time;
+        mLastLatitude = latitude;
+        mLastLongitude = longitude;
+
+        double radius = Math.max(STATIONARY_RADIUS, accuracy);
+        if (!mHasAnchor || Geo.distance(mAnchorLatitude, mAnchorLongitude,
+                latitude, longitude) > radius) {
+            mHasAnchor = true;
+            mAnchorTime = time;
+            mAnchorLatitude = latitude;
+            mAnchorLongitude = longitude;
+        }
+
+        int mode;
+        if (mMode == MODE_FAST ? speed >= SLOW_SPEED : speed >= FAST_SPEED) {
+            mode = MODE_FAST;
+        } else if (time - mAnchorTime >= STATIONARY_AFTER) {
+            mode = MODE_STATIONARY;
+        } else {
+            mode = MODE_MOVING;
+        }
+
+        if (mode == mMode) {
+            return false;
+        }
+        mMode = mode;
+        return true;
+    }
+
+    int getMode() {
+        return mMode;
+    }
+
+    @Override
+    public long getInterval() {
+        switch (mMode) {
+            case MODE_STATIONARY:
+                return Math.max(mBaseInterval, Math.min(mBaseInterval * 4, MAX_STATIONARY_INTERVAL));
+            case MODE_FAST:
+                return Math.max(MIN_INTERVAL, mBaseInterval / 2);
+            default:
+                return mBaseInterval;
+        }
+    }
+
+    @Override
+    public long getFastestInterval() {
+        return MIN_INTERVAL;
+    }
+
+    @Override
+    public int getPriority() {
+        return mMode == MODE_STATIONARY ? PRIORITY_BALANCED_POWER_ACCURACY : PRIORITY_HIGH_ACCURACY;
+    }
+
+    @Override
+    public String describe() {
+        switch (mMode) {
+            case MODE_STATIONARY:
+                return "stationary";
+            case MODE_FAST:
+                return "fast";
+            default:
+                return "moving";
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ca.klostermann.philip.location_tracker;
+
+import com.firebase.client.FirebaseError;
+
+import java.util.Map;
+
+/**
+ * Signs users up and in with a backend, and hands out the sink the signed
+ * in user writes to. Errors are reported as FirebaseError whatever the
+ * backend is, with the codes the login screen knows how to show.
+ * Callbacks run on the main thread.
+ */
+public interface AuthBackend {
+    interface LoginCallback {
+        void onLoggedIn(String uid);
+        void onError(FirebaseError error);
+    }
+
+    interface SignupCallback {
+        void onSignedUp(Map<String, Object> result);
+        void onError(FirebaseError error);
+    }
+
+    void login(String email, String password, LoginCallback callback);
+
+    void signup(String email, String password, SignupCallback callback);
+
+    /* only valid once login() succeeded */
+    LocationSink getSink();
+}
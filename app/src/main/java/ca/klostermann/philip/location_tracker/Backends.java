@@ -0,0 +1,41 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Picks the backend for an endpoint: Firebase for *.firebaseio.com URLs,
+ * otherwise the plain HTTP one. Those need an explicit port (e.g.
+ * http://10.0.2.2:8080 for a stand-in server on the emulator's host) so a
+ * mistyped Firebase URL is not silently taken for one; anything else is
+ * rejected.
+ */
+public final class Backends {
+    private Backends() {}
+
+    public static boolean isFirebase(URL url) {
+        return url.getHost().matches("(?i)^.+?\\.firebaseio.com$");
+    }
+
+    public static boolean isSupported(URL url) {
+        return isFirebase(url) || url.getPort() != -1;
+    }
+
+    /* throws IllegalArgumentException for endpoints isSupported() rejects */
+    public static AuthBackend forEndpoint(String endpoint) {
+        URL url;
+        try {
+            url = new URL(endpoint);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid endpoint " + endpoint, e);
+        }
+        if (isFirebase(url)) {
+            return new FirebaseBackend(endpoint);
+        }
+        if (!isSupported(url)) {
+            throw new IllegalArgumentException("Unsupported endpoint " + endpoint +
+                    ", other servers need an explicit port");
+        }
+        return new HttpBackend(endpoint);
+    }
+}
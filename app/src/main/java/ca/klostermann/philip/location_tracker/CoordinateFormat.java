@@ -0,0 +1,62 @@
+package ca.klostermann.philip.location_tracker;
+
+/**
+ * Formats coordinates like DecimalFormat("#.######") would, rounding half
+ * even, straight into a caller-owned StringBuilder so nothing is allocated
+ * per call.
+ */
+public final class CoordinateFormat {
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L
+    };
+
+    private CoordinateFormat() {}
+
+    /* appends value with at most decimals (0-8) fraction digits, without trailing zeros */
+    public static StringBuilder append(StringBuilder sb, double value, int decimals) {
+        long scale = POW10[decimals];
+        long scaled = roundHalfEven(Math.abs(value), scale);
+        /* the sign stays when it rounds to zero, "-0" */
+        if (Math.copySign(1, value) < 0) {
+            sb.append('-');
+        }
+        sb.append(scaled / scale);
+
+        long fraction = scaled % scale;
+        if (fraction == 0) {
+            return sb;
+        }
+        int digits = decimals;
+        while (fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        sb.append('.');
+        for (long p = POW10[digits - 1]; p > fraction; p /= 10) {
+            sb.append('0');
+        }
+        return sb.append(fraction);
+    }
+
+    /* value * scale rounded half-even, on the exact product like DecimalFormat
+     * does. A double that is half way only may have been rounded there by the
+     * multiplication, its error decides which way to go then */
+    private static long roundHalfEven(double value, long scale) {
+        double product = value * scale;
+        double rounded = Math.rint(product);
+        if (product - Math.floor(product) == 0.5) {
+            /* Dekker's product, value * scale - product exactly */
+            double c = 134217729.0 * value;
+            double vh = c - (c - value), vl = value - vh;
+            c = 134217729.0 * scale;
+            double sh = c - (c - scale), sl = scale - sh;
+            double error = ((vh * sh - product) + vh * sl + vl * sh) + vl * sl;
+            if (error > 0) {
+                rounded = Math.ceil(product);
+            } else if (error < 0) {
+                rounded = Math.floor(product);
+            }
+        }
+        return (long)rounded;
+    }
+}
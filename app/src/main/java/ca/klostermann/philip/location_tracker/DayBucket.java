@@ -0,0 +1,139 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+/**
+ * Maps a time to the start of its day, the date key of the
+ * locations/<uid>/<device>/<dateKey> path. The [start, end) range of the
+ * last day looked up is cached, so the calendar is only consulted again
+ * when a time falls outside of it, which for a live track is once a day
+ * and twice on days the clocks change.
+ * Days may be 23 or 25 hours long across DST changes, and where midnight
+ * happens twice the key is the later one, up to an hour after the day
+ * actually started.
+ */
+public class DayBucket {
+    private static final class Range {
+        final long key;
+        final long start;
+        final long end;
+
+        Range(long key, long start, long end) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+    private static final Range EMPTY = new Range(0, 0, 0);
+
+    private final boolean mLocal;
+    private TimeZone mZone;
+    private Calendar mCalendar;
+    private volatile Range mRange = EMPTY;
+
+    private DayBucket(boolean local, TimeZone zone) {
+        mLocal = local;
+        setTimeZone(zone);
+    }
+
+    /* days start at midnight in the device's time zone */
+    public static DayBucket local() {
+        return new DayBucket(true, TimeZone.getDefault());
+    }
+
+    public static DayBucket utc() {
+        return new DayBucket(false, TimeZone.getTimeZone("UTC"));
+    }
+
+    public static DayBucket forZone(TimeZone zone) {
+        return new DayBucket(false, zone);
+    }
+
+    public long getDateKey(long time) {
+        Range range = mRange;
+        if (time >= range.start && time < range.end) {
+            return range.key;
+        }
+        return compute(time);
+    }
+
+    public boolean isLocal() {
+        return mLocal;
+    }
+
+    public synchronized TimeZone getTimeZone() {
+        return mZone;
+    }
+
+    /* call when the device's time zone changed, only local buckets follow it */
+    public synchronized void onTimeZoneChanged() {
+        if (mLocal) {
+            setTimeZone(TimeZone.getDefault());
+        }
+    }
+
+    private synchronized void setTimeZone(TimeZone zone) {
+        mZone = zone;
+        mCalendar = new GregorianCalendar(zone);
+        mRange = EMPTY;
+    }
+
+    private synchronized long compute(long time) {
+        mCalendar.setTimeInMillis(time);
+        mCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        mCalendar.set(Calendar.MINUTE, 0);
+        mCalendar.set(Calendar.SECOND, 0);
+        mCalendar.set(Calendar.MILLISECOND, 0);
+        long key = mCalendar.getTimeInMillis();
+
+        /* the key only depends on the date on the wall clock, which stays the
+         * same for as long as neither the date under the current offset nor
+         * the offset itself changes */
+        int offset = mZone.getOffset(time);
+        long wall = time + offset;
+        long start = wall - ((wall % DAY) + DAY) % DAY - offset;
+        mRange = new Range(key, offsetSince(start, time, offset),
+                offsetUntil(time, start + DAY, offset));
+        return key;
+    }
+
+    /* the earliest time in [from, time] after which the offset is the one at time */
+    private long offsetSince(long from, long time, int offset) {
+        if (mZone.getOffset(from) == offset) {
+            return from;
+        }
+        long lo = from;
+        long hi = time;
+        while (hi - lo > 1) {
+            long mid = lo + (hi - lo) / 2;
+            if (mZone.getOffset(mid) == offset) {
+                hi = mid;
+            } else {
+                lo = mid;
+            }
+        }
+        return hi;
+    }
+
+    /* the end of [time, to) up to which the offset stays the one at time */
+    private long offsetUntil(long time, long to, int offset) {
+        if (mZone.getOffset(to - 1) == offset) {
+            return to;
+        }
+        long lo = time;
+        long hi = to - 1;
+        while (hi - lo > 1) {
+            long mid = lo + (hi - lo) / 2;
+            if (mZone.getOffset(mid) == offset) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+}
@@ -0,0 +1,75 @@
+package ca.klostermann.philip.location_tracker;
+
+import com.firebase.client.AuthData;
+import com.firebase.client.Firebase;
+import com.firebase.client.FirebaseError;
+
+import java.util.Map;
+
+/**
+ * The Firebase client as backend, writes go through updateChildren() on the
+ * root and keys are push IDs.
+ */
+public class FirebaseBackend implements AuthBackend, LocationSink {
+    private final Firebase mRoot;
+
+    public FirebaseBackend(String endpoint) {
+        mRoot = new Firebase(endpoint);
+    }
+
+    public Firebase getRoot() {
+        return mRoot;
+    }
+
+    @Override
+    public void login(String email, String password, final LoginCallback callback) {
+        mRoot.authWithPassword(email, password, new Firebase.AuthResultHandler() {
+            @Override
+            public void onAuthenticated(AuthData authData) {
+                callback.onLoggedIn(authData.getUid());
+            }
+
+            @Override
+            public void onAuthenticationError(FirebaseError firebaseError) {
+                callback.onError(firebaseError);
+            }
+        });
+    }
+
+    @Override
+    public void signup(String email, String password, final SignupCallback callback) {
+        mRoot.createUser(email, password, new Firebase.ValueResultHandler<Map<String, Object>>() {
+            @Override
+            public void onSuccess(Map<String, Object> result) {
+                callback.onSignedUp(result);
+            }
+
+            @Override
+            public void onError(FirebaseError firebaseError) {
+                callback.onError(firebaseError);
+            }
+        });
+    }
+
+    @Override
+    public LocationSink getSink() {
+        return this;
+    }
+
+    @Override
+    public void write(Map<String, Object> updates, final Callback callback) {
+        mRoot.updateChildren(updates, new Firebase.CompletionListener() {
+            @Override
+            public void onComplete(FirebaseError firebaseError, Firebase firebase) {
+                if (callback != null) {
+                    callback.onComplete(firebaseError != null ? firebaseError.getMessage() : null);
+                }
+            }
+        });
+    }
+
+    @Override
+    public String newKey() {
+        return mRoot.push().getKey();
+    }
+}
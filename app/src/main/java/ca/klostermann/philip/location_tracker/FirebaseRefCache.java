@@ -0,0 +1,132 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.provider.Settings;
+
+import com.firebase.client.Firebase;
+
+/**
+ * The references and paths a signed in device writes to, resolved once per
+ * session instead of per fix. The device ID is read from Settings.Secure
+ * once. Location writes are multi-path updates from the root, so for those
+ * the current day's path is cached and rebuilt when a post falls into
+ * another day.
+ *
+ * The stats compare this with resolving per use, as the service did
+ * before: a device ID lookup and a child() for every location post,
+ * geofence event and device write.
+ *
+ * The root is null for backends other than Firebase, there are no
+ * references to listen to then and only the paths are available.
+ */
+public class FirebaseRefCache {
+    private final LocationSink mSink;
+    private final Firebase mRoot;
+    private final String mUserId;
+    private final String mDeviceId;
+    private final String mDevicePath;
+    private final Firebase mGeofencesRef;
+    private final String mGeofenceEventsPath;
+    private final String mLocationsPath;
+    private final String mBatchesPath;
+
+    private long mDayKey = -1;
+    private String mDayPath;
+    private long mBatchDayKey = -1;
+    private String mBatchDayPath;
+
+    private final long mCreatedAt = SystemClock.elapsedRealtime();
+    private long mResolverCalls;
+    private long mRefsResolved;
+    private long mPathsServed;
+    private long mDayRollovers;
+    /* what resolving per use would have cost, one lookup and one child() each */
+    private long mUncachedLookups;
+
+    public FirebaseRefCache(Context context, LocationSink sink, Firebase root, String userId) {
+        mSink = sink;
+        mRoot = root;
+        mUserId = userId;
+        mDeviceId = Settings.Secure.getString(context.getContentResolver(),
+                Settings.Secure.ANDROID_ID);
+        mResolverCalls++;
+
+        mDevicePath = "devices/" + userId + "/" + mDeviceId + "/";
+        mGeofencesRef = root != null ? resolve("geofences/" + userId) : null;
+        mGeofenceEventsPath = "geofence_events/" + userId + "/" + mDeviceId + "/";
+        mLocationsPath = "locations/" + userId + "/" + mDeviceId + "/";
+        mBatchesPath = "location_batches/" + userId + "/" + mDeviceId + "/";
+    }
+
+    public Firebase getRoot() {
+        return mRoot;
+    }
+
+    public String getUserId() {
+        return mUserId;
+    }
+
+    public String getDeviceId() {
+        return mDeviceId;
+    }
+
+    public LocationSink getSink() {
+        return mSink;
+    }
+
+    /* devices/<uid>/<device>/, relative to the root */
+    public synchronized String getDevicePath() {
+        mUncachedLookups++;
+        return mDevicePath;
+    }
+
+    /* geofences/<uid>, null without a Firebase root */
+    public Firebase getGeofencesRef() {
+        return mGeofencesRef;
+    }
+
+    /* geofence_events/<uid>/<device>/, relative to the root */
+    public synchronized String getGeofenceEventsPath() {
+        mUncachedLookups++;
+        return mGeofenceEventsPath;
+    }
+
+    /* locations/<uid>/<device>/<dateKey>/, relative to the root */
+    public synchronized String getDayPath(long dateKey) {
+        mPathsServed++;
+        mUncachedLookups++;
+        if (dateKey != mDayKey) {
+            mDayPath = mLocationsPath + dateKey + "/";
+            mDayKey = dateKey;
+            mDayRollovers++;
+        }
+        return mDayPath;
+    }
+
+    /* location_batches/<uid>/<device>/<dateKey>/, relative to the root, for a batch of posts */
+    public synchronized String getBatchDayPath(long dateKey, int posts) {
+        mPathsServed++;
+        mUncachedLookups += posts;
+        if (dateKey != mBatchDayKey) {
+            mBatchDayPath = mBatchesPath + dateKey + "/";
+            mBatchDayKey = dateKey;
+            mDayRollovers++;
+        }
+        return mBatchDayPath;
+    }
+
+    public synchronized String getStats() {
+        double hours = Math.max(1, SystemClock.elapsedRealtime() - mCreatedAt) / 3600000.0;
+        return mResolverCalls + " device ID lookups (" +
+                String.format("%.2f", mResolverCalls / hours) + "/h) and " + mRefsResolved +
+                " refs resolved, resolving per use: " + mUncachedLookups + " of each (" +
+                String.format("%.2f", mUncachedLookups / hours) + "/h); " + mDayRollovers +
+                " day paths built for " + mPathsServed + " writes";
+    }
+
+    private Firebase resolve(String path) {
+        mRefsResolved++;
+        return mRoot.child(path);
+    }
+}
@@ -0,0 +1,211 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.location.Location;
+
+/**
+ * Decides what becomes of a fix on the pipeline thread. The Kalman filter
+ * drops implausible jumps and smooths the rest. The sampling policy and
+ * the geofences see every filtered fix. Fixes that moved less than their
+ * accuracy since the last reported one are dropped, the others become
+ * posts that go through the simplifier. Side effects are left to the
+ * listener, so the same logic runs in the service and in the replay
+ * harness of the benchmarks module.
+ *
+ * Not thread safe, only use it from the pipeline thread. With profiling
+ * on, the time spent in each stage is added up in getStageNanos(); with
+ * metrics set, each stage of each fix is recorded in a histogram.
+ */
+public class FixProcessor {
+    public static final int STAGE_FILTER = 0;
+    public static final int STAGE_SAMPLING = 1;
+    public static final int STAGE_GEOFENCES = 2;
+    /* movement check, post and the listener's onReported() */
+    public static final int STAGE_REPORT = 3;
+    /* simplifier and the listener's onKept() */
+    public static final int STAGE_SIMPLIFY = 4;
+    public static final int STAGE_COUNT = 5;
+
+    public interface Listener {
+        void onSamplingChanged();
+        /* a fix that moved far enough, before it goes through the simplifier */
+        void onReported(LocationPost post);
+        /* a post the simplifier kept, to be queued for upload */
+        void onKept(LocationPost post);
+    }
+
+    private final LocationKalmanFilter mKalmanFilter;
+    private final SamplingPolicy mSamplingPolicy;
+    private final GeofenceEngine mGeofenceEngine;
+    private final TrajectorySimplifier mSimplifier;
+    private final Listener mListener;
+
+    /* reused for every fix */
+    private final Location mFiltered = new Location("kalman");
+    private Location mLastReported;
+
+    private long[] mStageNanos;
+    private Metrics.Histogram[] mStageHistograms;
+
+    private long mFixes;
+    private long mRejected;
+    private long mUnchanged;
+    private long mReported;
+    private long mKept;
+
+    public FixProcessor(LocationKalmanFilter kalmanFilter, SamplingPolicy samplingPolicy,
+                        GeofenceEngine geofenceEngine, TrajectorySimplifier simplifier,
+                        Listener listener) {
+        mKalmanFilter = kalmanFilter;
+        mSamplingPolicy = samplingPolicy;
+        mGeofenceEngine = geofenceEngine;
+        mSimplifier = simplifier;
+        mListener = listener;
+    }
+
+    public void setProfiling(boolean profiling) {
+        mStageNanos = profiling ? new long[STAGE_COUNT] : null;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        if (metrics == null) {
+            mStageHistograms = null;
+            return;
+        }
+        mStageHistograms = new Metrics.Histogram[] {
+                metrics.histogram("fix.filter"),
+                metrics.histogram("fix.sampling"),
+                metrics.histogram("fix.geofences"),
+                metrics.histogram("fix.report"),
+                metrics.histogram("fix.simplify")
+        };
+    }
+
+    /* nanoseconds spent per stage since profiling was turned on, or null */
+    public long[] getStageNanos() {
+        return mStageNanos;
+    }
+
+    /* returns true if the fix was reported and went to the simplifier */
+    public boolean process(Location location) {
+        mFixes++;
+        long t = timing() ? System.nanoTime() : 0;
+
+        /* smooth the fix and drop physically implausible jumps */
+        if (!mKalmanFilter.update(location.getTime(), location.getLatitude(),
+                location.getLongitude(), location.getAccuracy())) {
+            mRejected++;
+            lap(STAGE_FILTER, t);
+            return false;
+        }
+        Location filtered = mFiltered;
+        filtered.set(location);
+        filtered.setLatitude(mKalmanFilter.getLatitude());
+        filtered.setLongitude(mKalmanFilter.getLongitude());
+        filtered.setAccuracy(Math.min(location.getAccuracy(), mKalmanFilter.getAccuracy()));
+        if (!location.hasSpeed()) {
+            filtered.setSpeed(mKalmanFilter.getSpeed());
+        }
+        location = filtered;
+        t = lap(STAGE_FILTER, t);
+
+        if (mSamplingPolicy.onFix(location.getTime(), location.getLatitude(),
+                location.getLongitude(), location.getSpeed(), location.getAccuracy())) {
+            mListener.onSamplingChanged();
+        }
+        t = lap(STAGE_SAMPLING, t);
+
+        /* before the movement check, dwelling is about not moving */
+        mGeofenceEngine.onFix(location.getTime(), location.getLatitude(),
+                location.getLongitude(), location.getAccuracy());
+        t = lap(STAGE_GEOFENCES, t);
+
+        if (mLastReported != null) {
+            float accuracy = Math.max(location.getAccuracy(), mLastReported.getAccuracy());
+            if (mLastReported.distanceTo(location) < accuracy) {
+                mUnchanged++;
+                lap(STAGE_REPORT, t);
+                return false;
+            }
+        }
+
+        LocationPost post = LocationPost.obtain(location);
+        if (mLastReported == null) {
+            mLastReported = new Location(location);
+        } else {
+            mLastReported.set(location);
+        }
+        mReported++;
+        mListener.onReported(post);
+        t = lap(STAGE_REPORT, t);
+
+        /* the simplifier owns the post from here on */
+        LocationPost kept = mSimplifier.offer(post);
+        if (kept != null) {
+            mKept++;
+            mListener.onKept(kept);
+        }
+        lap(STAGE_SIMPLIFY, t);
+        return true;
+    }
+
+    /* true if the simplifier holds back a post that flushHeld() would release */
+    public boolean hasHeld() {
+        return mSimplifier.hasHeld();
+    }
+
+    /* no new fix arrived for a while, or we're stopping */
+    public void flushHeld() {
+        LocationPost held = mSimplifier.flush();
+        if (held != null) {
+            mKept++;
+            mListener.onKept(held);
+        }
+    }
+
+    public TrajectorySimplifier getSimplifier() {
+        return mSimplifier;
+    }
+
+    public long getFixes() {
+        return mFixes;
+    }
+
+    public long getRejected() {
+        return mRejected;
+    }
+
+    public long getUnchanged() {
+        return mUnchanged;
+    }
+
+    public long getReported() {
+        return mReported;
+    }
+
+    public long getKept() {
+        return mKept;
+    }
+
+    public String getStats() {
+        return mFixes + " fixes, " + mRejected + " rejected, " + mUnchanged + " not moved, " +
+                mReported + " reported, " + mKept + " kept";
+    }
+
+    private boolean timing() {
+        return mStageNanos != null || mStageHistograms != null;
+    }
+
+    private long lap(int stage, long start) {
+        if (!timing()) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (mStageNanos != null) {
+            mStageNanos[stage] += now - start;
+        }
+        if (mStageHistograms != null) {
+            mStageHistograms[stage].recordNanos(now - start);
+        }
+        return now;
+    }
+}
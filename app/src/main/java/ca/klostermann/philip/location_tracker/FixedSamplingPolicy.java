@@ -0,0 +1,35 @@
+package ca.klostermann.philip.location_tracker;
+
+/* always samples at the interval picked in the update frequency spinner */
+public class FixedSamplingPolicy implements SamplingPolicy {
+    private final long mInterval;
+
+    public FixedSamplingPolicy(long intervalMillis) {
+        mInterval = intervalMillis;
+    }
+
+    @Override
+    public boolean onFix(long time, double latitude, double longitude, float speed, float accuracy) {
+        return false;
+    }
+
+    @Override
+    public long getInterval() {
+        return mInterval;
+    }
+
+    @Override
+    public long getFastestInterval() {
+        return 5000;
+    }
+
+    @Override
+    public int getPriority() {
+        return PRIORITY_HIGH_ACCURACY;
+    }
+
+    @Override
+    public String describe() {
+        return "fixed";
+    }
+}
@@ -0,0 +1,18 @@
+package ca.klostermann.philip.location_tracker;
+
+public final class Geo {
+    public static final double EARTH_RADIUS = 6371008.8;
+    public static final double METERS_PER_DEGREE_LAT = EARTH_RADIUS * Math.PI / 180;
+
+    private Geo() {}
+
+    /* great circle distance in meters */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,117 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Binary geohash: longitude and latitude bits interleaved (longitude
+ * first) into a long, so cells sharing a prefix are close to each other
+ * and a cell at a coarser precision covers one contiguous range of hashes
+ * at a finer one.
+ */
+public final class GeoHash {
+    private GeoHash() {}
+
+    public static long encode(double latitude, double longitude, int bits) {
+        int lonBits = (bits + 1) / 2;
+        int latBits = bits / 2;
+        return interleave(cell(longitude, -180, 360, lonBits), cell(latitude, -90, 180, latBits),
+                lonBits, latBits);
+    }
+
+    /**
+     * Sorted, non-overlapping [start, end) ranges of hashes at the given
+     * precision whose cells cover the bounding box. The covering cells are
+     * taken at the finest level that needs no more than maxCells of them.
+     * A box with minLon > maxLon crosses the anti-meridian and is covered as
+     * its two halves on either side of it.
+     */
+    public static List<long[]> coveringRanges(double minLat, double minLon, double maxLat,
+                                              double maxLon, int bits, int maxCells) {
+        if (minLon <= maxLon) {
+            return cover(minLat, minLon, maxLat, maxLon, bits, maxCells);
+        }
+        List<long[]> ranges = cover(minLat, -180, maxLat, maxLon, bits, maxCells / 2);
+        ranges.addAll(cover(minLat, minLon, maxLat, 180, bits, maxCells - maxCells / 2));
+        return merge(ranges);
+    }
+
+    private static List<long[]> cover(double minLat, double minLon, double maxLat,
+                                      double maxLon, int bits, int maxCells) {
+        int level = bits;
+        while (level > 0 && cellCount(minLat, minLon, maxLat, maxLon, level) > maxCells) {
+            level--;
+        }
+
+        int lonBits = (level + 1) / 2;
+        int latBits = level / 2;
+        long x0 = cell(minLon, -180, 360, lonBits), x1 = cell(maxLon, -180, 360, lonBits);
+        long y0 = cell(minLat, -90, 180, latBits), y1 = cell(maxLat, -90, 180, latBits);
+
+        long[] cells = new long[(int)((x1 - x0 + 1) * (y1 - y0 + 1))];
+        int n = 0;
+        for (long x = x0; x <= x1; x++) {
+            for (long y = y0; y <= y1; y++) {
+                cells[n++] = interleave(x, y, lonBits, latBits);
+            }
+        }
+        Arrays.sort(cells);
+
+        int shift = bits - level;
+        List<long[]> ranges = new ArrayList<>();
+        for (long c : cells) {
+            ranges.add(new long[] {c << shift, (c + 1) << shift});
+        }
+        return merge(ranges);
+    }
+
+    /* sorts the ranges and joins those that touch or overlap */
+    private static List<long[]> merge(List<long[]> ranges) {
+        Collections.sort(ranges, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        List<long[]> merged = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && last[1] >= range[0]) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        return merged;
+    }
+
+    private static long cellCount(double minLat, double minLon, double maxLat, double maxLon,
+                                  int level) {
+        int lonBits = (level + 1) / 2;
+        int latBits = level / 2;
+        return (cell(maxLon, -180, 360, lonBits) - cell(minLon, -180, 360, lonBits) + 1)
+                * (cell(maxLat, -90, 180, latBits) - cell(minLat, -90, 180, latBits) + 1);
+    }
+
+    private static long cell(double value, double min, double range, int bits) {
+        long cells = 1L << bits;
+        long c = (long)Math.floor((value - min) / range * cells);
+        return Math.max(0, Math.min(cells - 1, c));
+    }
+
+    private static long interleave(long x, long y, int lonBits, int latBits) {
+        long hash = 0;
+        int xi = lonBits, yi = latBits;
+        for (int k = 0; k < lonBits + latBits; k++) {
+            if (k % 2 == 0) {
+                hash = (hash << 1) | ((x >>> --xi) & 1);
+            } else {
+                hash = (hash << 1) | ((y >>> --yi) & 1);
+            }
+        }
+        return hash;
+    }
+}
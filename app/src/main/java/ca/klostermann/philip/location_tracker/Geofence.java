@@ -0,0 +1,190 @@
+package ca.klostermann.philip.location_tracker;
+
+import com.firebase.client.DataSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A circular or polygonal area, as stored under geofences/<uid>/<id>:
+ * {type: "circle", latitude, longitude, radius} or
+ * {type: "polygon", points: [{latitude, longitude}, ...]}, both with an
+ * optional dwell time in seconds.
+ */
+public class Geofence {
+    public static final String TYPE_CIRCLE = "circle";
+    public static final String TYPE_POLYGON = "polygon";
+
+    private static final int DEPTH_GRID = 16;
+
+    public final String id;
+    public final long dwellMillis;
+
+    /* circle */
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mRadius;
+
+    /* polygon, null for circles */
+    private final double[] mLatitudes;
+    private final double[] mLongitudes;
+
+    /* bounding box, in degrees */
+    final double minLat, minLon, maxLat, maxLon;
+    /* how far inside the fence a fix can get, in meters, estimated for polygons */
+    final double depth;
+
+    private Geofence(String id, long dwellMillis, double latitude, double longitude,
+                     double radius, double[] latitudes, double[] longitudes) {
+        this.id = id;
+        this.dwellMillis = dwellMillis;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mRadius = radius;
+        mLatitudes = latitudes;
+        mLongitudes = longitudes;
+
+        if (latitudes == null) {
+            double dLat = radius / Geo.METERS_PER_DEGREE_LAT;
+            double dLon = radius / metersPerDegreeLon(latitude);
+            minLat = latitude - dLat;
+            maxLat = latitude + dLat;
+            minLon = longitude - dLon;
+            maxLon = longitude + dLon;
+        } else {
+            double lat0 = latitudes[0], lat1 = latitudes[0];
+            double lon0 = longitudes[0], lon1 = longitudes[0];
+            for (int i = 1; i < latitudes.length; i++) {
+                lat0 = Math.min(lat0, latitudes[i]);
+                lat1 = Math.max(lat1, latitudes[i]);
+                lon0 = Math.min(lon0, longitudes[i]);
+                lon1 = Math.max(lon1, longitudes[i]);
+            }
+            minLat = lat0;
+            maxLat = lat1;
+            minLon = lon0;
+            maxLon = lon1;
+        }
+        depth = latitudes == null ? radius : deepestPoint();
+    }
+
+    public static Geofence circle(String id, double latitude, double longitude, double radius,
+                                  long dwellMillis) {
+        return new Geofence(id, dwellMillis, latitude, longitude, radius, null, null);
+    }
+
+    public static Geofence polygon(String id, double[] latitudes, double[] longitudes,
+                                   long dwellMillis) {
+        if (latitudes.length < 3 || latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("A polygon needs at least 3 points");
+        }
+        return new Geofence(id, dwellMillis, 0, 0, 0, latitudes.clone(), longitudes.clone());
+    }
+
+    /* returns null if the snapshot does not describe a valid fence */
+    public static Geofence fromSnapshot(DataSnapshot snapshot) {
+        String type = String.valueOf(snapshot.child("type").getValue());
+        long dwell = (long)(number(snapshot.child("dwell"), 0) * 1000);
+
+        if (TYPE_CIRCLE.equals(type)) {
+            double radius = number(snapshot.child("radius"), -1);
+            if (radius <= 0) {
+                return null;
+            }
+            return circle(snapshot.getKey(), number(snapshot.child("latitude"), 0),
+                    number(snapshot.child("longitude"), 0), radius, dwell);
+        }
+
+        if (TYPE_POLYGON.equals(type)) {
+            List<double[]> points = new ArrayList<>();
+            for (DataSnapshot point : snapshot.child("points").getChildren()) {
+                points.add(new double[] {number(point.child("latitude"), 0),
+                        number(point.child("longitude"), 0)});
+            }
+            if (points.size() < 3) {
+                return null;
+            }
+            double[] latitudes = new double[points.size()];
+            double[] longitudes = new double[points.size()];
+            for (int i = 0; i < latitudes.length; i++) {
+                latitudes[i] = points.get(i)[0];
+                longitudes[i] = points.get(i)[1];
+            }
+            return polygon(snapshot.getKey(), latitudes, longitudes, dwell);
+        }
+        return null;
+    }
+
+    /**
+     * Signed distance from the boundary in meters, negative inside the
+     * fence. Polygons are measured in a local flat projection, which is
+     * fine for fences up to a few tens of kilometers across.
+     */
+    public double distance(double latitude, double longitude) {
+        if (mLatitudes == null) {
+            return Geo.distance(latitude, longitude, mLatitude, mLongitude) - mRadius;
+        }
+
+        /* project the vertices around the point, so it sits at the origin */
+        double kx = metersPerDegreeLon(latitude);
+        double ky = Geo.METERS_PER_DEGREE_LAT;
+        int n = mLatitudes.length;
+        boolean inside = false;
+        double best = Double.MAX_VALUE;
+        double ax = (mLongitudes[n - 1] - longitude) * kx;
+        double ay = (mLatitudes[n - 1] - latitude) * ky;
+        for (int i = 0; i < n; i++) {
+            double bx = (mLongitudes[i] - longitude) * kx;
+            double by = (mLatitudes[i] - latitude) * ky;
+
+            if ((ay > 0) != (by > 0) && 0 < ax + (bx - ax) * (0 - ay) / (by - ay)) {
+                inside = !inside;
+            }
+
+            /* distance from the origin to segment a-b */
+            double dx = bx - ax, dy = by - ay;
+            double len = dx * dx + dy * dy;
+            double t = len == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / len));
+            double px = ax + t * dx, py = ay + t * dy;
+            best = Math.min(best, px * px + py * py);
+
+            ax = bx;
+            ay = by;
+        }
+        best = Math.sqrt(best);
+        return inside ? -best : best;
+    }
+
+    /* the deepest of a grid of points over the bounding box, at least the
+     * polygon's inradius less the grid spacing */
+    private double deepestPoint() {
+        double deepest = 0;
+        for (int i = 1; i < DEPTH_GRID; i++) {
+            double latitude = minLat + (maxLat - minLat) * i / DEPTH_GRID;
+            for (int j = 1; j < DEPTH_GRID; j++) {
+                double longitude = minLon + (maxLon - minLon) * j / DEPTH_GRID;
+                deepest = Math.max(deepest, -distance(latitude, longitude));
+            }
+        }
+        return deepest;
+    }
+
+    private static double metersPerDegreeLon(double latitude) {
+        return Geo.METERS_PER_DEGREE_LAT * Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+    }
+
+    private static double number(DataSnapshot snapshot, double def) {
+        Object value = snapshot.getValue();
+        if (value instanceof Number) {
+            return ((Number)value).doubleValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Double.parseDouble((String)value);
+            } catch (NumberFormatException e) {
+                return def;
+            }
+        }
+        return def;
+    }
+}
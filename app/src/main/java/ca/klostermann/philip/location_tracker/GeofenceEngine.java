@@ -0,0 +1,138 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks which fences the device is in and reports enter, exit and dwell
+ * events. Each fix is tested against the fences the grid index returns for
+ * its cell plus the fences we are currently in, never all of them. To
+ * avoid flapping on a boundary a fence is only entered once the fix is
+ * more than the hysteresis margin inside it, and only left once the fix is
+ * more than the margin outside; the margin grows with the fix accuracy.
+ * For entering it is at most half of how deep the fence is, so that small
+ * fences can still be entered with poor fixes.
+ * Not thread safe, use it from the pipeline thread only.
+ */
+public class GeofenceEngine {
+    public static final String EVENT_ENTER = "enter";
+    public static final String EVENT_EXIT = "exit";
+    public static final String EVENT_DWELL = "dwell";
+
+    static final double MIN_HYSTERESIS = 10;
+    static final double MAX_HYSTERESIS = 100;
+
+    public interface Listener {
+        void onGeofenceEvent(Geofence fence, String event, long time, double latitude,
+                             double longitude);
+    }
+
+    private final Listener mListener;
+
+    private Geofence[] mFences = new Geofence[0];
+    private GeofenceIndex mIndex = new GeofenceIndex(mFences);
+    private long[] mEnteredAt = new long[0];
+    private boolean[] mDwelled = new boolean[0];
+    /* fences we are in, mInsideCount entries of mInside are valid */
+    private int[] mInside = new int[0];
+    private int mInsideCount;
+    /* fix number each fence was last tested for, so none is tested twice */
+    private long[] mTestedAt = new long[0];
+
+    private long mFixes;
+    private long mTests;
+
+    public GeofenceEngine(Listener listener) {
+        mListener = listener;
+    }
+
+    /* replaces the fences, keeping the state of fences with the same id */
+    public void setFences(List<Geofence> fences) {
+        Map<String, Integer> previous = new HashMap<>();
+        for (int i = 0; i < mInsideCount; i++) {
+            previous.put(mFences[mInside[i]].id, mInside[i]);
+        }
+
+        Geofence[] array = fences.toArray(new Geofence[fences.size()]);
+        long[] enteredAt = new long[array.length];
+        boolean[] dwelled = new boolean[array.length];
+        int[] inside = new int[array.length];
+        int insideCount = 0;
+        for (int i = 0; i < array.length; i++) {
+            Integer old = previous.get(array[i].id);
+            if (old != null) {
+                enteredAt[i] = mEnteredAt[old];
+                dwelled[i] = mDwelled[old];
+                inside[insideCount++] = i;
+            }
+        }
+
+        mFences = array;
+        mIndex = new GeofenceIndex(array);
+        mEnteredAt = enteredAt;
+        mDwelled = dwelled;
+        mInside = inside;
+        mInsideCount = insideCount;
+        mTestedAt = new long[array.length];
+    }
+
+    public void onFix(long time, double latitude, double longitude, float accuracy) {
+        double margin = Math.max(MIN_HYSTERESIS, Math.min(MAX_HYSTERESIS, accuracy));
+        long fix = ++mFixes;
+
+        /* the fences we are in first, to notice leaving them */
+        for (int i = mInsideCount - 1; i >= 0; i--) {
+            int f = mInside[i];
+            mTestedAt[f] = fix;
+            mTests++;
+            Geofence fence = mFences[f];
+            if (fence.distance(latitude, longitude) > margin) {
+                mInside[i] = mInside[--mInsideCount];
+                mListener.onGeofenceEvent(fence, EVENT_EXIT, time, latitude, longitude);
+            } else if (!mDwelled[f] && fence.dwellMillis > 0
+                    && time - mEnteredAt[f] >= fence.dwellMillis) {
+                mDwelled[f] = true;
+                mListener.onGeofenceEvent(fence, EVENT_DWELL, time, latitude, longitude);
+            }
+        }
+
+        testForEnter(mIndex.candidates(latitude, longitude), fix, time, latitude, longitude, margin);
+        testForEnter(mIndex.large(), fix, time, latitude, longitude, margin);
+    }
+
+    public int getFenceCount() {
+        return mFences.length;
+    }
+
+    public int getInsideCount() {
+        return mInsideCount;
+    }
+
+    /* average number of fences tested per fix */
+    public double getTestsPerFix() {
+        return mFixes == 0 ? 0 : (double)mTests / mFixes;
+    }
+
+    private void testForEnter(int[] candidates, long fix, long time, double latitude,
+                              double longitude, double margin) {
+        for (int f : candidates) {
+            if (mTestedAt[f] == fix) {
+                continue;
+            }
+            mTestedAt[f] = fix;
+            Geofence fence = mFences[f];
+            if (latitude < fence.minLat || latitude > fence.maxLat
+                    || longitude < fence.minLon || longitude > fence.maxLon) {
+                continue;
+            }
+            mTests++;
+            if (fence.distance(latitude, longitude) < -Math.min(margin, fence.depth / 2)) {
+                mInside[mInsideCount++] = f;
+                mEnteredAt[f] = time;
+                mDwelled[f] = false;
+                mListener.onGeofenceEvent(fence, EVENT_ENTER, time, latitude, longitude);
+            }
+        }
+    }
+}
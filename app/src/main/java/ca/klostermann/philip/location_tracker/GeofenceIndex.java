@@ -0,0 +1,110 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform grid over the fences' bounding boxes, so a fix only has to be
+ * tested against the fences whose box touches its cell. Fences covering
+ * more than MAX_CELLS_PER_FENCE cells are not gridded but tested for every
+ * fix; there should be few of those. Immutable once built.
+ *
+ * The cells are kept in an open addressing table keyed by primitive longs,
+ * so looking up a fix's cell allocates nothing.
+ */
+public class GeofenceIndex {
+    /* roughly 1 km north-south */
+    static final double CELL_DEGREES = 0.01;
+    static final int MAX_CELLS_PER_FENCE = 1024;
+
+    private static final int[] NONE = new int[0];
+
+    /* linear probing, at most half full, a null value is an empty slot */
+    private final long[] mKeys;
+    private final int[][] mValues;
+    private final int mMask;
+    private final int mCellCount;
+    private final int[] mLarge;
+
+    public GeofenceIndex(Geofence[] fences) {
+        Map<Long, List<Integer>> cells = new HashMap<>();
+        List<Integer> large = new ArrayList<>();
+
+        for (int i = 0; i < fences.length; i++) {
+            Geofence fence = fences[i];
+            int x0 = cell(fence.minLon), x1 = cell(fence.maxLon);
+            int y0 = cell(fence.minLat), y1 = cell(fence.maxLat);
+            if ((long)(x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS_PER_FENCE) {
+                large.add(i);
+                continue;
+            }
+            for (int x = x0; x <= x1; x++) {
+                for (int y = y0; y <= y1; y++) {
+                    List<Integer> list = cells.get(key(x, y));
+                    if (list == null) {
+                        list = new ArrayList<>(4);
+                        cells.put(key(x, y), list);
+                    }
+                    list.add(i);
+                }
+            }
+        }
+
+        int capacity = Integer.highestOneBit(Math.max(1, cells.size() * 2 - 1)) << 1;
+        mKeys = new long[capacity];
+        mValues = new int[capacity][];
+        mMask = capacity - 1;
+        mCellCount = cells.size();
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            int slot = slot(entry.getKey());
+            while (mValues[slot] != null) {
+                slot = (slot + 1) & mMask;
+            }
+            mKeys[slot] = entry.getKey();
+            mValues[slot] = toArray(entry.getValue());
+        }
+        mLarge = toArray(large);
+    }
+
+    /* fences whose box may contain the point, the array must not be modified */
+    public int[] candidates(double latitude, double longitude) {
+        long key = key(cell(longitude), cell(latitude));
+        for (int slot = slot(key); mValues[slot] != null; slot = (slot + 1) & mMask) {
+            if (mKeys[slot] == key) {
+                return mValues[slot];
+            }
+        }
+        return NONE;
+    }
+
+    /* fences that have to be tested for every point */
+    public int[] large() {
+        return mLarge;
+    }
+
+    public int getCellCount() {
+        return mCellCount;
+    }
+
+    private static int cell(double degrees) {
+        return (int)Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long key(int x, int y) {
+        return ((long)y << 32) | (x & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> 32) & mMask;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
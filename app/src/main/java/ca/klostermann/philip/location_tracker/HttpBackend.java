@@ -0,0 +1,305 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.firebase.client.FirebaseError;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plain HTTP backend, spoken by the load test stand-in server (see the
+ * loadtest module), so the upload path can be measured without a Firebase
+ * project. All requests are JSON POSTs:
+ *
+ *   /auth/signup {email, password} -> {uid}
+ *   /auth/login  {email, password} -> {uid, token}
+ *   /update      {path: value, ...} -> {}, with "Authorization: Bearer token"
+ *
+ * Failures answer with {"error": {"code", "message"}}, code being the name
+ * of the FirebaseError constant. Requests run one at a time in order on a
+ * background thread that exits when idle.
+ */
+public class HttpBackend implements AuthBackend, LocationSink {
+    private static final String TAG = "LocationTracker/Http";
+
+    private static final int TIMEOUT = 15 * 1000;
+
+    private final String mEndpoint;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Executor mExecutor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+    private final PushIds mPushIds = new PushIds();
+
+    private volatile String mToken;
+
+    public HttpBackend(String endpoint) {
+        mEndpoint = endpoint.endsWith("/")
+                ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+    }
+
+    @Override
+    public void login(String email, String password, final LoginCallback callback) {
+        request("/auth/login", credentials(email, password), new Response() {
+            @Override
+            void onSuccess(JSONObject json) {
+                String uid = json.optString("uid", null);
+                String token = json.optString("token", null);
+                if (uid == null || token == null) {
+                    onError(new FirebaseError(FirebaseError.OPERATION_FAILED,
+                            "Malformed login response"));
+                    return;
+                }
+                mToken = token;
+                callback.onLoggedIn(uid);
+            }
+
+            @Override
+            void onError(FirebaseError error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    @Override
+    public void signup(String email, String password, final SignupCallback callback) {
+        request("/auth/signup", credentials(email, password), new Response() {
+            @Override
+            void onSuccess(JSONObject json) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("uid", json.optString("uid", null));
+                callback.onSignedUp(result);
+            }
+
+            @Override
+            void onError(FirebaseError error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    @Override
+    public LocationSink getSink() {
+        return this;
+    }
+
+    @Override
+    public void write(Map<String, Object> updates, final Callback callback) {
+        JSONObject body;
+        try {
+            body = toJson(updates);
+        } catch (JSONException e) {
+            if (callback != null) {
+                callback.onComplete(e.toString());
+            }
+            return;
+        }
+        request("/update", body, new Response() {
+            @Override
+            void onSuccess(JSONObject json) {
+                if (callback != null) {
+                    callback.onComplete(null);
+                }
+            }
+
+            @Override
+            void onError(FirebaseError error) {
+                if (callback != null) {
+                    callback.onComplete(error.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    public String newKey() {
+        return mPushIds.next(System.currentTimeMillis());
+    }
+
+    private abstract static class Response {
+        abstract void onSuccess(JSONObject json);
+        abstract void onError(FirebaseError error);
+    }
+
+    private void request(final String path, final JSONObject body, final Response response) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                JSONObject json;
+                FirebaseError error;
+                try {
+                    json = post(path, body.toString());
+                    error = toError(json);
+                } catch (IOException | JSONException e) {
+                    Log.e(TAG, "POST " + path + " failed: " + e);
+                    json = null;
+                    error = new FirebaseError(FirebaseError.NETWORK_ERROR, e.toString());
+                }
+                final JSONObject result = json;
+                final FirebaseError failure = error;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failure != null) {
+                            response.onError(failure);
+                        } else {
+                            response.onSuccess(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private JSONObject post(String path, String body) throws IOException, JSONException {
+        HttpURLConnection connection =
+                (HttpURLConnection)new URL(mEndpoint + path).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            String token = mToken;
+            if (token != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + token);
+            }
+
+            byte[] bytes = body.getBytes("UTF-8");
+            connection.setFixedLengthStreamingMode(bytes.length);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream()
+                    : connection.getErrorStream();
+            String response = in != null ? readFully(in) : "";
+            if (response.isEmpty()) {
+                throw new IOException("HTTP " + status + " without a body");
+            }
+            return new JSONObject(response);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static JSONObject credentials(String email, String password) {
+        JSONObject json = new JSONObject();
+        try {
+            json.put("email", email);
+            json.put("password", password);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        return json;
+    }
+
+    /* JSONObject(Map) doesn't convert nested maps on older Android versions */
+    @SuppressWarnings("unchecked")
+    private static JSONObject toJson(Map<String, Object> map) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            Object value = entry.getValue();
+            json.put(entry.getKey(),
+                    value instanceof Map ? toJson((Map<String, Object>)value) : value);
+        }
+        return json;
+    }
+
+    private static FirebaseError toError(JSONObject json) {
+        JSONObject error = json.optJSONObject("error");
+        if (error == null) {
+            return null;
+        }
+        String code = error.optString("code", "");
+        String message = error.optString("message", code);
+        switch (code) {
+            case "EMAIL_TAKEN":
+                return new FirebaseError(FirebaseError.EMAIL_TAKEN, message);
+            case "INVALID_EMAIL":
+                return new FirebaseError(FirebaseError.INVALID_EMAIL, message);
+            case "USER_DOES_NOT_EXIST":
+                return new FirebaseError(FirebaseError.USER_DOES_NOT_EXIST, message);
+            case "INVALID_PASSWORD":
+                return new FirebaseError(FirebaseError.INVALID_PASSWORD, message);
+            default:
+                return new FirebaseError(FirebaseError.OPERATION_FAILED, message);
+        }
+    }
+
+    /* generates keys the way Firebase's push() does: 8 characters of time
+     * and 12 random ones, incremented within the same millisecond so keys
+     * stay in creation order */
+    static class PushIds {
+        private static final String CHARS =
+                "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+        private final Random mRandom = new Random();
+        private final int[] mLastRandom = new int[12];
+        private long mLastTime = -1;
+
+        synchronized String next(long now) {
+            boolean sameTime = now == mLastTime;
+            mLastTime = now;
+
+            char[] key = new char[20];
+            for (int i = 7; i >= 0; i--) {
+                key[i] = CHARS.charAt((int)(now % 64));
+                now /= 64;
+            }
+
+            if (!sameTime) {
+                for (int i = 0; i < 12; i++) {
+                    mLastRandom[i] = mRandom.nextInt(64);
+                }
+            } else {
+                int i = 11;
+                while (i >= 0 && mLastRandom[i] == 63) {
+                    mLastRandom[i] = 0;
+                    i--;
+                }
+                if (i >= 0) {
+                    mLastRandom[i]++;
+                }
+            }
+            for (int i = 0; i < 12; i++) {
+                key[8 + i] = CHARS.charAt(mLastRandom[i]);
+            }
+            return new String(key);
+        }
+    }
+}
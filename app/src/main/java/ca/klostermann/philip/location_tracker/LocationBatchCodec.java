@@ -0,0 +1,135 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding for a batch of location posts, in the spirit of
+ * encoded polylines. Coordinates are fixed point in 1e-7 degrees, speed in
+ * cm/s, altitude and accuracy in dm. Timestamps are stored as delta of
+ * deltas and all other fields as deltas from the previous post, each one as
+ * a zigzag varint, so a regularly sampled track costs a handful of bytes
+ * per post.
+ *
+ * Layout: [version:byte][count:varint] then per post time, latitude,
+ * longitude, speed, altitude and accuracy.
+ */
+public final class LocationBatchCodec {
+    public static final String ENCODING = "lb1";
+    static final int VERSION = 1;
+
+    private LocationBatchCodec() {}
+
+    public static byte[] encode(List<LocationPost> posts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + posts.size() * 12);
+        out.write(VERSION);
+        writeVarint(out, posts.size());
+
+        long time = 0, delta = 0, lat = 0, lon = 0, speed = 0, alt = 0, acc = 0;
+        for (int i = 0; i < posts.size(); i++) {
+            LocationPost post = posts.get(i);
+
+            long nextDelta = post.getTime() - time;
+            writeSigned(out, nextDelta - delta);
+            delta = nextDelta;
+            time = post.getTime();
+
+            long v = Math.round(post.getLatitude() * 1e7);
+            writeSigned(out, v - lat);
+            lat = v;
+            v = Math.round(post.getLongitude() * 1e7);
+            writeSigned(out, v - lon);
+            lon = v;
+            v = Math.round(post.getSpeed() * 100.0);
+            writeSigned(out, v - speed);
+            speed = v;
+            v = Math.round(post.getAltitude() * 10.0);
+            writeSigned(out, v - alt);
+            alt = v;
+            v = Math.round(post.getAccuracy() * 10.0);
+            writeSigned(out, v - acc);
+            acc = v;
+        }
+        return out.toByteArray();
+    }
+
+    /* end (exclusive) of the run of posts from start on that fall into the same day,
+     * batches are stored per day */
+    public static int dayRun(List<LocationPost> posts, int start) {
+        long dateKey = LocationPost.getDateKey(posts.get(start).getTime());
+        int end = start + 1;
+        while (end < posts.size() && LocationPost.getDateKey(posts.get(end).getTime()) == dateKey) {
+            end++;
+        }
+        return end;
+    }
+
+    public static ArrayList<LocationPost> decode(byte[] data) {
+        int[] pos = {0};
+        if (data.length == 0 || data[pos[0]++] != VERSION) {
+            throw new IllegalArgumentException("Unknown location batch version");
+        }
+
+        /* each post is six varints of at least a byte, don't trust a count that
+         * can't fit into what is left */
+        long count = readVarint(data, pos);
+        if (count < 0 || count > (data.length - pos[0]) / 6) {
+            throw new IllegalArgumentException("Bad location batch count " + count);
+        }
+        ArrayList<LocationPost> posts = new ArrayList<>((int)count);
+
+        long time = 0, delta = 0, lat = 0, lon = 0, speed = 0, alt = 0, acc = 0;
+        for (int i = 0; i < count; i++) {
+            delta += readSigned(data, pos);
+            time += delta;
+            lat += readSigned(data, pos);
+            lon += readSigned(data, pos);
+            speed += readSigned(data, pos);
+            alt += readSigned(data, pos);
+            acc += readSigned(data, pos);
+
+            LocationPost post = new LocationPost();
+            post.setTime(time);
+            post.setLatitude(lat / 1e7);
+            post.setLongitude(lon / 1e7);
+            post.setSpeed(speed / 100f);
+            post.setAltitude(alt / 10.0);
+            post.setAccuracy(acc / 10f);
+            posts.add(post);
+        }
+        return posts;
+    }
+
+    private static void writeSigned(ByteArrayOutputStream out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.write((int)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int)value);
+    }
+
+    private static long readSigned(byte[] data, int[] pos) {
+        long value = readVarint(data, pos);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated location batch");
+            }
+            byte b = data[pos[0]++];
+            value |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in location batch");
+    }
+}
@@ -0,0 +1,311 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * On-device history of accepted fixes, so past positions can be looked up
+ * without the network. There is one data file per day of RECORD_SIZE byte
+ * records ([time:long][latitude:int][longitude:int], coordinates in 1e-7
+ * degrees) appended in time order, which makes time range queries a binary
+ * search. Once a day is over a spatial index is written next to it: the
+ * records' geohashes with their record numbers packed into one sorted long
+ * each, so bounding box queries only scan the geohash ranges covering the
+ * box. Whole days are evicted, oldest first, to bound disk usage.
+ */
+public class LocationHistoryStore {
+    static final int RECORD_SIZE = 8 + 4 + 4;
+    static final String DATA_SUFFIX = ".dat";
+    static final String INDEX_SUFFIX = ".idx";
+
+    /* index entries are [geohash:45][record:18], positive so they sort as longs */
+    static final int INDEX_HASH_BITS = 45;
+    static final int INDEX_RECORD_BITS = 18;
+    static final int MAX_INDEXED_RECORDS = 1 << INDEX_RECORD_BITS;
+    /* bounding box queries look at no more than this many index cells per day */
+    static final int MAX_QUERY_CELLS = 64;
+
+    private final File mDir;
+    private final int mMaxDays;
+    private final long mMaxBytes;
+
+    private long mOpenDay = -1;
+    private RandomAccessFile mOpenFile;
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+
+    public LocationHistoryStore(File dir, int maxDays, long maxBytes) throws IOException {
+        mDir = dir;
+        mMaxDays = maxDays;
+        mMaxBytes = maxBytes;
+        if (!mDir.isDirectory() && !mDir.mkdirs()) {
+            throw new IOException("Unable to create " + mDir);
+        }
+    }
+
+    public synchronized void append(LocationPost post) throws IOException {
+        long day = LocationPost.getDateKey(post.getTime());
+        if (day != mOpenDay) {
+            openDay(day);
+        }
+
+        mRecord.clear();
+        mRecord.putLong(post.getTime());
+        mRecord.putInt((int)Math.round(post.getLatitude() * 1e7));
+        mRecord.putInt((int)Math.round(post.getLongitude() * 1e7));
+        mOpenFile.seek(mOpenFile.length());
+        mOpenFile.write(mRecord.array());
+    }
+
+    /* adds all fixes with from <= time <= to to out, oldest first */
+    public synchronized void queryTime(long from, long to, List<LocationPost> out)
+            throws IOException {
+        for (long day : days()) {
+            if (!overlaps(day, from, to)) {
+                continue;
+            }
+            ByteBuffer data = mapData(day);
+            int count = data.capacity() / RECORD_SIZE;
+            for (int i = lowerBound(data, count, from); i < count; i++) {
+                long time = data.getLong(i * RECORD_SIZE);
+                if (time > to) {
+                    break;
+                }
+                out.add(toPost(data, i));
+            }
+        }
+    }
+
+    /* adds all fixes inside the box with from <= time <= to to out, grouped by day.
+     * A box with minLon > maxLon crosses the anti-meridian. */
+    public synchronized void queryBox(double minLat, double minLon, double maxLat, double maxLon,
+                                      long from, long to, List<LocationPost> out)
+            throws IOException {
+        int minLatE7 = (int)Math.floor(minLat * 1e7), maxLatE7 = (int)Math.ceil(maxLat * 1e7);
+        int minLonE7 = (int)Math.floor(minLon * 1e7), maxLonE7 = (int)Math.ceil(maxLon * 1e7);
+        List<long[]> ranges = null;
+
+        for (long day : days()) {
+            if (!overlaps(day, from, to)) {
+                continue;
+            }
+            ByteBuffer data = mapData(day);
+            File indexFile = new File(mDir, day + INDEX_SUFFIX);
+
+            if (!indexFile.exists()) {
+                /* today's file, or one too big to index: scan it */
+                int count = data.capacity() / RECORD_SIZE;
+                for (int i = lowerBound(data, count, from); i < count; i++) {
+                    if (data.getLong(i * RECORD_SIZE) > to) {
+                        break;
+                    }
+                    addIfInside(data, i, minLatE7, minLonE7, maxLatE7, maxLonE7, out);
+                }
+                continue;
+            }
+
+            if (ranges == null) {
+                ranges = GeoHash.coveringRanges(minLat, minLon, maxLat, maxLon,
+                        INDEX_HASH_BITS, MAX_QUERY_CELLS);
+            }
+            LongBuffer index = map(indexFile).asLongBuffer();
+            int entries = index.capacity();
+            for (long[] range : ranges) {
+                /* compared as hashes, the end of the last range shifted would overflow */
+                for (int e = lowerBound(index, entries, range[0] << INDEX_RECORD_BITS);
+                     e < entries; e++) {
+                    long key = index.get(e);
+                    if (key >>> INDEX_RECORD_BITS >= range[1]) {
+                        break;
+                    }
+                    int i = (int)(key & (MAX_INDEXED_RECORDS - 1));
+                    long time = data.getLong(i * RECORD_SIZE);
+                    if (time >= from && time <= to) {
+                        addIfInside(data, i, minLatE7, minLonE7, maxLatE7, maxLonE7, out);
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized long getDiskUsage() {
+        long bytes = 0;
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                bytes += f.length();
+            }
+        }
+        return bytes;
+    }
+
+    public synchronized void close() throws IOException {
+        if (mOpenFile != null) {
+            mOpenFile.close();
+            mOpenFile = null;
+            mOpenDay = -1;
+        }
+    }
+
+    private void openDay(long day) throws IOException {
+        close();
+        mOpenFile = new RandomAccessFile(new File(mDir, day + DATA_SUFFIX), "rw");
+        /* drop a record torn by process death */
+        mOpenFile.setLength(mOpenFile.length() / RECORD_SIZE * RECORD_SIZE);
+        mOpenDay = day;
+        /* a late append to an older day makes its index stale, it is rebuilt
+         * once another day is opened */
+        new File(mDir, day + INDEX_SUFFIX).delete();
+
+        for (long d : days()) {
+            if (d != day && !new File(mDir, d + INDEX_SUFFIX).exists()) {
+                buildIndex(d);
+            }
+        }
+        evict();
+    }
+
+    private void buildIndex(long day) throws IOException {
+        ByteBuffer data = mapData(day);
+        int count = data.capacity() / RECORD_SIZE;
+        if (count > MAX_INDEXED_RECORDS) {
+            return;
+        }
+
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            long hash = GeoHash.encode(data.getInt(i * RECORD_SIZE + 8) / 1e7,
+                    data.getInt(i * RECORD_SIZE + 12) / 1e7, INDEX_HASH_BITS);
+            keys[i] = (hash << INDEX_RECORD_BITS) | i;
+        }
+        Arrays.sort(keys);
+
+        ByteBuffer buf = ByteBuffer.allocate(count * 8);
+        buf.asLongBuffer().put(keys);
+        File tmp = new File(mDir, day + INDEX_SUFFIX + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(buf.array());
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(mDir, day + INDEX_SUFFIX))) {
+            throw new IOException("Unable to write index for " + day);
+        }
+    }
+
+    private void evict() {
+        long[] days = days();
+        long bytes = getDiskUsage();
+        for (int i = 0; i < days.length - 1; i++) {
+            if (days.length - i <= mMaxDays && bytes <= mMaxBytes) {
+                break;
+            }
+            File data = new File(mDir, days[i] + DATA_SUFFIX);
+            File index = new File(mDir, days[i] + INDEX_SUFFIX);
+            bytes -= data.length() + index.length();
+            data.delete();
+            index.delete();
+        }
+    }
+
+    /* stored days, oldest first */
+    private long[] days() {
+        String[] names = mDir.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] days = new long[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (name.endsWith(DATA_SUFFIX)) {
+                try {
+                    days[n++] = Long.parseLong(name.substring(0, name.length() - DATA_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    /* not ours */
+                }
+            }
+        }
+        days = Arrays.copyOf(days, n);
+        Arrays.sort(days);
+        return days;
+    }
+
+    /* a day bucket starts at most an hour before its key and is at most 25 hours long */
+    private static boolean overlaps(long day, long from, long to) {
+        return day - 60 * 60 * 1000L <= to && day + 25 * 60 * 60 * 1000L > from;
+    }
+
+    private ByteBuffer mapData(long day) throws IOException {
+        return map(new File(mDir, day + DATA_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size() / RECORD_SIZE * RECORD_SIZE;
+            if (file.getName().endsWith(INDEX_SUFFIX)) {
+                size = channel.size() / 8 * 8;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } finally {
+            in.close();
+        }
+    }
+
+    /* first record with time >= from */
+    private static int lowerBound(ByteBuffer data, int count, long from) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (data.getLong(mid * RECORD_SIZE) < from) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /* first index entry >= key */
+    private static int lowerBound(LongBuffer index, int count, long key) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (index.get(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static void addIfInside(ByteBuffer data, int i, int minLat, int minLon,
+                                    int maxLat, int maxLon, List<LocationPost> out) {
+        int lat = data.getInt(i * RECORD_SIZE + 8);
+        int lon = data.getInt(i * RECORD_SIZE + 12);
+        boolean insideLon = minLon <= maxLon ? lon >= minLon && lon <= maxLon
+                : lon >= minLon || lon <= maxLon;
+        if (lat >= minLat && lat <= maxLat && insideLon) {
+            out.add(toPost(data, i));
+        }
+    }
+
+    private static LocationPost toPost(ByteBuffer data, int i) {
+        LocationPost post = new LocationPost();
+        post.setTime(data.getLong(i * RECORD_SIZE));
+        post.setLatitude(data.getInt(i * RECORD_SIZE + 8) / 1e7);
+        post.setLongitude(data.getInt(i * RECORD_SIZE + 12) / 1e7);
+        return post;
+    }
+}
@@ -0,0 +1,185 @@
+package ca.klostermann.philip.location_tracker;
+
+/**
+ * Constant-velocity Kalman filter over incoming fixes. Positions are kept in
+ * meters east and north of an origin near the track, each axis with its own
+ * position/velocity state and 2x2 covariance, and the fix accuracy is used
+ * as measurement noise. All state is primitive, update() does not allocate.
+ *
+ * Fixes that would need an implausible speed to reach from the current
+ * estimate, or an implausible acceleration to deviate that far from the
+ * predicted position, are rejected. If several fixes in a row are rejected
+ * the filter assumes it is the estimate that is wrong and restarts from the
+ * newest fix.
+ */
+public class LocationKalmanFilter {
+    /* process noise, standard deviation of unmodelled acceleration in m/s^2 */
+    static final double ACCELERATION_NOISE = 2.0;
+    /* about 250 km/h */
+    static final double MAX_SPEED = 70;
+    static final double MAX_ACCELERATION = 12;
+    /* only gate on acceleration over gaps short enough for it to mean something */
+    static final long ACCELERATION_GATE_MAX_DT = 30 * 1000;
+    /* ... and once the velocity estimate has settled to within ~5 m/s */
+    static final double ACCELERATION_GATE_MAX_VARIANCE = 25;
+    static final int MAX_CONSECUTIVE_REJECTS = 5;
+    static final float MIN_ACCURACY = 1;
+    /* re-center the local projection once the track is this far from the origin */
+    static final double RECENTER_DISTANCE = 100 * 1000;
+
+    private boolean mInitialized;
+    private long mTime;
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mMetersPerDegreeLon;
+
+    /* east axis */
+    private double mX, mVx, mXP00, mXP01, mXP11;
+    /* north axis */
+    private double mY, mVy, mYP00, mYP01, mYP11;
+
+    private int mConsecutiveRejects;
+    private long mRejected;
+
+    public void reset() {
+        mInitialized = false;
+        mConsecutiveRejects = 0;
+    }
+
+    /**
+     * Feeds a fix into the filter. Returns false if it was rejected, in which
+     * case the estimate is unchanged.
+     */
+    public boolean update(long time, double latitude, double longitude, float accuracy) {
+        double r = Math.max(MIN_ACCURACY, accuracy);
+        r *= r;
+
+        if (!mInitialized) {
+            start(time, latitude, longitude, r);
+            return true;
+        }
+        if (time <= mTime) {
+            mRejected++;
+            return false;
+        }
+
+        double dt = (time - mTime) / 1000.0;
+        double zx = (longitude - mOriginLongitude) * mMetersPerDegreeLon;
+        double zy = (latitude - mOriginLatitude) * Geo.METERS_PER_DEGREE_LAT;
+
+        /* predict */
+        double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+        double dt2 = dt * dt;
+        double q00 = q * dt2 * dt2 / 4, q01 = q * dt2 * dt / 2, q11 = q * dt2;
+
+        double px = mX + mVx * dt;
+        double pxP00 = mXP00 + dt * (2 * mXP01 + dt * mXP11) + q00;
+        double py = mY + mVy * dt;
+        double pyP00 = mYP00 + dt * (2 * mYP01 + dt * mYP11) + q00;
+
+        /* speed needed to get from the current estimate to the fix, giving
+         * it the benefit of its accuracy */
+        double speed = Math.max(0, Math.hypot(zx - mX, zy - mY) - Math.sqrt(r)) / dt;
+        /* acceleration needed to end up that far from the predicted position,
+         * beyond three standard deviations of fix and prediction */
+        double slack = 3 * Math.sqrt(2 * r + pxP00 + pyP00);
+        double acceleration = 2 * Math.max(0, Math.hypot(zx - px, zy - py) - slack) / dt2;
+
+        boolean implausible = speed > MAX_SPEED
+                || (time - mTime <= ACCELERATION_GATE_MAX_DT
+                    && mXP11 + mYP11 <= ACCELERATION_GATE_MAX_VARIANCE
+                    && acceleration > MAX_ACCELERATION);
+        if (implausible) {
+            mRejected++;
+            if (++mConsecutiveRejects < MAX_CONSECUTIVE_REJECTS) {
+                return false;
+            }
+            start(time, latitude, longitude, r);
+            return true;
+        }
+        mConsecutiveRejects = 0;
+        mTime = time;
+
+        mX = px;
+        mXP00 = pxP00;
+        mXP01 += dt * mXP11 + q01;
+        mXP11 += q11;
+
+        mY = py;
+        mYP00 = pyP00;
+        mYP01 += dt * mYP11 + q01;
+        mYP11 += q11;
+
+        /* correct */
+        double s = mXP00 + r;
+        double k0 = mXP00 / s, k1 = mXP01 / s, innovation = zx - mX;
+        mX += k0 * innovation;
+        mVx += k1 * innovation;
+        mXP11 -= k1 * mXP01;
+        mXP01 *= 1 - k0;
+        mXP00 *= 1 - k0;
+
+        s = mYP00 + r;
+        k0 = mYP00 / s;
+        k1 = mYP01 / s;
+        innovation = zy - mY;
+        mY += k0 * innovation;
+        mVy += k1 * innovation;
+        mYP11 -= k1 * mYP01;
+        mYP01 *= 1 - k0;
+        mYP00 *= 1 - k0;
+
+        if (Math.abs(mX) > RECENTER_DISTANCE || Math.abs(mY) > RECENTER_DISTANCE) {
+            recenter();
+        }
+        return true;
+    }
+
+    public double getLatitude() {
+        return mOriginLatitude + mY / Geo.METERS_PER_DEGREE_LAT;
+    }
+
+    public double getLongitude() {
+        return mOriginLongitude + mX / mMetersPerDegreeLon;
+    }
+
+    /* estimated speed in m/s */
+    public float getSpeed() {
+        return (float)Math.hypot(mVx, mVy);
+    }
+
+    /* one standard deviation of the position estimate, in meters */
+    public float getAccuracy() {
+        return (float)Math.sqrt(mXP00 + mYP00);
+    }
+
+    public long getRejectedCount() {
+        return mRejected;
+    }
+
+    private void start(long time, double latitude, double longitude, double r) {
+        mInitialized = true;
+        mConsecutiveRejects = 0;
+        mTime = time;
+        setOrigin(latitude, longitude);
+        mX = mY = mVx = mVy = 0;
+        mXP00 = mYP00 = r;
+        mXP01 = mYP01 = 0;
+        /* we know nothing about the velocity yet */
+        mXP11 = mYP11 = MAX_SPEED * MAX_SPEED;
+    }
+
+    private void recenter() {
+        double latitude = getLatitude();
+        double longitude = getLongitude();
+        setOrigin(latitude, longitude);
+        mX = mY = 0;
+    }
+
+    private void setOrigin(double latitude, double longitude) {
+        mOriginLatitude = latitude;
+        mOriginLongitude = longitude;
+        mMetersPerDegreeLon = Geo.METERS_PER_DEGREE_LAT
+                * Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+    }
+}
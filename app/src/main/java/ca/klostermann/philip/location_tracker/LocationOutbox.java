@@ -0,0 +1,180 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Append-only on-disk queue of location posts. Every fix is written here
+ * before it is uploaded, so nothing is lost when the process dies while
+ * offline. Records are fixed width, so the queue is drained in order by a
+ * read cursor stored in the file header without ever loading more than one
+ * batch into memory.
+ *
+ * Layout: [magic:int][version:int][readOffset:long] followed by RECORD_SIZE
+ * byte records of time, latitude, longitude, altitude, speed and accuracy.
+ */
+public class LocationOutbox {
+    static final int MAGIC = 0x4c4f4258; // "LOBX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 8 + 8 + 8 + 8 + 4 + 4;
+
+    /* once this much of the file has been drained the live tail is moved
+     * back to the front, so the file does not grow without bound while
+     * the queue never runs completely empty */
+    private static final long COMPACT_THRESHOLD = 4 * 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final ByteBuffer mRecord = ByteBuffer.allocate(RECORD_SIZE);
+
+    /* first record not yet acknowledged by the server */
+    private long mReadOffset;
+    /* first record not yet handed out by peek() */
+    private long mPeekOffset;
+    private long mEndOffset;
+
+    /* everything written to the file since it was opened, header updates included */
+    private long mBytesWritten;
+
+    public LocationOutbox(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+
+        if (mFile.length() < HEADER_SIZE || mFile.readInt() != MAGIC
+                || mFile.readInt() != VERSION) {
+            mFile.setLength(0);
+            mReadOffset = HEADER_SIZE;
+            writeHeader();
+        } else {
+            mReadOffset = mFile.readLong();
+        }
+
+        /* drop a record torn by process death in the middle of a write */
+        long records = (mFile.length() - HEADER_SIZE) / RECORD_SIZE;
+        mEndOffset = HEADER_SIZE + records * RECORD_SIZE;
+        mFile.setLength(mEndOffset);
+
+        if (mReadOffset < HEADER_SIZE || mReadOffset > mEndOffset
+                || (mReadOffset - HEADER_SIZE) % RECORD_SIZE != 0) {
+            mReadOffset = HEADER_SIZE;
+            writeHeader();
+        }
+        mPeekOffset = mReadOffset;
+    }
+
+    public synchronized void append(LocationPost post) throws IOException {
+        mRecord.clear();
+        mRecord.putLong(post.getTime());
+        mRecord.putDouble(post.getLatitude());
+        mRecord.putDouble(post.getLongitude());
+        mRecord.putDouble(post.getAltitude());
+        mRecord.putFloat(post.getSpeed());
+        mRecord.putFloat(post.getAccuracy());
+
+        mFile.seek(mEndOffset);
+        mFile.write(mRecord.array(), 0, RECORD_SIZE);
+        mEndOffset += RECORD_SIZE;
+        mBytesWritten += RECORD_SIZE;
+    }
+
+    /**
+     * Reads up to max records following those already handed out and adds
+     * them to out. They stay queued until commit() is called.
+     */
+    public synchronized int peek(int max, List<LocationPost> out) throws IOException {
+        int count = (int)Math.min(max, (mEndOffset - mPeekOffset) / RECORD_SIZE);
+        if (count <= 0) {
+            return 0;
+        }
+
+        byte[] buf = new byte[count * RECORD_SIZE];
+        mFile.seek(mPeekOffset);
+        mFile.readFully(buf);
+
+        ByteBuffer records = ByteBuffer.wrap(buf);
+        for (int i = 0; i < count; i++) {
+            LocationPost post = new LocationPost();
+            post.setTime(records.getLong());
+            post.setLatitude(records.getDouble());
+            post.setLongitude(records.getDouble());
+            post.setAltitude(records.getDouble());
+            post.setSpeed(records.getFloat());
+            post.setAccuracy(records.getFloat());
+            out.add(post);
+        }
+
+        mPeekOffset += (long)count * RECORD_SIZE;
+        return count;
+    }
+
+    /* the oldest count handed out records have been stored by the server */
+    public synchronized void commit(int count) throws IOException {
+        mReadOffset = Math.min(mReadOffset + (long)count * RECORD_SIZE, mPeekOffset);
+
+        if (mReadOffset == mEndOffset) {
+            mFile.setLength(HEADER_SIZE);
+            mReadOffset = mPeekOffset = mEndOffset = HEADER_SIZE;
+        } else if (mReadOffset - HEADER_SIZE > COMPACT_THRESHOLD
+                && mEndOffset - mReadOffset < mReadOffset - HEADER_SIZE
+                && mPeekOffset == mReadOffset) {
+            compact();
+            return;
+        }
+        writeHeader();
+    }
+
+    /* hand out everything after the last commit again, e.g. after a failed upload */
+    public synchronized void rewind() {
+        mPeekOffset = mReadOffset;
+    }
+
+    /* number of records not yet acknowledged */
+    public synchronized long getDepth() {
+        return (mEndOffset - mReadOffset) / RECORD_SIZE;
+    }
+
+    /* number of records not yet handed out by peek() */
+    public synchronized long getUnreadCount() {
+        return (mEndOffset - mPeekOffset) / RECORD_SIZE;
+    }
+
+    public synchronized long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    public synchronized void close() throws IOException {
+        mFile.close();
+    }
+
+    /* the live tail is smaller than the drained head, so copying it to the
+     * front never overwrites a record the old header still points at */
+    private void compact() throws IOException {
+        byte[] buf = new byte[64 * RECORD_SIZE];
+        long src = mReadOffset;
+        long dst = HEADER_SIZE;
+        while (src < mEndOffset) {
+            int len = (int)Math.min(buf.length, mEndOffset - src);
+            mFile.seek(src);
+            mFile.readFully(buf, 0, len);
+            mFile.seek(dst);
+            mFile.write(buf, 0, len);
+            mBytesWritten += len;
+            src += len;
+            dst += len;
+        }
+        mReadOffset = mPeekOffset = HEADER_SIZE;
+        mEndOffset = dst;
+        writeHeader();
+        mFile.setLength(dst);
+    }
+
+    private void writeHeader() throws IOException {
+        mFile.seek(0);
+        mFile.writeInt(MAGIC);
+        mFile.writeInt(VERSION);
+        mFile.writeLong(mReadOffset);
+        mBytesWritten += HEADER_SIZE;
+    }
+}
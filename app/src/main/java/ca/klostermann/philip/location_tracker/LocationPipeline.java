@@ -0,0 +1,135 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.content.BroadcastReceiver;
+import android.location.Location;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+
+/**
+ * Single background thread that all fix processing runs on. Receivers hand
+ * fixes over together with their goAsync() result, which is finished once
+ * the fix has been processed; the CPU is kept awake in between. The queue is bounded: when it is full the
+ * oldest fix is dropped, a newer position is worth more than an older one.
+ * Time spent waiting in the queue and processing is recorded in the
+ * pipeline.queue and pipeline.process histograms.
+ */
+public class LocationPipeline {
+    private static final String TAG = "LocationTracker/Pipeline";
+
+    static final int MAX_QUEUE_SIZE = 32;
+
+    public interface Processor {
+        void process(Location location);
+    }
+
+    private static final class Entry {
+        final Location location;
+        final BroadcastReceiver.PendingResult result;
+        final long enqueuedNanos;
+
+        Entry(Location location, BroadcastReceiver.PendingResult result, long enqueuedNanos) {
+            this.location = location;
+            this.result = result;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+
+    private final HandlerThread mThread;
+    private final Handler mHandler;
+    private final Processor mProcessor;
+    private final WakeLockManager mWakeLock;
+    private final ArrayDeque<Entry> mQueue = new ArrayDeque<>(MAX_QUEUE_SIZE);
+    private final Metrics.Histogram mQueueTime;
+    private final Metrics.Histogram mProcessTime;
+    private final Metrics.Counter mDroppedCounter;
+
+    private final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            Entry entry;
+            while ((entry = poll()) != null) {
+                long started = System.nanoTime();
+                mQueueTime.recordNanos(started - entry.enqueuedNanos);
+                try {
+                    mProcessor.process(entry.location);
+                    mProcessTime.recordNanos(System.nanoTime() - started);
+                } catch (Exception e) {
+                    Log.e(TAG, "Processing location failed: " + e);
+                } finally {
+                    if (entry.result != null) {
+                        entry.result.finish();
+                    }
+                    mWakeLock.release();
+                }
+            }
+        }
+    };
+
+    public LocationPipeline(Processor processor, WakeLockManager wakeLock, Metrics metrics) {
+        mProcessor = processor;
+        mWakeLock = wakeLock;
+        mQueueTime = metrics.histogram("pipeline.queue");
+        mProcessTime = metrics.histogram("pipeline.process");
+        mDroppedCounter = metrics.counter("pipeline.dropped");
+        mThread = new HandlerThread("LocationPipeline", Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mHandler = new Handler(mThread.getLooper());
+    }
+
+    public Looper getLooper() {
+        return mThread.getLooper();
+    }
+
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    /* run work on the pipeline thread, after the fixes queued so far */
+    public void post(Runnable runnable) {
+        mHandler.post(runnable);
+    }
+
+    public void enqueue(Location location, BroadcastReceiver.PendingResult result) {
+        mWakeLock.acquire();
+
+        Entry dropped = null;
+        synchronized (this) {
+            if (mQueue.size() >= MAX_QUEUE_SIZE) {
+                dropped = mQueue.poll();
+                mDroppedCounter.increment();
+            }
+            mQueue.add(new Entry(location, result, System.nanoTime()));
+        }
+
+        if (dropped != null) {
+            Log.w(TAG, "Pipeline full, dropped oldest location");
+            if (dropped.result != null) {
+                dropped.result.finish();
+            }
+            mWakeLock.release();
+        }
+        mHandler.post(mDrain);
+    }
+
+    /* stops the thread, anything posted after this is dropped */
+    public void quit() {
+        mThread.quit();
+    }
+
+    /* read from the pipeline's metrics */
+    public String getStats() {
+        Metrics.Snapshot queue = mQueueTime.snapshot();
+        return "processed " + queue.count + ", dropped " + mDroppedCounter.get() +
+                ", queue latency avg " + queue.getMeanMicros() / 1000 + "ms, max " +
+                queue.maxMicros / 1000 + "ms";
+    }
+
+    private synchronized Entry poll() {
+        return mQueue.poll();
+    }
+}
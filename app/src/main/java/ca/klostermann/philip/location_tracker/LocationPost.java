@@ -2,10 +2,19 @@ package ca.klostermann.philip.location_tracker;
 
 import android.location.Location;
 
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
 
 public class LocationPost {
+    private static volatile DayBucket sDayBucket = DayBucket.local();
+
+    /* recycled posts, linked through mNext like android.os.Message does */
+    private static final int MAX_POOL_SIZE = 150;
+    private static final Object sPoolLock = new Object();
+    private static LocationPost sPool;
+    private static int sPoolSize;
+    private LocationPost mNext;
+
     private long time;
     private double latitude;
     private double longitude;
@@ -16,6 +25,38 @@ public class LocationPost {
     public LocationPost() {}
 
     public LocationPost(Location location) {
+        set(location);
+    }
+
+    /* a post from the pool, hand it back with recycle() once it is no longer referenced */
+    public static LocationPost obtain(Location location) {
+        LocationPost post = null;
+        synchronized (sPoolLock) {
+            if (sPool != null) {
+                post = sPool;
+                sPool = post.mNext;
+                post.mNext = null;
+                sPoolSize--;
+            }
+        }
+        if (post == null) {
+            return new LocationPost(location);
+        }
+        post.set(location);
+        return post;
+    }
+
+    public void recycle() {
+        synchronized (sPoolLock) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    public void set(Location location) {
         this.time = location.getTime();
         this.latitude = location.getLatitude();
         this.longitude = location.getLongitude();
@@ -25,15 +66,27 @@ public class LocationPost {
     }
 
     public static long getDateKey(long time) {
-        //Use timestamp of today's date at midnight as key
-        GregorianCalendar d = new GregorianCalendar();
-        d.setTimeInMillis(time);
-        d.set(Calendar.HOUR, 0);
-        d.set(Calendar.HOUR_OF_DAY, 0);
-        d.set(Calendar.MINUTE, 0);
-        d.set(Calendar.SECOND, 0);
-        d.set(Calendar.MILLISECOND, 0);
-        return d.getTimeInMillis();
+        //Use timestamp of the day's start at midnight as key
+        return sDayBucket.getDateKey(time);
+    }
+
+    public static DayBucket getDayBucket() {
+        return sDayBucket;
+    }
+
+    public static void setDayBucket(DayBucket bucket) {
+        sDayBucket = bucket;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("time", time);
+        map.put("latitude", latitude);
+        map.put("longitude", longitude);
+        map.put("speed", speed);
+        map.put("altitude", altitude);
+        map.put("accuracy", accuracy);
+        return map;
     }
 
     public long getTime() {
@@ -10,11 +10,14 @@ import com.google.android.gms.location.FusedLocationProviderApi;
 public class LocationReceiver extends BroadcastReceiver{
     @Override
     public void onReceive(Context context, Intent intent) {
+        long received = System.nanoTime();
         Location location = (Location) intent.getExtras().get(
                 FusedLocationProviderApi.KEY_LOCATION_CHANGED);
 
         if(TrackerService.isRunning()) {
-            TrackerService.service.sendLocation(location);
+            /* processing happens on the service's pipeline thread, keep the
+             * broadcast alive until it is done */
+            TrackerService.service.enqueueLocation(location, goAsync(), received);
         }
     }
 }
@@ -0,0 +1,21 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.Map;
+
+/**
+ * Where a signed in device writes to. Writes are multi-path updates with
+ * paths relative to the root, applied all or nothing, the way Firebase's
+ * updateChildren() does it.
+ */
+public interface LocationSink {
+    interface Callback {
+        /* error is null if the write was acknowledged, called on the main thread */
+        void onComplete(String error);
+    }
+
+    /* callback may be null */
+    void write(Map<String, Object> updates, Callback callback);
+
+    /* a new child key, unique and ordered by creation time like a push ID */
+    String newKey();
+}
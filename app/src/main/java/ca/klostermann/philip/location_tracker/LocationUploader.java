@@ -0,0 +1,459 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Drains the location outbox to the sink as multi-path writes once enough posts are queued, the oldest post is
+ * old enough or the service asks for a flush (connectivity/charging change,
+ * re-authentication). Up to MAX_IN_FLIGHT writes are outstanding at a time,
+ * tracked by a push ID per write in the order they were taken from the
+ * outbox. Records are committed once the backend acknowledges them, and
+ * only in that order: an early acknowledgement waits for the writes before
+ * it. A failed write keeps its place and is sent again on the next
+ * trigger with the same updates, push keys included, so if it did reach
+ * the backend the retry overwrites it instead of storing it twice. The
+ * writes around it are not affected. A process death between ack and
+ * commit can still store a post twice.
+ *
+ * Posts are written as one node each under locations/uid/device/dateKey,
+ * or in compact mode as one LocationBatchCodec encoded node per day under
+ * location_batches/uid/device/dateKey.
+ *
+ * Building a write, handing it to the sink and waiting for its
+ * acknowledgement are recorded in the upload.* histograms, the time from
+ * a fix to the acknowledgement of its write in upload.fix_to_ack. A write
+ * not acknowledged within STALL_TIMEOUT is reported to the listener; it
+ * stays in flight, Firebase keeps retrying it until it is back online.
+ *
+ * All methods must be called on the looper passed to the constructor.
+ */
+public class LocationUploader {
+    private static final String TAG = "LocationTracker/Uploader";
+
+    /* upper bound on posts per write, keeps replaying a long outage bounded in memory */
+    private static final int MAX_BATCH_SIZE = 500;
+    /* writes outstanding at a time, pipelines draining a backlog over a slow link */
+    static final int MAX_IN_FLIGHT = 4;
+    /* a write not acknowledged for this long is reported as stalled, again every period */
+    static final long STALL_TIMEOUT = 60 * 1000;
+    /* how long shutdown() waits for the last write to be acknowledged */
+    private static final long SHUTDOWN_TIMEOUT = 10 * 1000;
+
+    public interface Listener {
+        void onFlushed(String reason, int points, int bytes, long latencyMs, long depth);
+        void onFlushFailed(String reason, int points, String error);
+        void onStalled(int writes, int points, long millis);
+        void onDrained(long points, long millis);
+    }
+
+    private static final class Write {
+        final String reason;
+        final int points;
+        final int bytes;
+        final Map<String, Object> updates;
+        final long[] fixTimes;
+        final LocationPost newest;
+        long startedAt;
+        boolean acked;
+        boolean failed;
+        long latencyMs;
+
+        Write(String reason, ArrayList<LocationPost> posts, Map<String, Object> updates,
+              int bytes) {
+            this.reason = reason;
+            this.points = posts.size();
+            this.updates = updates;
+            this.bytes = bytes;
+            fixTimes = new long[points];
+            for (int i = 0; i < points; i++) {
+                fixTimes[i] = posts.get(i).getTime();
+            }
+            newest = posts.get(points - 1);
+        }
+    }
+
+    private final LocationSink mSink;
+    private final FirebaseRefCache mRefs;
+    private final boolean mCompact;
+    private final LocationOutbox mOutbox;
+    private final Listener mListener;
+    private final WakeLockManager mWakeLock;
+    private final Handler mHandler;
+    private final int mBatchSize;
+    private final long mMaxAgeMillis;
+
+    private final Metrics.Histogram mBuildTime;
+    private final Metrics.Histogram mWriteTime;
+    private final Metrics.Histogram mAckTime;
+    private final Metrics.Histogram mFixToAck;
+    private final Metrics.Counter mPointsUploaded;
+    private final Metrics.Counter mBytesUploaded;
+    private final Metrics.Counter mFailures;
+    private final Metrics.Counter mStalls;
+
+    /* writes handed to the sink and not yet committed, keyed by push ID, oldest first */
+    private final LinkedHashMap<String, Write> mInFlight = new LinkedHashMap<>();
+    private boolean mAgeFlushScheduled;
+    private Runnable mShutdownDone;
+
+    /* the newest post the backend has acknowledged */
+    private LocationPost mLastAcknowledged;
+
+    /* backlog drain bookkeeping, for the drain rate */
+    private long mDrainStartedAt;
+    private long mDrainedPoints;
+
+    private final Runnable mAgeFlush = new Runnable() {
+        @Override
+        public void run() {
+            mAgeFlushScheduled = false;
+            flush("age");
+        }
+    };
+
+    private final Runnable mStallCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (mInFlight.isEmpty()) {
+                return;
+            }
+            long age = SystemClock.elapsedRealtime() -
+                    mInFlight.values().iterator().next().startedAt;
+            if (age < STALL_TIMEOUT) {
+                mHandler.postDelayed(this, STALL_TIMEOUT - age);
+                return;
+            }
+            int points = 0;
+            for (Write write : mInFlight.values()) {
+                points += write.points;
+            }
+            mStalls.increment();
+            mListener.onStalled(mInFlight.size(), points, age);
+            mHandler.postDelayed(this, STALL_TIMEOUT);
+        }
+    };
+
+    public LocationUploader(FirebaseRefCache refs, LocationOutbox outbox, Looper looper, int batchSize,
+                            int maxAgeSeconds, boolean compact, WakeLockManager wakeLock,
+                            Metrics metrics, Listener listener) {
+        mRefs = refs;
+        mSink = refs.getSink();
+        mCompact = compact;
+        mOutbox = outbox;
+        mHandler = new Handler(looper);
+        mBatchSize = Math.min(MAX_BATCH_SIZE, Math.max(1, batchSize));
+        mMaxAgeMillis = Math.max(1, maxAgeSeconds) * 1000L;
+        mListener = listener;
+        mWakeLock = wakeLock;
+        mBuildTime = metrics.histogram("upload.build");
+        mWriteTime = metrics.histogram("upload.write");
+        mAckTime = metrics.histogram("upload.ack");
+        mFixToAck = metrics.histogram("upload.fix_to_ack");
+        mPointsUploaded = metrics.counter("upload.points");
+        mBytesUploaded = metrics.counter("upload.bytes");
+        mFailures = metrics.counter("upload.failures");
+        mStalls = metrics.counter("upload.stalls");
+    }
+
+    /* a post has been appended to the outbox */
+    public void onQueued() {
+        if (mOutbox.getUnreadCount() >= mBatchSize) {
+            flush("size");
+        } else if (!mAgeFlushScheduled) {
+            mAgeFlushScheduled = true;
+            mHandler.postDelayed(mAgeFlush, mMaxAgeMillis);
+        }
+    }
+
+    public void flush(String reason) {
+        resendFailed();
+        if (mInFlight.size() >= MAX_IN_FLIGHT) {
+            return;
+        }
+        mHandler.removeCallbacks(mAgeFlush);
+        mAgeFlushScheduled = false;
+
+        /* the first write takes whatever is queued, more only go out for full batches */
+        if (startWrite(reason)) {
+            while (mInFlight.size() < MAX_IN_FLIGHT && mOutbox.getUnreadCount() >= mBatchSize
+                    && startWrite("backlog")) {
+            }
+        }
+    }
+
+    public long getQueueDepth() {
+        return mOutbox.getDepth();
+    }
+
+    public int getInFlight() {
+        return mInFlight.size();
+    }
+
+    /* the newest post the backend has stored, null before the first acknowledgement */
+    public LocationPost getLastAcknowledged() {
+        return mLastAcknowledged;
+    }
+
+    /**
+     * Uploads what is queued and runs done once every write is acknowledged,
+     * one has failed or SHUTDOWN_TIMEOUT has passed. Anything not acknowledged
+     * by then stays in the outbox for the next start.
+     */
+    public void shutdown(Runnable done) {
+        flush("shutdown");
+        mHandler.removeCallbacks(mAgeFlush);
+        mAgeFlushScheduled = false;
+
+        if (mInFlight.isEmpty()) {
+            done.run();
+            return;
+        }
+        mShutdownDone = done;
+        mHandler.postDelayed(mShutdownTimeout, SHUTDOWN_TIMEOUT);
+    }
+
+    private final Runnable mShutdownTimeout = new Runnable() {
+        @Override
+        public void run() {
+            finishShutdown();
+        }
+    };
+
+    /* returns true if shutting down, in which case nothing else should be started */
+    private boolean finishShutdown() {
+        if (mShutdownDone == null) {
+            return false;
+        }
+        mHandler.removeCallbacks(mShutdownTimeout);
+        mHandler.removeCallbacks(mStallCheck);
+        Runnable done = mShutdownDone;
+        mShutdownDone = null;
+        done.run();
+        return true;
+    }
+
+    /* returns false if nothing was sent */
+    private boolean startWrite(final String reason) {
+        ArrayList<LocationPost> posts = new ArrayList<>();
+        try {
+            mOutbox.peek(MAX_BATCH_SIZE, posts);
+        } catch (IOException e) {
+            Log.e(TAG, "Reading outbox failed: " + e);
+            return false;
+        }
+        if (posts.isEmpty()) {
+            return false;
+        }
+
+        if (mDrainStartedAt == 0 && mOutbox.getDepth() > MAX_BATCH_SIZE) {
+            mDrainStartedAt = SystemClock.elapsedRealtime();
+            mDrainedPoints = 0;
+        }
+
+        long buildStarted = System.nanoTime();
+        Map<String, Object> updates = new HashMap<>();
+        int payloadBytes = mCompact ? addBatches(posts, updates) : addPosts(posts, updates);
+        mBuildTime.recordNanos(System.nanoTime() - buildStarted);
+
+        String id = mSink.newKey();
+        Write write = new Write(reason, posts, updates, payloadBytes);
+        if (mInFlight.isEmpty()) {
+            mHandler.postDelayed(mStallCheck, STALL_TIMEOUT);
+        }
+        mInFlight.put(id, write);
+        Log.d(TAG, "Flushing " + write.points + " locations (" + reason + "), " +
+                mInFlight.size() + " writes in flight");
+        return send(id, write);
+    }
+
+    /* sends the writes that failed again, under the push keys they had */
+    private void resendFailed() {
+        for (Map.Entry<String, Write> entry : new ArrayList<>(mInFlight.entrySet())) {
+            Write write = entry.getValue();
+            if (write.failed) {
+                write.failed = false;
+                Log.d(TAG, "Retrying " + write.points + " locations (" + write.reason + ")");
+                send(entry.getKey(), write);
+            }
+        }
+    }
+
+    /* returns false if the sink threw */
+    private boolean send(final String id, Write write) {
+        write.startedAt = SystemClock.elapsedRealtime();
+        /* held while the write is handed to the sink, not for the round
+         * trip: offline, Firebase queues the write and the ack may take hours */
+        mWakeLock.acquire();
+        long writeStarted = System.nanoTime();
+        try {
+            mSink.write(write.updates, new LocationSink.Callback() {
+                @Override
+                public void onComplete(final String error) {
+                    /* and again while the ack is processed */
+                    mWakeLock.acquire();
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                onWriteComplete(id, error);
+                            } finally {
+                                mWakeLock.release();
+                            }
+                        }
+                    });
+                }
+            });
+            mWriteTime.recordNanos(System.nanoTime() - writeStarted);
+        } catch (Exception e) {
+            Log.e(TAG, "Posting locations failed: " + e.toString());
+            onWriteComplete(id, e.toString());
+            return false;
+        } finally {
+            mWakeLock.release();
+        }
+        return true;
+    }
+
+    private void onWriteComplete(String id, String error) {
+        Write write = mInFlight.get(id);
+        if (write == null || write.failed) {
+            return;
+        }
+        if (error != null) {
+            onFlushFailed(write, error);
+            return;
+        }
+        write.acked = true;
+        write.latencyMs = SystemClock.elapsedRealtime() - write.startedAt;
+
+        /* commit in outbox order, an acknowledgement ahead of an older write waits for it */
+        Iterator<Write> writes = mInFlight.values().iterator();
+        while (writes.hasNext()) {
+            Write oldest = writes.next();
+            if (!oldest.acked) {
+                break;
+            }
+            writes.remove();
+            onFlushed(oldest);
+        }
+
+        if (mInFlight.isEmpty()) {
+            mHandler.removeCallbacks(mStallCheck);
+            if (finishShutdown()) {
+                return;
+            }
+        } else if (mShutdownDone != null) {
+            return;
+        }
+
+        /* keep draining a backlog, otherwise wait for the next trigger */
+        if (mOutbox.getUnreadCount() >= mBatchSize) {
+            flush("backlog");
+        } else if (mOutbox.getUnreadCount() > 0) {
+            onQueued();
+        }
+    }
+
+    private void onFlushed(Write write) {
+        try {
+            mOutbox.commit(write.points);
+        } catch (IOException e) {
+            Log.e(TAG, "Committing outbox failed: " + e);
+        }
+        mLastAcknowledged = write.newest;
+
+        long now = System.currentTimeMillis();
+        for (long time : write.fixTimes) {
+            mFixToAck.recordMillis(now - time);
+        }
+        mAckTime.recordMillis(write.latencyMs);
+        mPointsUploaded.add(write.points);
+        mBytesUploaded.add(write.bytes);
+
+        long depth = mOutbox.getDepth();
+        mListener.onFlushed(write.reason, write.points, write.bytes, write.latencyMs, depth);
+
+        if (mDrainStartedAt != 0) {
+            mDrainedPoints += write.points;
+            if (depth < mBatchSize) {
+                mListener.onDrained(mDrainedPoints,
+                        SystemClock.elapsedRealtime() - mDrainStartedAt);
+                mDrainStartedAt = 0;
+            }
+        }
+    }
+
+    private void onFlushFailed(Write write, String error) {
+        write.failed = true;
+        mFailures.increment();
+        mListener.onFlushFailed(write.reason, write.points, error);
+
+        if (finishShutdown()) {
+            return;
+        }
+
+        /* retry on the next trigger, or when the age timer fires */
+        if (!mAgeFlushScheduled) {
+            mAgeFlushScheduled = true;
+            mHandler.postDelayed(mAgeFlush, mMaxAgeMillis);
+        }
+    }
+
+    /* one node per post, returns the approximate payload size */
+    private int addPosts(ArrayList<LocationPost> posts, Map<String, Object> updates) {
+        int bytes = 0;
+        for (LocationPost post : posts) {
+            String key = mRefs.getDayPath(LocationPost.getDateKey(post.getTime())) +
+                    mSink.newKey();
+            updates.put(key, post.toMap());
+            bytes += estimateBytes(key, post);
+        }
+        return bytes;
+    }
+
+    /* one encoded node per day in the batch, returns the payload size */
+    private int addBatches(ArrayList<LocationPost> posts, Map<String, Object> updates) {
+        int bytes = 0;
+        int start = 0;
+        while (start < posts.size()) {
+            long dateKey = LocationPost.getDateKey(posts.get(start).getTime());
+            int end = LocationBatchCodec.dayRun(posts, start);
+
+            String data = Base64.encodeToString(
+                    LocationBatchCodec.encode(posts.subList(start, end)), Base64.NO_WRAP);
+            Map<String, Object> batch = new HashMap<>();
+            batch.put("encoding", LocationBatchCodec.ENCODING);
+            batch.put("count", end - start);
+            batch.put("start", posts.get(start).getTime());
+            batch.put("data", data);
+
+            String key = mRefs.getBatchDayPath(dateKey, end - start) + mSink.newKey();
+            updates.put(key, batch);
+            bytes += key.length() + data.length() + 60;
+            start = end;
+        }
+        return bytes;
+    }
+
+    /* rough size of the JSON sent for one post */
+    private static int estimateBytes(String key, LocationPost post) {
+        return key.length() + 80 +
+                String.valueOf(post.getTime()).length() +
+                String.valueOf(post.getLatitude()).length() +
+                String.valueOf(post.getLongitude()).length() +
+                String.valueOf(post.getSpeed()).length() +
+                String.valueOf(post.getAltitude()).length() +
+                String.valueOf(post.getAccuracy()).length();
+    }
+}
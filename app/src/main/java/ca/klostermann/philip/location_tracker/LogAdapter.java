@@ -0,0 +1,99 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Backs the log list with a bounded circular buffer: once it is full the
+ * oldest line is dropped. Lines are only formatted when the list binds
+ * them to a recycled row, with one formatter for all of them, so adding a
+ * line costs the same no matter how long the session has been running.
+ * LogAdapterBenchmark in the benchmarks module measures adding and binding
+ * a line after a short and a long session.
+ */
+public class LogAdapter extends BaseAdapter {
+    private final LayoutInflater mInflater;
+    private final LogMessage[] mLines;
+    private int mHead;
+    private int mCount;
+
+    /* DateFormat.SHORT doesn't honor 24 hour time :( */
+    private final SimpleDateFormat mFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
+    private final Date mDate = new Date();
+    private final StringBuilder mLine = new StringBuilder(128);
+
+    public LogAdapter(Context context, int capacity) {
+        mInflater = LayoutInflater.from(context);
+        mLines = new LogMessage[capacity];
+    }
+
+    public void add(LogMessage line) {
+        push(line);
+        notifyDataSetChanged();
+    }
+
+    /* adds all lines with a single change notification */
+    public void addAll(List<LogMessage> lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            push(lines.get(i));
+        }
+        notifyDataSetChanged();
+    }
+
+    public void clear() {
+        for (int i = 0; i < mLines.length; i++) {
+            mLines[i] = null;
+        }
+        mHead = 0;
+        mCount = 0;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public LogMessage getItem(int position) {
+        return mLines[(mHead + position) % mLines.length];
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView)convertView;
+        if (view == null) {
+            view = (TextView)mInflater.inflate(R.layout.log_line, parent, false);
+        }
+
+        LogMessage line = getItem(position);
+        mDate.setTime(line.time);
+        mLine.setLength(0);
+        mLine.append('[').append(mFormat.format(mDate)).append("] ").append(line.message);
+        view.setText(mLine);
+        return view;
+    }
+
+    private void push(LogMessage line) {
+        if (mCount < mLines.length) {
+            mLines[(mHead + mCount++) % mLines.length] = line;
+        } else {
+            mLines[mHead] = line;
+            mHead = (mHead + 1) % mLines.length;
+        }
+    }
+}
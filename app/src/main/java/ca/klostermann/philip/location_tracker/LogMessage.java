@@ -1,13 +1,39 @@
 package ca.klostermann.philip.location_tracker;
 
-import java.util.Date;
+import android.os.Parcel;
+import android.os.Parcelable;
 
-public class LogMessage {
-    public final Date date;
+/* a log line, parcelable so batches of them can be sent to clients */
+public class LogMessage implements Parcelable {
+    public final long time;
     public final String message;
 
-    public LogMessage(Date date, String message) {
-        this.date = date;
+    public LogMessage(long time, String message) {
+        this.time = time;
         this.message = message;
     }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeLong(time);
+        out.writeString(message);
+    }
+
+    public static final Parcelable.Creator<LogMessage> CREATOR =
+            new Parcelable.Creator<LogMessage>() {
+        @Override
+        public LogMessage createFromParcel(Parcel in) {
+            return new LogMessage(in.readLong(), in.readString());
+        }
+
+        @Override
+        public LogMessage[] newArray(int size) {
+            return new LogMessage[size];
+        }
+    };
 }
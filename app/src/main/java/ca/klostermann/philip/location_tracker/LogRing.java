@@ -0,0 +1,68 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity circular buffer of log messages. Appending claims a
+ * sequence number and overwrites the oldest slot, so both append and
+ * eviction are O(1) and never block. snapshot() copies the live window
+ * without locking; a slot that is being overwritten while it is copied no
+ * longer carries the expected sequence number and is skipped.
+ */
+public class LogRing {
+    private static final class Slot {
+        final long seq;
+        final LogMessage message;
+
+        Slot(long seq, LogMessage message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    private final int mCapacity;
+    private final AtomicReferenceArray<Slot> mSlots;
+    private final AtomicLong mNext = new AtomicLong();
+
+    public LogRing(int capacity) {
+        mCapacity = capacity;
+        mSlots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public void add(LogMessage message) {
+        long seq = mNext.getAndIncrement();
+        mSlots.set((int)(seq % mCapacity), new Slot(seq, message));
+    }
+
+    public void addAll(List<LogMessage> messages) {
+        for (int i = 0; i < messages.size(); i++) {
+            add(messages.get(i));
+        }
+    }
+
+    public int size() {
+        return (int)Math.min(mNext.get(), mCapacity);
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /* the buffered messages, oldest first */
+    public ArrayList<LogMessage> snapshot() {
+        long end = mNext.get();
+        long start = Math.max(0, end - mCapacity);
+        ArrayList<LogMessage> messages = new ArrayList<>((int)(end - start));
+
+        for (long seq = start; seq < end; seq++) {
+            Slot slot = mSlots.get((int)(seq % mCapacity));
+            if (slot != null && slot.seq == seq) {
+                messages.add(slot.message);
+            }
+        }
+        return messages;
+    }
+}
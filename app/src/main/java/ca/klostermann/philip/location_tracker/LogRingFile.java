@@ -0,0 +1,172 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Fixed-size, memory-mapped circular log file. Appending a message is a
+ * bounded copy into the mapping; once the file is full the oldest records
+ * are evicted, so it never grows and never needs to be cleaned up.
+ *
+ * Layout: a HEADER_SIZE byte header of magic, version, capacity, head
+ * (next write offset), tail (oldest record), record count and the offset
+ * at which the last lap ended, followed by capacity bytes of records. A
+ * record is [length:int][time:long][UTF-8 message][length:int]; a leading
+ * length of WRAP means the rest of the data area is unused and the next
+ * record starts at offset 0. The trailing length lets readLast() walk
+ * backwards from the head and decode only the records it returns.
+ */
+public class LogRingFile {
+    static final int MAGIC = 0x4c524e47; // "LRNG"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 28;
+    static final int RECORD_OVERHEAD = 4 + 8 + 4;
+    static final int MAX_MESSAGE_BYTES = 1024;
+
+    private static final int OFF_CAPACITY = 8;
+    private static final int OFF_HEAD = 12;
+    private static final int OFF_TAIL = 16;
+    private static final int OFF_COUNT = 20;
+    private static final int OFF_WRAP = 24;
+    private static final int WRAP = -1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mMap;
+    private final int mCapacity;
+
+    private int mHead;
+    private int mTail;
+    private int mCount;
+    /* end of the data written before the head last wrapped to 0 */
+    private int mWrapAt;
+
+    public LogRingFile(File file, int capacity) throws IOException {
+        mFile = new RandomAccessFile(file, "rw");
+        mCapacity = capacity;
+
+        boolean valid = mFile.length() == HEADER_SIZE + capacity;
+        mFile.setLength(HEADER_SIZE + capacity);
+        mMap = mFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity);
+
+        if (valid && mMap.getInt(0) == MAGIC && mMap.getInt(4) == VERSION
+                && mMap.getInt(OFF_CAPACITY) == capacity) {
+            mHead = mMap.getInt(OFF_HEAD);
+            mTail = mMap.getInt(OFF_TAIL);
+            mCount = mMap.getInt(OFF_COUNT);
+            mWrapAt = mMap.getInt(OFF_WRAP);
+        } else {
+            valid = false;
+        }
+
+        if (!valid || mHead < 0 || mHead >= capacity || mTail < 0 || mTail >= capacity
+                || mCount < 0 || mWrapAt < 0 || mWrapAt > capacity) {
+            mHead = mTail = mCount = mWrapAt = 0;
+            mMap.putInt(0, MAGIC);
+            mMap.putInt(4, VERSION);
+            mMap.putInt(OFF_CAPACITY, capacity);
+            writeHeader();
+        }
+    }
+
+    public synchronized void append(long time, String message) {
+        byte[] bytes = message.getBytes(UTF8);
+        int length = Math.min(bytes.length, MAX_MESSAGE_BYTES);
+        int need = RECORD_OVERHEAD + length;
+
+        if (mHead + need > mCapacity) {
+            /* not enough room before the end, evict what lives there and wrap */
+            while (mCount > 0 && mTail >= mHead) {
+                evictOldest();
+            }
+            if (mCapacity - mHead >= 4) {
+                mMap.putInt(HEADER_SIZE + mHead, WRAP);
+            }
+            mWrapAt = mHead;
+            mHead = 0;
+            if (mCount == 0) {
+                mTail = 0;
+            }
+        }
+        while (mCount > 0 && mTail >= mHead && mTail < mHead + need) {
+            evictOldest();
+        }
+        writeHeader();
+
+        int pos = HEADER_SIZE + mHead;
+        mMap.putInt(pos, length);
+        mMap.putLong(pos + 4, time);
+        mMap.position(pos + 4 + 8);
+        mMap.put(bytes, 0, length);
+        mMap.putInt(pos + 4 + 8 + length, length);
+
+        mHead += need;
+        if (mHead == mCapacity) {
+            mWrapAt = mHead;
+            mHead = 0;
+        }
+        mCount++;
+        writeHeader();
+    }
+
+    /* the newest max records, oldest first */
+    public synchronized ArrayList<LogMessage> readLast(int max) {
+        int n = Math.min(max, mCount);
+        LogMessage[] logs = new LogMessage[n];
+
+        int end = mHead;
+        for (int i = n - 1; i >= 0; i--) {
+            if (end == 0) {
+                end = mWrapAt;
+            }
+            int length = mMap.getInt(HEADER_SIZE + end - 4);
+            int pos = end - RECORD_OVERHEAD - length;
+
+            long time = mMap.getLong(HEADER_SIZE + pos + 4);
+            byte[] bytes = new byte[length];
+            mMap.position(HEADER_SIZE + pos + 4 + 8);
+            mMap.get(bytes);
+            logs[i] = new LogMessage(time, new String(bytes, UTF8));
+
+            end = pos;
+        }
+        return new ArrayList<>(Arrays.asList(logs));
+    }
+
+    public synchronized int size() {
+        return mCount;
+    }
+
+    public synchronized void close() throws IOException {
+        mFile.close();
+    }
+
+    private void evictOldest() {
+        mTail = normalize(mTail);
+        mTail += RECORD_OVERHEAD + mMap.getInt(HEADER_SIZE + mTail);
+        mCount--;
+        mTail = mCount == 0 ? mHead : normalize(mTail);
+    }
+
+    /* follow a wrap marker or the end of the data area back to offset 0 */
+    private int normalize(int pos) {
+        if (pos + 4 > mCapacity || mMap.getInt(HEADER_SIZE + pos) == WRAP) {
+            return 0;
+        }
+        return pos;
+    }
+
+    private void writeHeader() {
+        mMap.putInt(OFF_HEAD, mHead);
+        mMap.putInt(OFF_TAIL, mTail);
+        mMap.putInt(OFF_COUNT, mCount);
+        mMap.putInt(OFF_WRAP, mWrapAt);
+    }
+}
@@ -22,7 +22,6 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import com.firebase.client.AuthData;
 import com.firebase.client.FirebaseError;
 
 import java.util.Map;
@@ -113,10 +112,10 @@ public class LoginActivity extends Activity implements
     }
 
     @Override
-    public void onLoginSuccess(AuthData authData) {
+    public void onLoginSuccess(String uid) {
         showProgress(false);
         Intent returnIntent = new Intent();
-        returnIntent.putExtra("uid", authData.getUid());
+        returnIntent.putExtra("uid", uid);
         returnIntent.putExtra("email", mEmailView.getText().toString());
         returnIntent.putExtra("password", mPasswordView.getText().toString());
         setResult(RESULT_OK, returnIntent);
@@ -1,9 +1,8 @@
 package ca.klostermann.philip.location_tracker;
 
-import com.firebase.client.AuthData;
 import com.firebase.client.FirebaseError;
 
 public interface LoginTaskListener {
-    void onLoginSuccess(AuthData authData);
+    void onLoginSuccess(String uid);
     void onLoginFailure(FirebaseError firebaseError);
 }
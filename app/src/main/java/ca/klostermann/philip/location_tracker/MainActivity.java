@@ -10,6 +10,7 @@ import android.os.IBinder;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Messenger;
+import android.os.Parcelable;
 import android.os.RemoteException;
 import android.util.Log;
 import android.view.Menu;
@@ -23,23 +24,23 @@ import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.ListView;
 import android.widget.Spinner;
-import android.widget.ScrollView;
-import android.widget.TextView;
 
 import com.firebase.client.Firebase;
 
 import java.net.URL;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
-import java.util.Locale;
 
 public class MainActivity extends Activity {
 	private static final String TAG = "TripTracker/Main";
 	static final int LOGIN_REQUEST = 1;
+	/* lines kept in the log view, the oldest are dropped beyond that */
+	static final int MAX_LOG_LINES = 500;
 
 	private CheckBox enabler;
+	private TrackView track;
+	private LogAdapter logAdapter;
 
 	Messenger mService = null;
 	boolean mIsBound;
@@ -68,15 +69,19 @@ public class MainActivity extends Activity {
 
 				String e = endpoint.getText().toString().trim();
 
+				/* without a scheme host:port is taken for a plain HTTP server,
+				 * anything else for Firebase */
 				if(!e.matches("(?i)^https?:\\/\\/.+")) {
-					e = "https://" + e;
+					e = (e.matches("^[^/]+:\\d+(/.*)?$") ? "http://" : "https://") + e;
 					endpoint.setText(e);
 				}
 
 				try {
 					URL u = new URL(e);
-					if(!u.getHost().matches("(?i)^.+?\\.firebaseio.com$")) {
-						throw new Exception("Not a Firebase URL");
+					if(!Backends.isSupported(u)) {
+						endpoint.setError("Not a Firebase URL, other servers need an explicit port");
+						Prefs.putEndpoint(MainActivity.this, null);
+						return;
 					}
 
 					e = u.toURI().toString();
@@ -85,7 +90,7 @@ public class MainActivity extends Activity {
 					Prefs.putUserId(MainActivity.this, null);
 				}
 				catch (Exception ex) {
-					endpoint.setError("Invalid Firebase URL");
+					endpoint.setError("Invalid URL");
 					Prefs.putEndpoint(MainActivity.this, null);
 					return;
 				}
@@ -135,6 +140,11 @@ public class MainActivity extends Activity {
 			}
 		});
 
+		track = (TrackView)findViewById(R.id.main_track);
+
+		logAdapter = new LogAdapter(this, MAX_LOG_LINES);
+		((ListView)findViewById(R.id.main_log)).setAdapter(logAdapter);
+
 		enabler = (CheckBox)findViewById(R.id.main_enabler);
 
 		enabler.setOnClickListener(new OnClickListener() {
@@ -205,6 +215,20 @@ public class MainActivity extends Activity {
 			Intent i = new Intent(this, LoginActivity.class);
 			startActivityForResult(i, LOGIN_REQUEST);
 			return true;
+
+		case R.id.menu_metrics:
+			logText("Track view: " + track.getFrameStats());
+			if (mService == null) {
+				logText("Service not running");
+				return true;
+			}
+			try {
+				mService.send(Message.obtain(null, TrackerService.MSG_DUMP_METRICS));
+			}
+			catch (RemoteException e) {
+				Log.e(TAG, e.getMessage());
+			}
+			return true;
 		}
 
 		return super.onOptionsItemSelected(item);
@@ -238,28 +262,9 @@ public class MainActivity extends Activity {
 		}
 	}
 
+	/* the list keeps itself scrolled to the bottom, see transcriptMode */
 	public void logText(String text) {
-		logText(text, new Date());
-	}
-
-	public void logText(String text, Date date) {
-		/* DateFormat.SHORT doesn't honor 24 hour time :( */
-		String now = (new SimpleDateFormat("HH:mm:ss", Locale.US)).format(date);
-
-		TextView log = (TextView)findViewById(R.id.main_log);
-		log.append("[" + now + "] " + text + "\n");
-
-		/* we have to scroll asynchronously because the view isn't updated from
-		 * our append() yet, so scrolling to its bottom will not actually reach
-		 * the bottom */
-		final ScrollView scroller = (ScrollView)findViewById(
-			R.id.main_log_scroller);
-		scroller.post(new Runnable() {            
-			@Override
-			public void run() {
-				scroller.fullScroll(View.FOCUS_DOWN);
-			}
-		});
+		logAdapter.add(new LogMessage(System.currentTimeMillis(), text));
 	}
 
 	class IncomingHandler extends Handler {
@@ -267,20 +272,28 @@ public class MainActivity extends Activity {
 		public void handleMessage(Message msg) {
 			switch (msg.what) {
 			case TrackerService.MSG_LOG:
-				logText(msg.getData().getString("log"));
+				logAdapter.addAll(getLogs(msg));
 				break;
 
 			case TrackerService.MSG_LOG_RING:
-				TextView log = (TextView)findViewById(R.id.main_log);
-				log.setText("");
+				logAdapter.clear();
+				logAdapter.addAll(getLogs(msg));
+				break;
 
-				ArrayList<LogMessage> logs = (ArrayList)msg.obj;
+			case TrackerService.MSG_TRACK:
+				Bundle b = msg.getData();
+				track.setTrack(b.getLongArray("times"), b.getDoubleArray("latitudes"),
+					b.getDoubleArray("longitudes"));
+				break;
 
-				for (int i = 0; i < logs.size(); i++) {
-					LogMessage l = logs.get(i);
-					logText(l.message, l.date);
+			case TrackerService.MSG_LOCATION:
+				Bundle p = msg.getData();
+				long[] times = p.getLongArray("times");
+				double[] latitudes = p.getDoubleArray("latitudes");
+				double[] longitudes = p.getDoubleArray("longitudes");
+				for (int i = 0; i < times.length; i++) {
+					track.addPoint(times[i], latitudes[i], longitudes[i]);
 				}
-
 				break;
 
 			default:
@@ -289,6 +302,19 @@ public class MainActivity extends Activity {
 		}
 	}
 
+	/* the batch of log lines in a MSG_LOG or MSG_LOG_RING message */
+	private static ArrayList<LogMessage> getLogs(Message msg) {
+		Bundle b = msg.getData();
+		b.setClassLoader(LogMessage.class.getClassLoader());
+		Parcelable[] logs = b.getParcelableArray("logs");
+
+		ArrayList<LogMessage> list = new ArrayList<>(logs.length);
+		for (Parcelable log : logs) {
+			list.add((LogMessage)log);
+		}
+		return list;
+	}
+
 	private ServiceConnection mConnection = new ServiceConnection() {
 		public void onServiceConnected(ComponentName className,
 		IBinder service) {
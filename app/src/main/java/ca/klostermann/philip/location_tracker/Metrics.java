@@ -0,0 +1,233 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the fix path, from the broadcast to
+ * the acknowledged write. Counters and histograms are registered once by
+ * name and then recorded into from any thread without locking.
+ *
+ * Histograms bucket microseconds log-linearly like HdrHistogram: values
+ * below 8us exactly, above that 8 buckets per power of two, so a reported
+ * percentile is at most 12.5% above the recorded value. Up to about four
+ * hours fit, anything longer lands in the last bucket.
+ */
+public class Metrics {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = 256;
+
+    public static final class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    public static final class Histogram {
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalMicros = new AtomicLong();
+        private final AtomicLong mMaxMicros = new AtomicLong();
+
+        public void recordNanos(long nanos) {
+            recordMicros(nanos / 1000);
+        }
+
+        public void recordMillis(long millis) {
+            recordMicros(millis * 1000);
+        }
+
+        public void recordMicros(long micros) {
+            if (micros < 0) {
+                micros = 0;
+            }
+            mBuckets.incrementAndGet(bucket(micros));
+            mCount.incrementAndGet();
+            mTotalMicros.addAndGet(micros);
+            long max;
+            while (micros > (max = mMaxMicros.get()) && !mMaxMicros.compareAndSet(max, micros)) {
+            }
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        /* consistent enough for reporting, recording may go on meanwhile */
+        public Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = mBuckets.get(i);
+                count += counts[i];
+            }
+            return new Snapshot(counts, count, mTotalMicros.get(), mMaxMicros.get());
+        }
+    }
+
+    public static final class Snapshot {
+        private final long[] mCounts;
+        public final long count;
+        public final long totalMicros;
+        public final long maxMicros;
+
+        Snapshot(long[] counts, long count, long totalMicros, long maxMicros) {
+            mCounts = counts;
+            this.count = count;
+            this.totalMicros = totalMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getMeanMicros() {
+            return count == 0 ? 0 : totalMicros / count;
+        }
+
+        /* upper end of the bucket the quantile (0-1) falls into, at most the max */
+        public long getPercentileMicros(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long)Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mCounts[i];
+                if (seen >= rank) {
+                    return Math.min(maxMicros, upperBound(i));
+                }
+            }
+            return maxMicros;
+        }
+    }
+
+    private final Map<String, Counter> mCounters = new LinkedHashMap<>();
+    private final Map<String, Histogram> mHistograms = new LinkedHashMap<>();
+
+    /* registers the counter on first use, keep the returned one around */
+    public synchronized Counter counter(String name) {
+        Counter counter = mCounters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            mCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+    public synchronized Histogram histogram(String name) {
+        Histogram histogram = mHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            mHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Compact form for publishing: counters as numbers, histograms that
+     * recorded anything as {n, mean, p50, p90, p99, max} in microseconds.
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Counter> entry : counters().entrySet()) {
+            values.put(key(entry.getKey()), entry.getValue().get());
+        }
+        for (Map.Entry<String, Histogram> entry : histograms().entrySet()) {
+            Snapshot snapshot = entry.getValue().snapshot();
+            if (snapshot.count == 0) {
+                continue;
+            }
+            Map<String, Object> histogram = new LinkedHashMap<>();
+            histogram.put("n", snapshot.count);
+            histogram.put("mean", snapshot.getMeanMicros());
+            histogram.put("p50", snapshot.getPercentileMicros(0.50));
+            histogram.put("p90", snapshot.getPercentileMicros(0.90));
+            histogram.put("p99", snapshot.getPercentileMicros(0.99));
+            histogram.put("max", snapshot.maxMicros);
+            values.put(key(entry.getKey()), histogram);
+        }
+        return values;
+    }
+
+    /* one line for the counters and one per histogram, for the log */
+    public List<String> format() {
+        List<String> lines = new ArrayList<>();
+        StringBuilder sb = new StringBuilder("Counters:");
+        for (Map.Entry<String, Counter> entry : counters().entrySet()) {
+            sb.append(' ').append(entry.getKey()).append('=').append(entry.getValue().get());
+        }
+        lines.add(sb.toString());
+        for (Map.Entry<String, Histogram> entry : histograms().entrySet()) {
+            Snapshot snapshot = entry.getValue().snapshot();
+            if (snapshot.count == 0) {
+                continue;
+            }
+            lines.add(entry.getKey() + ": n=" + snapshot.count +
+                    " mean=" + formatMicros(snapshot.getMeanMicros()) +
+                    " p50=" + formatMicros(snapshot.getPercentileMicros(0.50)) +
+                    " p99=" + formatMicros(snapshot.getPercentileMicros(0.99)) +
+                    " max=" + formatMicros(snapshot.maxMicros));
+        }
+        return lines;
+    }
+
+    private synchronized Map<String, Counter> counters() {
+        return new LinkedHashMap<>(mCounters);
+    }
+
+    private synchronized Map<String, Histogram> histograms() {
+        return new LinkedHashMap<>(mHistograms);
+    }
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int)micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int index = SUB_BUCKETS + shift * SUB_BUCKETS +
+                (int)((micros >>> shift) & (SUB_BUCKETS - 1));
+        return Math.min(BUCKETS - 1, index);
+    }
+
+    /* largest value that lands in the bucket */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lower = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /* Firebase keys can't contain dots */
+    private static String key(String name) {
+        return name.replace('.', '_');
+    }
+
+    private static String formatMicros(long micros) {
+        if (micros < 10000) {
+            return micros + "us";
+        }
+        if (micros < 10000000) {
+            return (micros / 1000) + "ms";
+        }
+        return (micros / 1000000) + "s";
+    }
+}
@@ -10,6 +10,12 @@ public final class Prefs {
 	public static String USER_ID = "account_id";
 	public static String USER_EMAIL = "account_email";
 	public static String USER_PASSWORD = "account_password";
+	public static String UPLOAD_BATCH_SIZE = "upload_batch_size";
+	public static String UPLOAD_MAX_AGE = "upload_max_age";
+	public static String ADAPTIVE_SAMPLING = "adaptive_sampling";
+	public static String SIMPLIFY_TOLERANCE = "simplify_tolerance";
+	public static String UPLOAD_COMPACT = "upload_compact";
+	public static String UTC_DAYS = "utc_days";
 
     public static SharedPreferences get(final Context context) {
         return context.getSharedPreferences("ca.klostermann.philip.location_tracker",
@@ -27,6 +33,20 @@ public final class Prefs {
 			return val;
 	}
 
+	public static int getIntPref(final Context context, String pref,
+	int def) {
+		String val = Prefs.getPref(context, pref, null);
+		if (val == null)
+			return def;
+
+		try {
+			return Integer.parseInt(val);
+		}
+		catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
 	public static void putPref(final Context context, String pref,
 	String val) {
 		SharedPreferences prefs = Prefs.get(context);
@@ -49,6 +69,38 @@ public final class Prefs {
 		return e.equals("true");
 	}
 
+	/* number of buffered locations that triggers an upload */
+	public static int getUploadBatchSize(final Context context) {
+		return Prefs.getIntPref(context, UPLOAD_BATCH_SIZE, 20);
+	}
+
+	/* seconds the oldest buffered location may wait before an upload */
+	public static int getUploadMaxAge(final Context context) {
+		return Prefs.getIntPref(context, UPLOAD_MAX_AGE, 120);
+	}
+
+	/* upload batches in the compact binary encoding instead of one node per location */
+	public static boolean getUploadCompact(final Context context) {
+		String e = Prefs.getPref(context, UPLOAD_COMPACT, "false");
+		return e.equals("true");
+	}
+
+	/* meters a dropped fix may deviate from the uploaded track, 0 uploads every fix */
+	public static int getSimplifyTolerance(final Context context) {
+		return Prefs.getIntPref(context, SIMPLIFY_TOLERANCE, 10);
+	}
+
+	/* start the day buckets of the locations path at midnight UTC instead of local midnight */
+	public static boolean getUtcDays(final Context context) {
+		String e = Prefs.getPref(context, UTC_DAYS, "false");
+		return e.equals("true");
+	}
+
+	public static boolean getAdaptiveSampling(final Context context) {
+		String e = Prefs.getPref(context, ADAPTIVE_SAMPLING, "true");
+		return e.equals("true");
+	}
+
 	public static String getUserId(final Context context) {
 		return Prefs.getPref(context, USER_ID, null);
 	}
@@ -74,6 +126,30 @@ public final class Prefs {
 		Prefs.putPref(context, ENABLED, (enabled ? "true" : "false"));
 	}
 
+	public static void putUploadBatchSize(final Context context, int size) {
+		Prefs.putPref(context, UPLOAD_BATCH_SIZE, String.valueOf(size));
+	}
+
+	public static void putUploadMaxAge(final Context context, int seconds) {
+		Prefs.putPref(context, UPLOAD_MAX_AGE, String.valueOf(seconds));
+	}
+
+	public static void putUploadCompact(final Context context, boolean compact) {
+		Prefs.putPref(context, UPLOAD_COMPACT, (compact ? "true" : "false"));
+	}
+
+	public static void putSimplifyTolerance(final Context context, int meters) {
+		Prefs.putPref(context, SIMPLIFY_TOLERANCE, String.valueOf(meters));
+	}
+
+	public static void putUtcDays(final Context context, boolean utc) {
+		Prefs.putPref(context, UTC_DAYS, (utc ? "true" : "false"));
+	}
+
+	public static void putAdaptiveSampling(final Context context, boolean adaptive) {
+		Prefs.putPref(context, ADAPTIVE_SAMPLING, (adaptive ? "true" : "false"));
+	}
+
 	public static void putUserId(final Context context, String id) {
 		Prefs.putPref(context, USER_ID, id);
 	}
@@ -0,0 +1,25 @@
+package ca.klostermann.philip.location_tracker;
+
+/**
+ * Decides how often and how accurately the fused provider is asked for
+ * locations. The service feeds every fix in and re-issues its location
+ * request only when onFix() reports a change.
+ */
+public interface SamplingPolicy {
+    /* same values as LocationRequest.PRIORITY_* */
+    int PRIORITY_HIGH_ACCURACY = 100;
+    int PRIORITY_BALANCED_POWER_ACCURACY = 102;
+    int PRIORITY_LOW_POWER = 104;
+
+    /* returns true if the interval or priority changed */
+    boolean onFix(long time, double latitude, double longitude, float speed, float accuracy);
+
+    long getInterval();
+
+    long getFastestInterval();
+
+    int getPriority();
+
+    /* short description of the current mode for the log */
+    String describe();
+}
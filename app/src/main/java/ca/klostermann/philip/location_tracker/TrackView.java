@@ -0,0 +1,354 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import java.util.Arrays;
+
+/**
+ * Draws the day's track as a polyline, following the newest point until the
+ * user pans; pinch to zoom.
+ *
+ * Points are projected to meters around the first one and kept in levels of
+ * detail: level 0 has every point, level k only those at least 2^(k-1)
+ * meters from the previous one kept. The coarsest level whose spacing is
+ * still under LOD_MIN_PIXELS at the current zoom is drawn. Each level is
+ * split into chunks with bounding boxes, so only chunks near the viewport
+ * are looked at.
+ *
+ * The visible segments are kept in a screen-space buffer built for an area
+ * around the viewport. A new point only appends to it, panning is a canvas
+ * translation, and it is only rebuilt on zoom or when the viewport leaves
+ * the area it was built for.
+ */
+public class TrackView extends View {
+    static final int CHUNK_SIZE = 256;
+    static final int LOD_LEVELS = 16;
+    static final float LOD_MIN_PIXELS = 2;
+    /* the buffer covers this many viewports in each direction around the visible one */
+    static final float BUFFER_MARGIN = 1;
+    static final float MIN_SCALE = 0.0005f;
+    static final float MAX_SCALE = 20;
+
+    /* one level of detail, points in meters east/north of the origin */
+    private static final class Level {
+        final float spacing;
+        float[] x = new float[CHUNK_SIZE];
+        float[] y = new float[CHUNK_SIZE];
+        int size;
+        /* minX, minY, maxX, maxY per chunk, including the segment into the chunk */
+        float[] bounds = new float[4 * 4];
+
+        Level(float spacing) {
+            this.spacing = spacing;
+        }
+
+        void add(float px, float py) {
+            if (size > 0 && spacing > 0) {
+                float dx = px - x[size - 1], dy = py - y[size - 1];
+                if (dx * dx + dy * dy < spacing * spacing) {
+                    return;
+                }
+            }
+            if (size == x.length) {
+                x = Arrays.copyOf(x, size * 2);
+                y = Arrays.copyOf(y, size * 2);
+            }
+            x[size] = px;
+            y[size] = py;
+
+            int chunk = size / CHUNK_SIZE;
+            if (chunk * 4 >= bounds.length) {
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            }
+            int b = chunk * 4;
+            if (size % CHUNK_SIZE == 0) {
+                /* a new chunk starts with the segment from the previous point */
+                int from = size > 0 ? size - 1 : size;
+                bounds[b] = Math.min(px, x[from]);
+                bounds[b + 1] = Math.min(py, y[from]);
+                bounds[b + 2] = Math.max(px, x[from]);
+                bounds[b + 3] = Math.max(py, y[from]);
+            } else {
+                bounds[b] = Math.min(bounds[b], px);
+                bounds[b + 1] = Math.min(bounds[b + 1], py);
+                bounds[b + 2] = Math.max(bounds[b + 2], px);
+                bounds[b + 3] = Math.max(bounds[b + 3], py);
+            }
+            size++;
+        }
+    }
+
+    private final Level[] mLevels = new Level[LOD_LEVELS];
+    private boolean mHasOrigin;
+    private double mOriginLatitude;
+    private double mOriginLongitude;
+    private double mMetersPerDegreeLon;
+    private long mLastTime = Long.MIN_VALUE;
+    private float mLastX, mLastY;
+
+    /* view transform: world point at the center of the view, pixels per meter */
+    private float mCenterX, mCenterY;
+    private float mScale = 0.05f;
+    private boolean mFollow = true;
+
+    /* segment buffer, in pixels relative to mBufferCenter at mBufferScale */
+    private float[] mSegments = new float[4 * 1024];
+    private int mSegmentCount;
+    private Level mBufferLevel;
+    private int mBufferPoints;
+    private float mBufferScale;
+    private float mBufferCenterX, mBufferCenterY;
+    private float mBufferMinX, mBufferMinY, mBufferMaxX, mBufferMaxY;
+    private boolean mBufferValid;
+
+    private final Paint mTrackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mPositionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final ScaleGestureDetector mScaleDetector;
+    private float mTouchX, mTouchY;
+
+    private long mFrames;
+    private long mFrameNanos;
+    private long mMaxFrameNanos;
+    private long mRebuilds;
+
+    public TrackView(Context context) {
+        this(context, null);
+    }
+
+    public TrackView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        for (int i = 0; i < LOD_LEVELS; i++) {
+            mLevels[i] = new Level(i == 0 ? 0 : (float)(1 << (i - 1)));
+        }
+
+        mTrackPaint.setColor(Color.rgb(0x33, 0x99, 0xff));
+        mTrackPaint.setStrokeWidth(4);
+        mTrackPaint.setStrokeCap(Paint.Cap.ROUND);
+        mTrackPaint.setStyle(Paint.Style.STROKE);
+        mPositionPaint.setColor(Color.RED);
+        mPositionPaint.setStyle(Paint.Style.FILL);
+
+        mScaleDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        zoom(detector.getScaleFactor(), detector.getFocusX(),
+                                detector.getFocusY());
+                        return true;
+                    }
+                });
+    }
+
+    /* replaces the track, times must be ascending */
+    public void setTrack(long[] times, double[] latitudes, double[] longitudes) {
+        for (int i = 0; i < LOD_LEVELS; i++) {
+            mLevels[i] = new Level(mLevels[i].spacing);
+        }
+        mHasOrigin = false;
+        mLastTime = Long.MIN_VALUE;
+        mBufferValid = false;
+        mFollow = true;
+        for (int i = 0; i < times.length; i++) {
+            add(times[i], latitudes[i], longitudes[i]);
+        }
+        invalidate();
+    }
+
+    /* appends a point, points not newer than the last one are ignored */
+    public void addPoint(long time, double latitude, double longitude) {
+        if (add(time, latitude, longitude)) {
+            invalidate();
+        }
+    }
+
+    public int getPointCount() {
+        return mLevels[0].size;
+    }
+
+    /* time spent in onDraw() */
+    public String getFrameStats() {
+        return mFrames + " frames, avg " +
+                String.format("%.1f", mFrameNanos / 1000.0 / Math.max(1, mFrames)) + "us, max " +
+                (mMaxFrameNanos / 1000) + "us, " + mRebuilds + " rebuilds";
+    }
+
+    private boolean add(long time, double latitude, double longitude) {
+        if (time <= mLastTime) {
+            return false;
+        }
+        mLastTime = time;
+
+        if (!mHasOrigin) {
+            mHasOrigin = true;
+            mOriginLatitude = latitude;
+            mOriginLongitude = longitude;
+            mMetersPerDegreeLon = Geo.METERS_PER_DEGREE_LAT
+                    * Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+        }
+        mLastX = (float)((longitude - mOriginLongitude) * mMetersPerDegreeLon);
+        mLastY = (float)((latitude - mOriginLatitude) * Geo.METERS_PER_DEGREE_LAT);
+        for (Level level : mLevels) {
+            level.add(mLastX, mLastY);
+        }
+
+        if (mFollow) {
+            mCenterX = mLastX;
+            mCenterY = mLastY;
+        }
+        return true;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        mBufferValid = false;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        mScaleDetector.onTouchEvent(event);
+
+        switch (event.getActionMasked()) {
+        case MotionEvent.ACTION_DOWN:
+            mTouchX = event.getX();
+            mTouchY = event.getY();
+            return true;
+
+        case MotionEvent.ACTION_MOVE:
+            if (!mScaleDetector.isInProgress() && event.getPointerCount() == 1) {
+                mFollow = false;
+                mCenterX -= (event.getX() - mTouchX) / mScale;
+                mCenterY += (event.getY() - mTouchY) / mScale;
+                invalidate();
+            }
+            mTouchX = event.getX();
+            mTouchY = event.getY();
+            return true;
+        }
+        return true;
+    }
+
+    private void zoom(float factor, float focusX, float focusY) {
+        float scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, mScale * factor));
+        if (!mFollow) {
+            /* keep the world point under the focus where it is */
+            float dx = focusX - getWidth() / 2f, dy = focusY - getHeight() / 2f;
+            mCenterX += dx / mScale - dx / scale;
+            mCenterY -= dy / mScale - dy / scale;
+        }
+        mScale = scale;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
+        Level level = mLevels[0];
+        if (level.size == 0) {
+            return;
+        }
+
+        float halfWidth = getWidth() / 2f / mScale;
+        float halfHeight = getHeight() / 2f / mScale;
+
+        /* coarsest level whose point spacing is still too small to see */
+        for (int i = LOD_LEVELS - 1; i > 0; i--) {
+            if (mLevels[i].spacing * mScale <= LOD_MIN_PIXELS) {
+                level = mLevels[i];
+                break;
+            }
+        }
+
+        if (!mBufferValid || level != mBufferLevel || mScale != mBufferScale
+                || mCenterX - halfWidth < mBufferMinX || mCenterX + halfWidth > mBufferMaxX
+                || mCenterY - halfHeight < mBufferMinY || mCenterY + halfHeight > mBufferMaxY) {
+            rebuild(level, halfWidth, halfHeight);
+        } else if (mBufferPoints < level.size) {
+            appendSegments(level, mBufferPoints);
+        }
+
+        canvas.save();
+        canvas.translate(getWidth() / 2f + (mBufferCenterX - mCenterX) * mScale,
+                getHeight() / 2f - (mBufferCenterY - mCenterY) * mScale);
+        canvas.drawLines(mSegments, 0, mSegmentCount * 4, mTrackPaint);
+
+        /* the coarser levels lag behind the newest point */
+        int last = level.size - 1;
+        float tailX = (level.x[last] - mBufferCenterX) * mBufferScale;
+        float tailY = -(level.y[last] - mBufferCenterY) * mBufferScale;
+        float headX = (mLastX - mBufferCenterX) * mBufferScale;
+        float headY = -(mLastY - mBufferCenterY) * mBufferScale;
+        canvas.drawLine(tailX, tailY, headX, headY, mTrackPaint);
+        canvas.drawCircle(headX, headY, 8, mPositionPaint);
+        canvas.restore();
+
+        long nanos = System.nanoTime() - start;
+        mFrames++;
+        mFrameNanos += nanos;
+        mMaxFrameNanos = Math.max(mMaxFrameNanos, nanos);
+    }
+
+    private void rebuild(Level level, float halfWidth, float halfHeight) {
+        mRebuilds++;
+        mBufferValid = true;
+        mBufferLevel = level;
+        mBufferScale = mScale;
+        mBufferCenterX = mCenterX;
+        mBufferCenterY = mCenterY;
+        float marginX = halfWidth * (1 + 2 * BUFFER_MARGIN);
+        float marginY = halfHeight * (1 + 2 * BUFFER_MARGIN);
+        mBufferMinX = mCenterX - marginX;
+        mBufferMaxX = mCenterX + marginX;
+        mBufferMinY = mCenterY - marginY;
+        mBufferMaxY = mCenterY + marginY;
+        mSegmentCount = 0;
+
+        int chunks = (level.size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        for (int c = 0; c < chunks; c++) {
+            int b = c * 4;
+            if (level.bounds[b] > mBufferMaxX || level.bounds[b + 2] < mBufferMinX
+                    || level.bounds[b + 1] > mBufferMaxY || level.bounds[b + 3] < mBufferMinY) {
+                continue;
+            }
+            int from = Math.max(1, c * CHUNK_SIZE);
+            int to = Math.min(level.size, (c + 1) * CHUNK_SIZE);
+            for (int i = from; i < to; i++) {
+                addSegment(level, i);
+            }
+        }
+        mBufferPoints = level.size;
+    }
+
+    private void appendSegments(Level level, int from) {
+        for (int i = Math.max(1, from); i < level.size; i++) {
+            float x0 = level.x[i - 1], y0 = level.y[i - 1];
+            float x1 = level.x[i], y1 = level.y[i];
+            if (Math.max(x0, x1) >= mBufferMinX && Math.min(x0, x1) <= mBufferMaxX
+                    && Math.max(y0, y1) >= mBufferMinY && Math.min(y0, y1) <= mBufferMaxY) {
+                addSegment(level, i);
+            }
+        }
+        mBufferPoints = level.size;
+    }
+
+    /* segment from point i - 1 to i, y grows downwards on screen */
+    private void addSegment(Level level, int i) {
+        if ((mSegmentCount + 1) * 4 > mSegments.length) {
+            mSegments = Arrays.copyOf(mSegments, mSegments.length * 2);
+        }
+        int s = mSegmentCount * 4;
+        mSegments[s] = (level.x[i - 1] - mBufferCenterX) * mBufferScale;
+        mSegments[s + 1] = -(level.y[i - 1] - mBufferCenterY) * mBufferScale;
+        mSegments[s + 2] = (level.x[i] - mBufferCenterX) * mBufferScale;
+        mSegments[s + 3] = -(level.y[i] - mBufferCenterY) * mBufferScale;
+        mSegmentCount++;
+    }
+}
@@ -1,18 +1,13 @@
 package ca.klostermann.philip.location_tracker;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -21,22 +16,27 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.location.Location;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.Message;
 import android.os.Messenger;
-import android.os.PowerManager;
 import android.os.RemoteException;
-import android.provider.Settings;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.firebase.client.AuthData;
+import com.firebase.client.DataSnapshot;
 import com.firebase.client.Firebase;
 import com.firebase.client.FirebaseError;
+import com.firebase.client.ValueEventListener;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GooglePlayServicesUtil;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -46,9 +46,6 @@ import com.google.android.gms.common.api.GoogleApiClient.OnConnectionFailedListe
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationServices;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 
 public class TrackerService extends Service {
 	private static final String TAG = "LocationTracker/Service";
@@ -63,26 +60,86 @@ public class TrackerService extends Service {
 	private int freqSeconds;
 	private String endpoint;
 
-	private static volatile PowerManager.WakeLock wakeLock;
+	private WakeLockManager mWakeLock;
 	private PendingIntent mLocationIntent;
 
 	private GoogleApiClient mGoogleApiClient;
 	private LocationListener mLocationListener;
-	private Firebase mFirebaseRef;
-	private String mUserId;
-	private Location mLastReportedLocation;
-
-	ArrayList<LogMessage> mLogRing = new ArrayList<>();
-	ArrayList<Messenger> mClients = new ArrayList<>();
+	private SamplingPolicy mSamplingPolicy;
+	private GeofenceEngine mGeofenceEngine;
+	private FixProcessor mFixProcessor;
+	private Firebase mGeofenceRef;
+	private ValueEventListener mGeofenceListener;
+	private AuthBackend mBackend;
+	private volatile FirebaseRefCache mRefs;
+	/* reused for every fix, only touched on the pipeline thread */
+	private final StringBuilder mLocationLine = new StringBuilder(48);
+	private LocationOutbox mOutbox;
+	private LocationHistoryStore mHistory;
+	private volatile LocationUploader mUploader;
+	private LocationPipeline mPipeline;
+	private BroadcastReceiver mUploadTriggerReceiver;
+	private BroadcastReceiver mTimeZoneReceiver;
+
+	/* latencies and counts along the fix path, see dumpMetrics() and publishMetrics() */
+	final Metrics mMetrics = new Metrics();
+	private final Metrics.Histogram mReceiveTime = mMetrics.histogram("fix.receive");
+	private final Metrics.Histogram mHistoryTime = mMetrics.histogram("history.append");
+	private final Metrics.Histogram mOutboxTime = mMetrics.histogram("outbox.append");
+	private final Metrics.Histogram mLogTime = mMetrics.histogram("log.write");
+	private final Metrics.Counter mFixesReceived = mMetrics.counter("fix.received");
+	private final Metrics.Counter mFixesReported = mMetrics.counter("fix.reported");
+	private final Metrics.Counter mFixesKept = mMetrics.counter("fix.kept");
+	private final Metrics.Counter mLogLines = mMetrics.counter("log.lines");
+	private long mMetricsPublishedAt;
+
+	final LogRing mLogRing = new LogRing(MAX_RING_SIZE);
+	private LogRingFile mLogFile;
+	final CopyOnWriteArrayList<Messenger> mClients = new CopyOnWriteArrayList<>();
 	final Messenger mMessenger = new Messenger(new IncomingHandler());
 
+	/* log lines waiting to be sent to clients in one batch */
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+	private final ArrayList<LogMessage> mPendingLogs = new ArrayList<>();
+	private boolean mLogFlushScheduled;
+	private long mLogsQueued;
+	private long mLogBatchesSent;
+
 	static final int MSG_REGISTER_CLIENT = 1;
 	static final int MSG_UNREGISTER_CLIENT = 2;
 	static final int MSG_LOG = 3;
 	static final int MSG_LOG_RING = 4;
-
-	static final String LOGFILE_NAME = "TrackerService.log";
+	/* today's track, replacing what the client has */
+	static final int MSG_TRACK = 5;
+	/* new points of the track, appended */
+	static final int MSG_LOCATION = 6;
+	/* from a client: log the current metrics */
+	static final int MSG_DUMP_METRICS = 7;
+
+	/* log lines logged within this window go to clients in one message */
+	static final long LOG_BATCH_DELAY = 250;
+
+	static final String LOGFILE_NAME = "TrackerService.ring";
+	static final String LEGACY_LOGFILE_NAME = "TrackerService.log";
+	static final int LOGFILE_SIZE = 64 * 1024;
+	static final String OUTBOX_NAME = "TrackerService.outbox";
+	static final String HISTORY_DIR = "history";
+	static final int HISTORY_MAX_DAYS = 90;
+	static final long HISTORY_MAX_BYTES = 64 * 1024 * 1024;
 	static final int MAX_RING_SIZE = 250;
+	/* points per track message, 24 bytes each keeps a message around 100 KB,
+	 * well under the 1 MB binder buffer a remote client shares */
+	static final int TRACK_CHUNK_SIZE = 4096;
+
+	/* longest a fix is held back by the simplifier before it is uploaded anyway */
+	static final long SIMPLIFY_MAX_HOLD = 60 * 1000;
+	static final int SIMPLIFY_MAX_WINDOW = 120;
+
+	/* metrics are published at most this often, along with a location upload */
+	static final long METRICS_PUBLISH_INTERVAL = 15 * 60 * 1000;
+
+	/* longest the CPU is kept awake for a single fix or upload */
+	static final long WAKE_LOCK_TIMEOUT = 30 * 1000;
 
 	@Override
 	public IBinder onBind(Intent intent) {
@@ -93,6 +150,20 @@ public class TrackerService extends Service {
 	public void onCreate() {
 		super.onCreate();
 
+		// load the most recent log messages from disk
+		long recoveryStart = System.nanoTime();
+		openLogFile();
+		if(mLogFile != null) {
+			ArrayList<LogMessage> logs = mLogFile.readLast(MAX_RING_SIZE);
+			mLogRing.addAll(logs);
+
+			/* should stay flat no matter how much has been logged */
+			long recoveryMicros = (System.nanoTime() - recoveryStart) / 1000;
+			Log.d(TAG, "Recovered " + logs.size() + " of " + mLogFile.size() +
+					" logs from disk in " + recoveryMicros + "us");
+			logText("Log recovered in " + recoveryMicros + "us");
+		}
+
 		// Check whether Google Play Services is installed
 		int resp = GooglePlayServicesUtil.isGooglePlayServicesAvailable(this);
 		if(resp != ConnectionResult.SUCCESS){
@@ -136,20 +207,57 @@ public class TrackerService extends Service {
 			return;
 		}
 
-		// load saved log messages from disk
-		ArrayList<LogMessage> logs = loadLogsFromDisk();
-		if(logs != null) {
-			Log.d(TAG, "Loaded " + logs.size() + " logs from disk");
+		LocationPost.setDayBucket(Prefs.getUtcDays(this) ? DayBucket.utc() : DayBucket.local());
+		mTimeZoneReceiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				LocationPost.getDayBucket().onTimeZoneChanged();
+			}
+		};
+		registerReceiver(mTimeZoneReceiver, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
+
+		if (Prefs.getAdaptiveSampling(this)) {
+			mSamplingPolicy = new AdaptiveSamplingPolicy(freqSeconds * 1000L);
+		} else {
+			mSamplingPolicy = new FixedSamplingPolicy(freqSeconds * 1000L);
+		}
 
-			if(logs.size() > MAX_RING_SIZE) {
-				mLogRing.addAll(logs.subList(logs.size() - MAX_RING_SIZE, logs.size() - 1));
-			} else {
-				mLogRing.addAll(logs);
+		mWakeLock = new WakeLockManager(this, "locationtracker", WAKE_LOCK_TIMEOUT);
+		mPipeline = new LocationPipeline(new LocationPipeline.Processor() {
+			@Override
+			public void process(Location location) {
+				sendLocation(location);
 			}
+		}, mWakeLock, mMetrics);
 
-			if(logs.size() > (2 * MAX_RING_SIZE)) {
-				cleanLogFile(MAX_RING_SIZE);
+		mGeofenceEngine = new GeofenceEngine(new GeofenceEngine.Listener() {
+			@Override
+			public void onGeofenceEvent(Geofence fence, String event, long time,
+										double latitude, double longitude) {
+				postGeofenceEvent(fence, event, time, latitude, longitude);
 			}
+		});
+
+		mFixProcessor = new FixProcessor(new LocationKalmanFilter(), mSamplingPolicy,
+				mGeofenceEngine, new TrajectorySimplifier(Prefs.getSimplifyTolerance(this),
+						SIMPLIFY_MAX_WINDOW), mFixListener);
+		mFixProcessor.setMetrics(mMetrics);
+
+		try {
+			mOutbox = new LocationOutbox(new File(getFilesDir(), OUTBOX_NAME));
+		} catch (IOException e) {
+			Log.e(TAG, "Opening outbox failed: " + e);
+			logText("Unable to open location outbox, stopping service");
+			stopSelf();
+			return;
+		}
+
+		try {
+			mHistory = new LocationHistoryStore(new File(getFilesDir(), HISTORY_DIR),
+					HISTORY_MAX_DAYS, HISTORY_MAX_BYTES);
+		} catch (IOException e) {
+			/* not fatal, we just don't keep a local history */
+			Log.e(TAG, "Opening location history failed: " + e);
 		}
 
 		Firebase.setAndroidContext(this);
@@ -163,20 +271,36 @@ public class TrackerService extends Service {
 			stopSelf();
 			return;
 		}
+		try {
+			mBackend = Backends.forEndpoint(Prefs.getEndpoint(this));
+		} catch (IllegalArgumentException e) {
+			logText(e.getMessage() + ", stopping service");
+			stopSelf();
+			return;
+		}
 
 		showNotification();
 		isRunning = true;
 
 		logText("Service authenticating...");
-		mFirebaseRef = new Firebase(Prefs.getEndpoint(this));
-		mFirebaseRef.authWithPassword(email, password, new Firebase.AuthResultHandler() {
+		mBackend.login(email, password, new AuthBackend.LoginCallback() {
 			@Override
-			public void onAuthenticated(AuthData authData) {
+			public void onLoggedIn(String uid) {
 				logText("Successfully authenticated");
-				mUserId = authData.getUid();
+				Firebase root = mBackend instanceof FirebaseBackend
+						? ((FirebaseBackend)mBackend).getRoot() : null;
+				mRefs = new FirebaseRefCache(TrackerService.this, mBackend.getSink(), root, uid);
+
+				// set this device's info
+				Map<String, Object> info = new HashMap<>();
+				String devicePath = mRefs.getDevicePath();
+				for (Map.Entry<String, String> entry : getDeviceInfo().entrySet()) {
+					info.put(devicePath + entry.getKey(), entry.getValue());
+				}
+				mRefs.getSink().write(info, null);
 
-				// set this device's info in Firebase
-				mFirebaseRef.child("devices/" + mUserId + "/" + getDeviceId()).setValue(getDeviceInfo());
+				startUploader();
+				startGeofences();
 
 				// mGoogleApiClient.connect() will callback to this
 				mLocationListener = new LocationListener();
@@ -189,7 +313,7 @@ public class TrackerService extends Service {
 			}
 
 			@Override
-			public void onAuthenticationError(FirebaseError firebaseError) {
+			public void onError(FirebaseError firebaseError) {
 				logText("Authentication failed, please check email/password, stopping service");
 				stopSelf();
 			}
@@ -209,7 +333,94 @@ public class TrackerService extends Service {
 			LocationServices.FusedLocationApi.removeLocationUpdates(
 					mGoogleApiClient, mLocationIntent);
 		}
+
+		if(mUploadTriggerReceiver != null) {
+			unregisterReceiver(mUploadTriggerReceiver);
+			mUploadTriggerReceiver = null;
+		}
+		if(mTimeZoneReceiver != null) {
+			unregisterReceiver(mTimeZoneReceiver);
+			mTimeZoneReceiver = null;
+		}
+		if(mGeofenceListener != null) {
+			mGeofenceRef.removeEventListener(mGeofenceListener);
+			mGeofenceListener = null;
+		}
 		isRunning = false;
+
+		if(mPipeline == null) {
+			closeFiles();
+			return;
+		}
+
+		/* runs after every fix queued so far has been processed */
+		mPipeline.post(new Runnable() {
+			@Override
+			public void run() {
+				mPipeline.getHandler().removeCallbacks(mFlushHeldLocation);
+				logText("Location pipeline " + mPipeline.getStats());
+				logText("Locations: " + mFixProcessor.getStats());
+
+				if(mUploader == null) {
+					stopPipeline();
+					return;
+				}
+
+				mFixProcessor.flushHeld();
+				publishMetrics();
+				TrajectorySimplifier simplifier = mFixProcessor.getSimplifier();
+				if (simplifier.getPointsIn() > 0) {
+					logText("Simplifier kept " + simplifier.getPointsOut() + " of " +
+							simplifier.getPointsIn() + " locations, max error " +
+							Math.round(simplifier.getMaxError()) + "m");
+				}
+
+				mUploader.shutdown(new Runnable() {
+					@Override
+					public void run() {
+						stopPipeline();
+					}
+				});
+			}
+		});
+	}
+
+	/* last thing to run on the pipeline thread */
+	private void stopPipeline() {
+		logText("Wake lock " + mWakeLock.getStats());
+		synchronized (mPendingLogs) {
+			logText("Client log IPC: " + mLogsQueued + " lines in " + mLogBatchesSent + " sends");
+		}
+		if(mRefs != null) {
+			logText("Firebase refs: " + mRefs.getStats());
+		}
+		mWakeLock.releaseAll();
+		closeFiles();
+		mPipeline.quit();
+	}
+
+	private void closeFiles() {
+		if(mOutbox != null) {
+			try {
+				mOutbox.close();
+			} catch (IOException e) {
+				Log.e(TAG, "Closing outbox failed: " + e);
+			}
+		}
+		if(mHistory != null) {
+			try {
+				mHistory.close();
+			} catch (IOException e) {
+				Log.e(TAG, "Closing location history failed: " + e);
+			}
+		}
+		if(mLogFile != null) {
+			try {
+				mLogFile.close();
+			} catch (IOException e) {
+				Log.e(TAG, "Closing log file failed: " + e);
+			}
+		}
 	}
 
 	@Override
@@ -231,9 +442,107 @@ public class TrackerService extends Service {
 
 	private LocationRequest createLocationRequest() {
 		return new LocationRequest()
-				.setInterval(freqSeconds * 1000)
-				.setFastestInterval(5000)
-				.setPriority(LocationRequest.PRIORITY_HIGH_ACCURACY);
+				.setInterval(mSamplingPolicy.getInterval())
+				.setFastestInterval(mSamplingPolicy.getFastestInterval())
+				.setPriority(mSamplingPolicy.getPriority());
+	}
+
+	/* (re-)register for location updates, replacing any earlier request */
+	private void requestLocationUpdates() {
+		if (mGoogleApiClient == null || !mGoogleApiClient.isConnected()
+				|| mLocationIntent == null) {
+			return;
+		}
+
+		LocationServices.FusedLocationApi.requestLocationUpdates(
+				mGoogleApiClient, createLocationRequest(), mLocationIntent);
+	}
+
+	private void startUploader() {
+		mUploader = new LocationUploader(
+				mRefs,
+				mOutbox,
+				mPipeline.getLooper(),
+				Prefs.getUploadBatchSize(this),
+				Prefs.getUploadMaxAge(this),
+				Prefs.getUploadCompact(this),
+				mWakeLock,
+				mMetrics,
+				new LocationUploader.Listener() {
+					@Override
+					public void onFlushed(String reason, int points, int bytes, long latencyMs,
+										  long depth) {
+						/* the newest location the server has, not just the newest we sent */
+						long age = System.currentTimeMillis() -
+								mUploader.getLastAcknowledged().getTime();
+						logText("Uploaded " + points + " locations (" + reason + ", " +
+								bytes + " bytes, " + latencyMs + "ms, " + depth + " queued, " +
+								"newest " + (age / 1000) + "s old)");
+
+						/* the radio is up anyway */
+						if (SystemClock.elapsedRealtime() - mMetricsPublishedAt >=
+								METRICS_PUBLISH_INTERVAL) {
+							publishMetrics();
+						}
+					}
+
+					@Override
+					public void onFlushFailed(String reason, int points, String error) {
+						Log.e(TAG, "Posting locations failed: " + error);
+						logText("Failed to send " + points + " locations, keeping them queued.");
+					}
+
+					@Override
+					public void onStalled(int writes, int points, long millis) {
+						logText("Upload stalled, " + points + " locations in " + writes +
+								" writes unacknowledged for " + (millis / 1000) + "s");
+					}
+
+					@Override
+					public void onDrained(long points, long millis) {
+						logText("Outbox drained " + points + " locations in " + (millis / 1000) +
+								"s (" + (points * 1000 / Math.max(1, millis)) + " locations/s)");
+					}
+				});
+
+		long queued = mOutbox.getDepth();
+		if (queued > 0) {
+			logText("Replaying " + queued + " queued locations");
+			flushUploads("replay");
+		}
+
+		/* flush early when the network comes back or we start charging,
+		 * the radio is cheap to wake up then */
+		mUploadTriggerReceiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				if (Intent.ACTION_POWER_CONNECTED.equals(intent.getAction())) {
+					flushUploads("charging");
+					return;
+				}
+
+				ConnectivityManager cm = (ConnectivityManager)getSystemService(
+						Context.CONNECTIVITY_SERVICE);
+				NetworkInfo info = cm.getActiveNetworkInfo();
+				if (info != null && info.isConnected()) {
+					flushUploads("connectivity");
+				}
+			}
+		};
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(ConnectivityManager.CONNECTIVITY_ACTION);
+		filter.addAction(Intent.ACTION_POWER_CONNECTED);
+		registerReceiver(mUploadTriggerReceiver, filter);
+	}
+
+	/* the uploader lives on the pipeline thread */
+	private void flushUploads(final String reason) {
+		mPipeline.post(new Runnable() {
+			@Override
+			public void run() {
+				mUploader.flush(reason);
+			}
+		});
 	}
 
 	private void showNotification() {
@@ -248,7 +557,7 @@ public class TrackerService extends Service {
 		nm.notify(1, notification);
 	}
 
-	private void updateNotification(String text) {
+	private synchronized void updateNotification(String text) {
 		if (nm != null) {
 			PendingIntent contentIntent = PendingIntent.getActivity(this, 0,
 					new Intent(this, MainActivity.class), 0);
@@ -259,13 +568,75 @@ public class TrackerService extends Service {
 		}
 	}
 
-	private String getDeviceId() {
-		return  Settings.Secure.getString(this.getContentResolver(), Settings.Secure.ANDROID_ID);
+	/* keeps the fences in sync with geofences/<uid>, only Firebase can be listened to */
+	private void startGeofences() {
+		mGeofenceRef = mRefs.getGeofencesRef();
+		if (mGeofenceRef == null) {
+			return;
+		}
+		mGeofenceListener = mGeofenceRef.addValueEventListener(new ValueEventListener() {
+			@Override
+			public void onDataChange(DataSnapshot snapshot) {
+				final List<Geofence> fences = new ArrayList<>();
+				for (DataSnapshot child : snapshot.getChildren()) {
+					Geofence fence = Geofence.fromSnapshot(child);
+					if (fence != null) {
+						fences.add(fence);
+					} else {
+						Log.w(TAG, "Ignoring invalid geofence " + child.getKey());
+					}
+				}
+				mPipeline.post(new Runnable() {
+					@Override
+					public void run() {
+						mGeofenceEngine.setFences(fences);
+						logText("Watching " + fences.size() + " geofences");
+					}
+				});
+			}
+
+			@Override
+			public void onCancelled(FirebaseError firebaseError) {
+				Log.e(TAG, "Loading geofences failed: " + firebaseError.getMessage());
+			}
+		});
+	}
+
+	private void postGeofenceEvent(Geofence fence, String event, long time,
+								   double latitude, double longitude) {
+		logText("Geofence " + fence.id + ": " + event);
+
+		Map<String, Object> value = new HashMap<>();
+		value.put("fence", fence.id);
+		value.put("event", event);
+		value.put("time", time);
+		value.put("latitude", latitude);
+		value.put("longitude", longitude);
+		mRefs.getSink().write(Collections.<String, Object>singletonMap(
+				mRefs.getGeofenceEventsPath() + mRefs.getSink().newKey(), value), null);
+	}
+
+	/* devices/<uid>/<device>/metrics, replaced with the current snapshot */
+	private void publishMetrics() {
+		mMetricsPublishedAt = SystemClock.elapsedRealtime();
+		Map<String, Object> metrics = mMetrics.snapshot();
+		metrics.put("time", System.currentTimeMillis());
+		metrics.put("outboxDepth", mOutbox.getDepth());
+		mRefs.getSink().write(Collections.<String, Object>singletonMap(
+				mRefs.getDevicePath() + "metrics", metrics), null);
+	}
+
+	/* on the pipeline thread, which also keeps the log file writes off the main thread */
+	private void dumpMetrics() {
+		logText("Location pipeline " + mPipeline.getStats());
+		for (String line : mMetrics.format()) {
+			logText(line);
+		}
 	}
 
 	private Map<String, String> getDeviceInfo() {
 		Map<String, String> info = new HashMap<>();
-		info.put("deviceId", getDeviceId());
+		info.put("deviceId", mRefs.getDeviceId());
 		info.put("brand", Build.BRAND);
 		info.put("device", Build.DEVICE);
 		info.put("hardware", Build.HARDWARE);
@@ -277,181 +648,239 @@ public class TrackerService extends Service {
 		return info;
 	}
 
-	private boolean saveLogToDisk(LogMessage logMessage) {
-		JSONObject jsonObj = new JSONObject();
-		try {
-			jsonObj.put("date", String.valueOf(logMessage.date.getTime()));
-			jsonObj.put("message", logMessage.message);
-		} catch (JSONException e) {
-			Log.e(TAG, "Saving Log to disk failed, cannot create JSON object: " + e);
-			return false;
-		}
+	private void openLogFile() {
+		/* the JSON lines log of older versions is replaced by the ring file */
+		deleteFile(LEGACY_LOGFILE_NAME);
 
-		OutputStreamWriter osw;
 		try {
-			osw = new OutputStreamWriter(openFileOutput(LOGFILE_NAME, Context.MODE_APPEND));
-			osw.write(jsonObj.toString() + "\n");
-			osw.close();
-		} catch (FileNotFoundException e) {
-			Log.e(TAG, "Saving Log to disk failed, file not found: " + e);
-			return false;
+			mLogFile = new LogRingFile(getFileStreamPath(LOGFILE_NAME), LOGFILE_SIZE);
 		} catch (IOException e) {
-			Log.e(TAG, "Saving Log to disk failed, IO Exception: " + e);
-			return false;
+			Log.e(TAG, "Opening log file failed, logging to memory only: " + e);
 		}
-
-		return true;
 	}
 
-	private ArrayList<LogMessage> loadLogsFromDisk() {
-		ArrayList<LogMessage> logs = new ArrayList<>();
-
-		ArrayList<String> jsonLogMessages = new ArrayList<>();
-		InputStream inputStream;
-		try {
-			inputStream = openFileInput(LOGFILE_NAME);
+	public void logText(String log) {
+		LogMessage lm = new LogMessage(System.currentTimeMillis(), log);
+		mLogRing.add(lm);
+		mLogLines.increment();
+		if (mLogFile != null) {
+			long started = System.nanoTime();
+			mLogFile.append(lm.time, log);
+			mLogTime.recordNanos(System.nanoTime() - started);
+		}
 
-			if ( inputStream != null ) {
-				InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
-				BufferedReader bufferedReader = new BufferedReader(inputStreamReader);
+		updateNotification(log);
 
-				String line;
-				while ((line = bufferedReader.readLine()) != null ) {
-					jsonLogMessages.add(line);
-				}
-				inputStream.close();
-			}
-		} catch (FileNotFoundException e) {
-			Log.e(TAG, "Reading Logs from disk failed, file not found: " + e);
-			return null;
-		} catch (IOException e) {
-			Log.e(TAG, "Reading Logs from disk failed, IO Exception: " + e);
-			return null;
+		if (mClients.isEmpty()) {
+			return;
 		}
-
-		try {
-			for(int i = jsonLogMessages.size() - 1; i >= 0; i--) {
-				JSONObject jsonObject = new JSONObject(jsonLogMessages.get(i));
-				Date d = new Date();
-				d.setTime(jsonObject.getLong("date"));
-				LogMessage lm = new LogMessage(d, jsonObject.getString("message"));
-				logs.add(lm);
+		synchronized (mPendingLogs) {
+			mPendingLogs.add(lm);
+			mLogsQueued++;
+			if (!mLogFlushScheduled) {
+				mLogFlushScheduled = true;
+				mMainHandler.postDelayed(mFlushLogs, LOG_BATCH_DELAY);
 			}
-		} catch (JSONException e) {
-			Log.e(TAG, "Reading logs from disk failed, unable to parse JSON object: " + e);
-			return null;
 		}
-
-		Collections.reverse(logs);
-		return logs;
 	}
 
-	private boolean cleanLogFile(int numLogsToKeep) {
-		ArrayList<LogMessage> logs = loadLogsFromDisk();
-		if(logs == null || logs.size() <= 0) {
-			Log.e(TAG, "Cleaning log failed, unable to load log file.");
-			return false;
-		}
-		if(!deleteFile(LOGFILE_NAME)) {
-			Log.e(TAG, "Cleaning log failed, unable to delete log file.");
-			return false;
-		}
+	/* runs on the main thread, sends the pending log lines as one message per client */
+	private final Runnable mFlushLogs = new Runnable() {
+		@Override
+		public void run() {
+			LogMessage[] batch;
+			synchronized (mPendingLogs) {
+				mLogFlushScheduled = false;
+				if (mPendingLogs.isEmpty()) {
+					return;
+				}
+				batch = mPendingLogs.toArray(new LogMessage[mPendingLogs.size()]);
+				mPendingLogs.clear();
+			}
 
-		List<LogMessage> recentLogs = logs.subList(logs.size() - numLogsToKeep - 1, logs.size() - 1);
+			Bundle b = new Bundle();
+			b.putParcelableArray("logs", batch);
+			for (Messenger client : mClients) {
+				try {
+					Message msg = Message.obtain(null, MSG_LOG);
+					msg.setData(b);
+					client.send(msg);
+					synchronized (mPendingLogs) {
+						mLogBatchesSent++;
+					}
+				}
+				catch (RemoteException e) {
+					/* client is dead, how did this happen */
+					mClients.remove(client);
+				}
+			}
+		}
+	};
 
-		for(int i = 0; i < recentLogs.size(); i++) {
-			if(!saveLogToDisk(recentLogs.get(i))) {
-				Log.e(TAG, "Cleaning log failed, error trying to write to new log file");
-				return false;
+	private void sendToClients(int what, Bundle data) {
+		for (Messenger client : mClients) {
+			try {
+				Message msg = Message.obtain(null, what);
+				msg.setData(data);
+				client.send(msg);
+			}
+			catch (RemoteException e) {
+				mClients.remove(client);
 			}
 		}
-		return true;
 	}
 
-	public void logText(String log) {
-		LogMessage lm = new LogMessage(new Date(), log);
-		mLogRing.add(lm);
-		saveLogToDisk(lm);
-		if (mLogRing.size() > MAX_RING_SIZE)
-			mLogRing.remove(0);
+	/* runs on the pipeline thread, after any fix being processed */
+	private void sendTrack(Messenger client) {
+		ArrayList<LocationPost> posts = new ArrayList<>();
+		if(mHistory != null) {
+			long now = System.currentTimeMillis();
+			try {
+				mHistory.queryTime(LocationPost.getDateKey(now), now, posts);
+			} catch (IOException e) {
+				Log.e(TAG, "Reading today's track failed: " + e);
+			}
+		}
 
-		updateNotification(log);
+		/* the first chunk replaces the client's track, the rest are appended to it */
+		int start = 0;
+		do {
+			int count = Math.min(TRACK_CHUNK_SIZE, posts.size() - start);
+			long[] times = new long[count];
+			double[] latitudes = new double[count];
+			double[] longitudes = new double[count];
+			for (int i = 0; i < count; i++) {
+				LocationPost post = posts.get(start + i);
+				times[i] = post.getTime();
+				latitudes[i] = post.getLatitude();
+				longitudes[i] = post.getLongitude();
+			}
 
-		for (int i = mClients.size() - 1; i >= 0; i--) {
 			try {
-				Bundle b = new Bundle();
-				b.putString("log", log);
-				Message msg = Message.obtain(null, MSG_LOG);
-				msg.setData(b);
-				mClients.get(i).send(msg);
+				Message msg = Message.obtain(null, start == 0 ? MSG_TRACK : MSG_LOCATION);
+				msg.setData(trackBundle(times, latitudes, longitudes));
+				client.send(msg);
 			}
 			catch (RemoteException e) {
-				/* client is dead, how did this happen */
-				mClients.remove(i);
+				Log.e(TAG, e.getMessage());
+				return;
 			}
-		}
+			start += count;
+		} while (start < posts.size());
 	}
 
-	public void sendLocation(Location location) {
-		/* Wake up */
-		if (wakeLock == null) {
-			PowerManager pm = (PowerManager)this.getSystemService(
-					Context.POWER_SERVICE);
-
-			/* we don't need the screen on */
-			wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK,
-					"locationtracker");
-			wakeLock.setReferenceCounted(true);
-		}
+	static Bundle trackBundle(long[] times, double[] latitudes, double[] longitudes) {
+		Bundle b = new Bundle();
+		b.putLongArray("times", times);
+		b.putDoubleArray("latitudes", latitudes);
+		b.putDoubleArray("longitudes", longitudes);
+		return b;
+	}
 
-		if (!wakeLock.isHeld()) {
-			wakeLock.acquire();
+	/* called on the main thread, hands the fix to the pipeline thread */
+	public void enqueueLocation(Location location, BroadcastReceiver.PendingResult result,
+								long receivedNanos) {
+		if (mPipeline == null) {
+			if (result != null) {
+				result.finish();
+			}
+			return;
 		}
+		mPipeline.enqueue(location, result);
+		mFixesReceived.increment();
+		mReceiveTime.recordNanos(System.nanoTime() - receivedNanos);
+	}
 
-		if(location == null) {
+	/* runs on the pipeline thread */
+	public void sendLocation(Location location) {
+		if(location == null || mUploader == null) {
 			return;
 		}
 
 		Log.d(TAG, "Location update received");
 
-		if(mLastReportedLocation != null) {
-			float accuracy = Math.max(location.getAccuracy(), mLastReportedLocation.getAccuracy());
-			if(mLastReportedLocation.distanceTo(location) < accuracy) {
-				Log.d(TAG, "Location has not changed enough. Not sending...");
-				return;
-			}
+		if (!mFixProcessor.process(location)) {
+			return;
 		}
 
-		LocationPost locationPost = new LocationPost(location);
-		//Use timestamp of today's date at midnight as key
-		long dateKey = LocationPost.getDateKey(locationPost.getTime());
+		Handler handler = mPipeline.getHandler();
+		handler.removeCallbacks(mFlushHeldLocation);
+		if (mFixProcessor.hasHeld()) {
+			handler.postDelayed(mFlushHeldLocation, SIMPLIFY_MAX_HOLD);
+		}
+	}
 
+	private void queueLocation(LocationPost locationPost) {
+		long started = System.nanoTime();
 		try {
-			mFirebaseRef.child("locations/" + mUserId + "/" + getDeviceId() + "/" + dateKey)
-					.push()
-					.setValue(locationPost);
+			mOutbox.append(locationPost);
+			mOutboxTime.recordNanos(System.nanoTime() - started);
+		} catch (IOException e) {
+			Log.e(TAG, "Queueing location failed: " + e.toString());
+			logText("Failed to queue location data.");
+			return;
+		}
+		mUploader.onQueued();
+		Log.d(TAG, "Location queued");
+	}
 
-			mLastReportedLocation = location;
+	/* no new fix arrived for a while, upload the one the simplifier holds back */
+	private final Runnable mFlushHeldLocation = new Runnable() {
+		@Override
+		public void run() {
+			mFixProcessor.flushHeld();
+		}
+	};
 
-			Log.d(TAG, "Location sent");
-			logText("Location " +
-					(new DecimalFormat("#.######").format(locationPost.getLatitude())) +
-					", " +
-					(new DecimalFormat("#.######").format(locationPost.getLongitude())));
+	/* side effects of the fix processor, on the pipeline thread */
+	private final FixProcessor.Listener mFixListener = new FixProcessor.Listener() {
+		@Override
+		public void onSamplingChanged() {
+			requestLocationUpdates();
+			logText("Sampling every " + (mSamplingPolicy.getInterval() / 1000) + "s (" +
+					mSamplingPolicy.describe() + ")");
+		}
 
+		@Override
+		public void onReported(LocationPost locationPost) {
+			mFixesReported.increment();
+			if(mHistory != null) {
+				long started = System.nanoTime();
+				try {
+					mHistory.append(locationPost);
+					mHistoryTime.recordNanos(System.nanoTime() - started);
+				} catch (IOException e) {
+					Log.e(TAG, "Storing location in history failed: " + e);
+				}
+			}
+			if(!mClients.isEmpty()) {
+				sendToClients(MSG_LOCATION, trackBundle(new long[] {locationPost.getTime()},
+						new double[] {locationPost.getLatitude()},
+						new double[] {locationPost.getLongitude()}));
+			}
 
-		} catch(Exception e) {
-			Log.e(TAG, "Posting to Firebase failed: " + e.toString());
-			logText("Failed to send location data.");
+			StringBuilder line = mLocationLine;
+			line.setLength(0);
+			line.append("Location ");
+			CoordinateFormat.append(line, locationPost.getLatitude(), 6).append(", ");
+			CoordinateFormat.append(line, locationPost.getLongitude(), 6);
+			logText(line.toString());
 		}
-	}
+
+		@Override
+		public void onKept(LocationPost locationPost) {
+			mFixesKept.increment();
+			if (mUploader != null) {
+				queueLocation(locationPost);
+			}
+		}
+	};
 
 	class LocationListener implements
 			ConnectionCallbacks,
 			OnConnectionFailedListener {
 		@Override
 		public void onConnected(Bundle connectionHint) {
-			LocationRequest locationRequest = createLocationRequest();
 			Intent intent = new Intent(service, LocationReceiver.class);
 			mLocationIntent = PendingIntent.getBroadcast(
 					getApplicationContext(),
@@ -460,8 +889,7 @@ public class TrackerService extends Service {
 					PendingIntent.FLAG_CANCEL_CURRENT);
 
 			// Register for automatic location updates
-			LocationServices.FusedLocationApi.requestLocationUpdates(
-					mGoogleApiClient, locationRequest, mLocationIntent);
+			requestLocationUpdates();
 		}
 
 		@Override
@@ -482,22 +910,50 @@ public class TrackerService extends Service {
 		public void handleMessage(Message msg) {
 			switch (msg.what) {
 			case MSG_REGISTER_CLIENT:
+				/* lines still pending are in the ring, don't send them to the new client twice */
+				mMainHandler.removeCallbacks(mFlushLogs);
+				mFlushLogs.run();
 				mClients.add(msg.replyTo);
 
 				/* respond with our log ring to show what we've been up to */
 				try {
+					ArrayList<LogMessage> logs = mLogRing.snapshot();
+					Bundle b = new Bundle();
+					b.putParcelableArray("logs", logs.toArray(new LogMessage[logs.size()]));
 					Message replyMsg = Message.obtain(null, MSG_LOG_RING);
-					replyMsg.obj = mLogRing;
+					replyMsg.setData(b);
 					msg.replyTo.send(replyMsg);
 				}
 				catch (RemoteException e) {
 					Log.e(TAG, e.getMessage());
 				}
+
+				/* and with today's track, read off the main thread */
+				final Messenger client = msg.replyTo;
+				if (mPipeline != null) {
+					mPipeline.post(new Runnable() {
+						@Override
+						public void run() {
+							sendTrack(client);
+						}
+					});
+				}
 				break;
 			case MSG_UNREGISTER_CLIENT:
 				mClients.remove(msg.replyTo);
 				break;
 
+			case MSG_DUMP_METRICS:
+				if (mPipeline != null) {
+					mPipeline.post(new Runnable() {
+						@Override
+						public void run() {
+							dumpMetrics();
+						}
+					});
+				}
+				break;
+
 			default:
 				super.handleMessage(msg);
 			}
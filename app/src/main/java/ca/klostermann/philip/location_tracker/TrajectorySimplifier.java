@@ -0,0 +1,124 @@
+package ca.klostermann.philip.location_tracker;
+
+import java.util.ArrayList;
+
+/**
+ * Streaming opening-window variant of Douglas-Peucker. Fixes are held back
+ * while every fix since the last kept one stays within the tolerance of the
+ * segment from that kept fix to the newest one. As soon as a fix would push
+ * a held fix further away than the tolerance, the previous fix is kept and
+ * becomes the new start of the window. Every dropped fix therefore lies
+ * within the tolerance of the simplified track.
+ *
+ * The newest fix is always held back until the next one arrives, the window
+ * size or flush() bounds how long that can take.
+ *
+ * The simplifier owns the posts offered to it and recycles them once they
+ * are dropped or replaced as the anchor, so a returned post is only valid
+ * until the next call.
+ */
+public class TrajectorySimplifier {
+    private final double mTolerance;
+    private final int mMaxWindow;
+
+    private LocationPost mAnchor;
+    private final ArrayList<LocationPost> mWindow = new ArrayList<>();
+    /* largest deviation of the held fixes from anchor -> newest held fix */
+    private double mWindowError;
+
+    private long mPointsIn;
+    private long mPointsOut;
+    private double mMaxError;
+
+    public TrajectorySimplifier(double toleranceMeters, int maxWindow) {
+        mTolerance = toleranceMeters;
+        mMaxWindow = Math.max(1, maxWindow);
+    }
+
+    /* returns the fix to upload, if any */
+    public LocationPost offer(LocationPost post) {
+        mPointsIn++;
+
+        if (mAnchor == null || mTolerance <= 0) {
+            setAnchor(post);
+            mPointsOut++;
+            return post;
+        }
+
+        double error = 0;
+        for (int i = 0; i < mWindow.size() && error <= mTolerance; i++) {
+            error = Math.max(error, deviation(mWindow.get(i), mAnchor, post));
+        }
+
+        if (error <= mTolerance && mWindow.size() < mMaxWindow) {
+            mWindow.add(post);
+            mWindowError = error;
+            return null;
+        }
+
+        LocationPost kept = emitHeld();
+        mWindow.add(post);
+        return kept;
+    }
+
+    /* keep the newest held fix now, e.g. when no fix arrived for a while */
+    public LocationPost flush() {
+        if (mWindow.isEmpty()) {
+            return null;
+        }
+        return emitHeld();
+    }
+
+    public boolean hasHeld() {
+        return !mWindow.isEmpty();
+    }
+
+    public long getPointsIn() {
+        return mPointsIn;
+    }
+
+    public long getPointsOut() {
+        return mPointsOut;
+    }
+
+    /* largest distance in meters of a dropped fix from the simplified track */
+    public double getMaxError() {
+        return mMaxError;
+    }
+
+    private LocationPost emitHeld() {
+        int last = mWindow.size() - 1;
+        LocationPost kept = mWindow.get(last);
+        for (int i = 0; i < last; i++) {
+            mWindow.get(i).recycle();
+        }
+        mMaxError = Math.max(mMaxError, mWindowError);
+        mWindow.clear();
+        mWindowError = 0;
+        setAnchor(kept);
+        mPointsOut++;
+        return kept;
+    }
+
+    private void setAnchor(LocationPost anchor) {
+        if (mAnchor != null && mAnchor != anchor) {
+            mAnchor.recycle();
+        }
+        mAnchor = anchor;
+    }
+
+    /* distance in meters of p from the segment a-b, on a local flat projection around a */
+    static double deviation(LocationPost p, LocationPost a, LocationPost b) {
+        double scale = Math.cos(Math.toRadians(a.getLatitude()));
+        double bx = Math.toRadians(b.getLongitude() - a.getLongitude()) * scale;
+        double by = Math.toRadians(b.getLatitude() - a.getLatitude());
+        double px = Math.toRadians(p.getLongitude() - a.getLongitude()) * scale;
+        double py = Math.toRadians(p.getLatitude() - a.getLatitude());
+
+        double len = bx * bx + by * by;
+        double t = len == 0 ? 0 : Math.max(0, Math.min(1, (px * bx + py * by) / len));
+        double dx = px - t * bx;
+        double dy = py - t * by;
+        return Math.sqrt(dx * dx + dy * dy) * Geo.EARTH_RADIUS;
+    }
+}
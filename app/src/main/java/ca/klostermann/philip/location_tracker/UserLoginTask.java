@@ -2,8 +2,6 @@ package ca.klostermann.philip.location_tracker;
 
 import android.util.Log;
 
-import com.firebase.client.AuthData;
-import com.firebase.client.Firebase;
 import com.firebase.client.FirebaseError;
 
 public class UserLoginTask {
@@ -14,7 +12,7 @@ public class UserLoginTask {
     private final String mPassword;
 
     private FirebaseError mError;
-    private AuthData mAuthData;
+    private String mUid;
 
     public UserLoginTask(LoginTaskListener caller, String firebaseURL, String email, String password) {
         mCaller = caller;
@@ -25,17 +23,17 @@ public class UserLoginTask {
 
     public void execute() {
         try {
-            Firebase ref = new Firebase(mFirebaseUrl);
-            ref.authWithPassword(mEmail, mPassword, new Firebase.AuthResultHandler() {
+            AuthBackend backend = Backends.forEndpoint(mFirebaseUrl);
+            backend.login(mEmail, mPassword, new AuthBackend.LoginCallback() {
                 @Override
-                public void onAuthenticated(AuthData authData) {
-                    Log.d(TAG, authData.toString());
-                    mAuthData = authData;
+                public void onLoggedIn(String uid) {
+                    Log.d(TAG, "Authenticated as " + uid);
+                    mUid = uid;
                     onComplete(true);
                 }
 
                 @Override
-                public void onAuthenticationError(FirebaseError firebaseError) {
+                public void onError(FirebaseError firebaseError) {
                     Log.e(TAG, firebaseError.toString());
                     mError = firebaseError;
                     onComplete(false);
@@ -50,8 +48,8 @@ public class UserLoginTask {
     }
 
     protected void onComplete(final Boolean success) {
-        if (success && mAuthData != null) {
-            mCaller.onLoginSuccess(mAuthData);
+        if (success && mUid != null) {
+            mCaller.onLoginSuccess(mUid);
         } else if (!success && mError != null) {
             mCaller.onLoginFailure(mError);
         } else {
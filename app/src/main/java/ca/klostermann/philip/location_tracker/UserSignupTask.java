@@ -2,7 +2,6 @@ package ca.klostermann.philip.location_tracker;
 
 import android.util.Log;
 
-import com.firebase.client.Firebase;
 import com.firebase.client.FirebaseError;
 
 import java.util.Map;
@@ -27,10 +26,10 @@ public class UserSignupTask {
 
     public void execute() {
         try {
-            Firebase ref = new Firebase(mFirebaseUrl);
-            ref.createUser(mEmail, mPassword, new Firebase.ValueResultHandler<Map<String, Object>>() {
+            AuthBackend backend = Backends.forEndpoint(mFirebaseUrl);
+            backend.signup(mEmail, mPassword, new AuthBackend.SignupCallback() {
                 @Override
-                public void onSuccess(Map<String, Object> result) {
+                public void onSignedUp(Map<String, Object> result) {
                     mResult = result;
                     onComplete(true);
                 }
@@ -0,0 +1,108 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+/**
+ * Keeps the CPU awake while there is work in progress. Every acquire() must
+ * be paired with a release(); the partial wake lock is held while at least
+ * one holder remains, but never longer than the timeout at a time, so a
+ * missed release cannot keep the device awake forever. Holders must only
+ * cover bounded work and never wait for the network: one that stays while
+ * others come and go re-arms the timeout with every acquire(). Hold times
+ * are recorded for the fleet reports.
+ */
+public class WakeLockManager {
+    private final PowerManager.WakeLock mWakeLock;
+    private final long mTimeout;
+
+    private int mHolders;
+    private long mHeldSince;
+
+    private long mAcquisitions;
+    private long mTimeouts;
+    private long mTotalHeld;
+    private long mLongestHold;
+
+    public WakeLockManager(Context context, String tag, long timeoutMillis) {
+        PowerManager pm = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+        /* we don't need the screen on */
+        mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, tag);
+        mWakeLock.setReferenceCounted(false);
+        mTimeout = timeoutMillis;
+    }
+
+    public synchronized void acquire() {
+        if (mHolders++ == 0) {
+            startHold();
+        } else if (!mWakeLock.isHeld()) {
+            /* the previous hold ran into the timeout, start a new one */
+            endHold();
+            startHold();
+        }
+    }
+
+    public synchronized void release() {
+        if (mHolders == 0) {
+            return;
+        }
+        if (--mHolders == 0) {
+            endHold();
+        }
+    }
+
+    /* drop the lock no matter how many holders are left */
+    public synchronized void releaseAll() {
+        if (mHolders > 0) {
+            mHolders = 0;
+            endHold();
+        }
+    }
+
+    public synchronized long getTotalHeld() {
+        long total = mTotalHeld;
+        if (mHolders > 0) {
+            total += Math.min(SystemClock.elapsedRealtime() - mHeldSince, mTimeout);
+        }
+        return total;
+    }
+
+    public synchronized long getAcquisitions() {
+        return mAcquisitions;
+    }
+
+    public synchronized long getLongestHold() {
+        return mLongestHold;
+    }
+
+    public synchronized long getTimeouts() {
+        return mTimeouts;
+    }
+
+    public synchronized String getStats() {
+        return "held " + (getTotalHeld() / 1000) + "s in " + mAcquisitions +
+                " acquisitions, longest " + mLongestHold + "ms, " + mTimeouts + " timeouts";
+    }
+
+    private void startHold() {
+        mWakeLock.acquire(mTimeout);
+        mHeldSince = SystemClock.elapsedRealtime();
+        mAcquisitions++;
+    }
+
+    private void endHold() {
+        long held = SystemClock.elapsedRealtime() - mHeldSince;
+        if (held >= mTimeout || !mWakeLock.isHeld()) {
+            /* released by the system when the timeout expired */
+            held = Math.min(held, mTimeout);
+            mTimeouts++;
+        }
+        mTotalHeld += held;
+        mLongestHold = Math.max(mLongestHold, held);
+
+        if (mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+    }
+}
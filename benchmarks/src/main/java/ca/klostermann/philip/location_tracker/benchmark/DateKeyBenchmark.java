@@ -0,0 +1,92 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import ca.klostermann.philip.location_tracker.DayBucket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Day keys for a live track, one fix per second so nearly every lookup
+ * hits the cached day, and for random times over a year, which is the
+ * worst case. The calendar baseline is how keys were computed before
+ * DayBucket, with a new calendar per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateKeyBenchmark {
+    private static final int RANDOM_TIMES = 4096;
+    private static final long YEAR = 365 * 24 * 3600 * 1000L;
+
+    /* Havana has midnight DST changes, the hardest case for the cache */
+    @Param({"UTC", "America/New_York", "America/Havana"})
+    public String zone;
+
+    private TimeZone mZone;
+    private DayBucket mBucket;
+    private final long[] mRandomTimes = new long[RANDOM_TIMES];
+    private long mLiveTime;
+    private int mRandomIndex;
+
+    @Setup
+    public void setUp() {
+        mZone = TimeZone.getTimeZone(zone);
+        mBucket = DayBucket.forZone(mZone);
+        mLiveTime = Tracks.START_TIME;
+        Random random = new Random(1);
+        for (int i = 0; i < RANDOM_TIMES; i++) {
+            mRandomTimes[i] = Tracks.START_TIME + (long)(random.nextDouble() * YEAR);
+        }
+    }
+
+    @Benchmark
+    public long liveTrack() {
+        mLiveTime += 1000;
+        return mBucket.getDateKey(mLiveTime);
+    }
+
+    @Benchmark
+    public long randomTimes() {
+        return mBucket.getDateKey(mRandomTimes[mRandomIndex++ & (RANDOM_TIMES - 1)]);
+    }
+
+    @Benchmark
+    public long liveTrackCalendar() {
+        mLiveTime += 1000;
+        return calendarDateKey(mLiveTime);
+    }
+
+    @Benchmark
+    public long randomTimesCalendar() {
+        return calendarDateKey(mRandomTimes[mRandomIndex++ & (RANDOM_TIMES - 1)]);
+    }
+
+    private long calendarDateKey(long time) {
+        GregorianCalendar d = new GregorianCalendar(mZone);
+        d.setTimeInMillis(time);
+        d.set(Calendar.HOUR, 0);
+        d.set(Calendar.HOUR_OF_DAY, 0);
+        d.set(Calendar.MINUTE, 0);
+        d.set(Calendar.SECOND, 0);
+        d.set(Calendar.MILLISECOND, 0);
+        return d.getTimeInMillis();
+    }
+}
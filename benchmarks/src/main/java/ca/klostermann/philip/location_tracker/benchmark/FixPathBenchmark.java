@@ -0,0 +1,140 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import android.location.Location;
+
+import ca.klostermann.philip.location_tracker.AdaptiveSamplingPolicy;
+import ca.klostermann.philip.location_tracker.CoordinateFormat;
+import ca.klostermann.philip.location_tracker.FixProcessor;
+import ca.klostermann.philip.location_tracker.GeofenceEngine;
+import ca.klostermann.philip.location_tracker.LocationKalmanFilter;
+import ca.klostermann.philip.location_tracker.LocationPost;
+import ca.klostermann.philip.location_tracker.SamplingPolicy;
+import ca.klostermann.philip.location_tracker.TrajectorySimplifier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One fix through FixProcessor.process() with a listener doing what
+ * TrackerService does on the pipeline thread, minus disk and IPC: day key
+ * and log line for reported posts. Kalman filter, sampling policy,
+ * geofences without fences, movement check, post and simplifier are the
+ * processor's own. The parts are benchmarked on their own as well, fences
+ * in GeofenceBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixPathBenchmark {
+    /* m/s, walking fixes mostly end at the movement check, driving ones don't */
+    @Param({"1.4", "15"})
+    public double speed;
+
+    private Tracks mTrack;
+    private long mFix;
+
+    private final Location mLocation = new Location("fused");
+    private final StringBuilder mLine = new StringBuilder(48);
+    private long mDateKeys;
+    private long mLineChars;
+
+    private LocationKalmanFilter mKalmanFilter;
+    private SamplingPolicy mSamplingPolicy;
+    private TrajectorySimplifier mSimplifier;
+    private FixProcessor mProcessor;
+
+    @Setup
+    public void setUp() {
+        mTrack = Tracks.walk(10000, speed, 1);
+        mKalmanFilter = new LocationKalmanFilter();
+        mSamplingPolicy = new AdaptiveSamplingPolicy(1000);
+        mSimplifier = new TrajectorySimplifier(10, 120);
+        mProcessor = new FixProcessor(new LocationKalmanFilter(),
+                new AdaptiveSamplingPolicy(1000), new GeofenceEngine(null),
+                new TrajectorySimplifier(10, 120), new FixProcessor.Listener() {
+                    @Override
+                    public void onSamplingChanged() {
+                    }
+
+                    @Override
+                    public void onReported(LocationPost post) {
+                        mDateKeys += LocationPost.getDateKey(post.getTime());
+                        StringBuilder line = mLine;
+                        line.setLength(0);
+                        line.append("Location ");
+                        CoordinateFormat.append(line, post.getLatitude(), 6).append(", ");
+                        CoordinateFormat.append(line, post.getLongitude(), 6);
+                        mLineChars += line.toString().length();
+                    }
+
+                    @Override
+                    public void onKept(LocationPost post) {
+                    }
+                });
+    }
+
+    @Benchmark
+    public boolean fix() {
+        mTrack.fill(mFix++, mLocation);
+        return mProcessor.process(mLocation);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println();
+        System.out.println("speed " + speed + ": " + mProcessor.getStats() + ", " +
+                mLineChars / Math.max(1, mProcessor.getReported()) + " chars per line");
+    }
+
+    @Benchmark
+    public boolean kalmanFilter() {
+        mTrack.fill(mFix++, mLocation);
+        return mKalmanFilter.update(mLocation.getTime(), mLocation.getLatitude(),
+                mLocation.getLongitude(), mLocation.getAccuracy());
+    }
+
+    @Benchmark
+    public boolean samplingPolicy() {
+        mTrack.fill(mFix++, mLocation);
+        return mSamplingPolicy.onFix(mLocation.getTime(), mLocation.getLatitude(),
+                mLocation.getLongitude(), mLocation.getSpeed(), mLocation.getAccuracy());
+    }
+
+    @Benchmark
+    public LocationPost simplifier() {
+        mTrack.fill(mFix++, mLocation);
+        return mSimplifier.offer(LocationPost.obtain(mLocation));
+    }
+
+    /* a post that is handed back right away, the pool's best case */
+    @Benchmark
+    public long obtainAndRecycle() {
+        mTrack.fill(mFix++, mLocation);
+        LocationPost post = LocationPost.obtain(mLocation);
+        long time = post.getTime();
+        post.recycle();
+        return time;
+    }
+
+    /* what every post cost before the pool */
+    @Benchmark
+    public LocationPost construct() {
+        mTrack.fill(mFix++, mLocation);
+        return new LocationPost(mLocation);
+    }
+}
@@ -0,0 +1,95 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import android.location.Location;
+
+import ca.klostermann.philip.location_tracker.Geofence;
+import ca.klostermann.philip.location_tracker.GeofenceEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Geofence checks per fix with fences scattered over the area a driving
+ * track covers, three quarters circles of 50-500 m and the rest small
+ * polygons, plus one large fence covering the whole area.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeofenceBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int fences;
+
+    private Tracks mTrack;
+    private final Location mLocation = new Location("fused");
+    private GeofenceEngine mEngine;
+    private long mFix;
+    private long mEvents;
+
+    @Setup
+    public void setUp() {
+        mTrack = Tracks.walk(10000, 15, 1);
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLon = Double.MAX_VALUE, maxLon = -Double.MAX_VALUE;
+        for (int i = 0; i < mTrack.length(); i++) {
+            minLat = Math.min(minLat, mTrack.latitudes[i]);
+            maxLat = Math.max(maxLat, mTrack.latitudes[i]);
+            minLon = Math.min(minLon, mTrack.longitudes[i]);
+            maxLon = Math.max(maxLon, mTrack.longitudes[i]);
+        }
+
+        Random random = new Random(1);
+        List<Geofence> list = new ArrayList<>();
+        for (int i = 0; i < fences - 1; i++) {
+            double latitude = minLat + random.nextDouble() * (maxLat - minLat);
+            double longitude = minLon + random.nextDouble() * (maxLon - minLon);
+            if (i % 4 != 3) {
+                list.add(Geofence.circle("c" + i, latitude, longitude,
+                        50 + random.nextDouble() * 450, 60 * 1000));
+            } else {
+                double d = 0.001 + random.nextDouble() * 0.003;
+                list.add(Geofence.polygon("p" + i,
+                        new double[] {latitude - d, latitude - d, latitude + d, latitude + d},
+                        new double[] {longitude - d, longitude + d, longitude + d, longitude - d},
+                        0));
+            }
+        }
+        list.add(Geofence.polygon("area",
+                new double[] {minLat, minLat, maxLat, maxLat},
+                new double[] {minLon, maxLon, maxLon, minLon}, 0));
+
+        mEngine = new GeofenceEngine(new GeofenceEngine.Listener() {
+            @Override
+            public void onGeofenceEvent(Geofence fence, String event, long time,
+                                        double latitude, double longitude) {
+                mEvents++;
+            }
+        });
+        mEngine.setFences(list);
+    }
+
+    @Benchmark
+    public long onFix() {
+        mTrack.fill(mFix++, mLocation);
+        mEngine.onFix(mLocation.getTime(), mLocation.getLatitude(), mLocation.getLongitude(),
+                mLocation.getAccuracy());
+        return mEvents;
+    }
+}
@@ -0,0 +1,128 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import android.location.Location;
+
+import ca.klostermann.philip.location_tracker.GeoHash;
+import ca.klostermann.philip.location_tracker.LocationHistoryStore;
+import ca.klostermann.philip.location_tracker.LocationPost;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries against a local history of a driving track at one fix per
+ * second, about 11.5 days for a million points: a one hour time range, a
+ * 1 km box over the whole history and over one day, and the geohash the
+ * day index is built from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistoryBenchmark {
+    private static final int QUERIES = 256;
+    private static final double BOX_DEGREES = 0.009;
+
+    @Param({"100000", "1000000"})
+    public int points;
+
+    private File mDir;
+    private LocationHistoryStore mStore;
+    private Tracks mTrack;
+    private final List<LocationPost> mOut = new ArrayList<>();
+    /* query centers and start times, picked from the track so queries find something */
+    private final int[] mQueryFixes = new int[QUERIES];
+    private int mQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("history", "");
+        if (!mDir.delete() || !mDir.mkdir()) {
+            throw new IOException("Can't create " + mDir);
+        }
+        mStore = new LocationHistoryStore(mDir, 90, Long.MAX_VALUE);
+        mTrack = Tracks.walk(points, 15, 1);
+        Location location = new Location("fused");
+        for (int i = 0; i < points; i++) {
+            mTrack.fill(i, location);
+            mStore.append(new LocationPost(location));
+        }
+        /* seal the last day as well, appending reopens it */
+        mStore.close();
+        mStore = new LocationHistoryStore(mDir, 90, Long.MAX_VALUE);
+
+        Random random = new Random(1);
+        for (int i = 0; i < QUERIES; i++) {
+            mQueryFixes[i] = random.nextInt(points);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mStore.close();
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Benchmark
+    public int queryHour() throws IOException {
+        int fix = mQueryFixes[mQuery++ & (QUERIES - 1)];
+        long from = mTrack.times[fix];
+        mOut.clear();
+        mStore.queryTime(from, from + 3600 * 1000L, mOut);
+        return mOut.size();
+    }
+
+    @Benchmark
+    public int queryBoxAllTime() throws IOException {
+        return queryBox(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public int queryBoxOneDay() throws IOException {
+        int fix = mQueryFixes[mQuery & (QUERIES - 1)];
+        long time = mTrack.times[fix];
+        return queryBox(time - 12 * 3600 * 1000L, time + 12 * 3600 * 1000L);
+    }
+
+    @Benchmark
+    public long geohash() {
+        int fix = mQueryFixes[mQuery++ & (QUERIES - 1)];
+        return GeoHash.encode(mTrack.latitudes[fix], mTrack.longitudes[fix], 45);
+    }
+
+    private int queryBox(long from, long to) throws IOException {
+        int fix = mQueryFixes[mQuery++ & (QUERIES - 1)];
+        double latitude = mTrack.latitudes[fix];
+        double longitude = mTrack.longitudes[fix];
+        mOut.clear();
+        mStore.queryBox(latitude - BOX_DEGREES / 2, longitude - BOX_DEGREES,
+                latitude + BOX_DEGREES / 2, longitude + BOX_DEGREES, from, to, mOut);
+        return mOut.size();
+    }
+}
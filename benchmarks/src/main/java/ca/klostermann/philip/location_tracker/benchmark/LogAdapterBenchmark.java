@@ -0,0 +1,87 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import android.view.View;
+
+import ca.klostermann.philip.location_tracker.LogAdapter;
+import ca.klostermann.philip.location_tracker.LogMessage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The activity's log list: adding a line, binding a line to a recycled
+ * row and replacing everything with the service's ring on bind. Measured
+ * right after the list filled up and after a long session, a line should
+ * cost the same in both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogAdapterBenchmark {
+    /* MainActivity.MAX_LOG_LINES and TrackerService.MAX_RING_SIZE */
+    private static final int CAPACITY = 500;
+    private static final int RING = 250;
+    private static final int MESSAGES = 256;
+
+    /* lines added before measuring */
+    @Param({"500", "1000000"})
+    public int session;
+
+    private LogAdapter mAdapter;
+    private final LogMessage[] mMessages = new LogMessage[MESSAGES];
+    private final List<LogMessage> mRing = new ArrayList<>();
+    private View mRow;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < MESSAGES; i++) {
+            mMessages[i] = new LogMessage(Tracks.START_TIME + i * 1000L,
+                    "Location 49." + (282700 + i) + ", -123.1207");
+        }
+        for (int i = 0; i < RING; i++) {
+            mRing.add(mMessages[i % MESSAGES]);
+        }
+        mAdapter = new LogAdapter(null, CAPACITY);
+        for (int i = 0; i < session; i++) {
+            mAdapter.add(mMessages[i % MESSAGES]);
+        }
+        mRow = mAdapter.getView(0, null, null);
+    }
+
+    @Benchmark
+    public int add() {
+        mAdapter.add(mMessages[mNext++ & (MESSAGES - 1)]);
+        return mAdapter.getCount();
+    }
+
+    /* what the list does for each row scrolled into view */
+    @Benchmark
+    public View bind() {
+        return mAdapter.getView(mNext++ % CAPACITY, mRow, null);
+    }
+
+    /* MSG_LOG_RING */
+    @Benchmark
+    public int replayRing() {
+        mAdapter.clear();
+        mAdapter.addAll(mRing);
+        return mAdapter.getCount();
+    }
+}
@@ -0,0 +1,95 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import ca.klostermann.philip.location_tracker.LogMessage;
+import ca.klostermann.philip.location_tracker.LogRing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The service's in-memory log: appending to a full ring and copying it
+ * for a client, against the ArrayList with remove(0) it replaced. The
+ * group benchmark appends while another thread keeps taking snapshots.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogRingBenchmark {
+    /* TrackerService.MAX_RING_SIZE, and a larger one to show the list's O(n) */
+    @Param({"250", "10000"})
+    public int capacity;
+
+    private LogRing mRing;
+    private ArrayList<LogMessage> mList;
+    private LogMessage mMessage;
+
+    @Setup
+    public void setUp() {
+        mRing = new LogRing(capacity);
+        mList = new ArrayList<>();
+        mMessage = new LogMessage(Tracks.START_TIME, "Location 49.2827, -123.1207");
+        for (int i = 0; i < capacity; i++) {
+            mRing.add(mMessage);
+            mList.add(mMessage);
+        }
+    }
+
+    @Benchmark
+    @Group("ringAdd")
+    public void ringAdd() {
+        mRing.add(mMessage);
+    }
+
+    @Benchmark
+    @Group("listAdd")
+    public void listAdd() {
+        mList.add(mMessage);
+        if (mList.size() > capacity) {
+            mList.remove(0);
+        }
+    }
+
+    @Benchmark
+    @Group("ringSnapshot")
+    public List<LogMessage> ringSnapshot() {
+        return mRing.snapshot();
+    }
+
+    @Benchmark
+    @Group("listCopy")
+    public List<LogMessage> listCopy() {
+        return new ArrayList<>(mList);
+    }
+
+    @Benchmark
+    @Group("ringContended")
+    @GroupThreads(1)
+    public void ringContendedAdd() {
+        mRing.add(mMessage);
+    }
+
+    @Benchmark
+    @Group("ringContended")
+    @GroupThreads(1)
+    public List<LogMessage> ringContendedSnapshot() {
+        return mRing.snapshot();
+    }
+}
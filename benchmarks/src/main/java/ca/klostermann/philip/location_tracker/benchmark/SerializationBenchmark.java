@@ -0,0 +1,96 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import android.location.Location;
+
+import ca.klostermann.philip.location_tracker.CoordinateFormat;
+import ca.klostermann.philip.location_tracker.LocationBatchCodec;
+import ca.klostermann.philip.location_tracker.LocationPost;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Everything that turns posts into something to send or show: the compact
+ * batch codec both ways, the per post maps of the plain upload format and
+ * the coordinates of the log line, against the DecimalFormat it replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"10", "100", "500"})
+    public int batchSize;
+
+    private final List<LocationPost> mPosts = new ArrayList<>();
+    private byte[] mEncoded;
+    private final StringBuilder mLine = new StringBuilder(48);
+
+    @Setup
+    public void setUp() {
+        Tracks track = Tracks.walk(batchSize, 15, 1);
+        Location location = new Location("fused");
+        for (int i = 0; i < batchSize; i++) {
+            track.fill(i, location);
+            mPosts.add(new LocationPost(location));
+        }
+        mEncoded = LocationBatchCodec.encode(mPosts);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return LocationBatchCodec.encode(mPosts);
+    }
+
+    @Benchmark
+    public List<LocationPost> decode() {
+        return LocationBatchCodec.decode(mEncoded);
+    }
+
+    @Benchmark
+    public void toMap(Blackhole bh) {
+        for (int i = 0; i < mPosts.size(); i++) {
+            bh.consume(mPosts.get(i).toMap());
+        }
+    }
+
+    @Benchmark
+    public void logLines(Blackhole bh) {
+        for (int i = 0; i < mPosts.size(); i++) {
+            LocationPost post = mPosts.get(i);
+            StringBuilder line = mLine;
+            line.setLength(0);
+            line.append("Location ");
+            CoordinateFormat.append(line, post.getLatitude(), 6).append(", ");
+            CoordinateFormat.append(line, post.getLongitude(), 6);
+            bh.consume(line.toString());
+        }
+    }
+
+    @Benchmark
+    public void logLinesDecimalFormat(Blackhole bh) {
+        for (int i = 0; i < mPosts.size(); i++) {
+            LocationPost post = mPosts.get(i);
+            bh.consume("Location " +
+                    (new DecimalFormat("#.######").format(post.getLatitude())) + ", " +
+                    (new DecimalFormat("#.######").format(post.getLongitude())));
+        }
+    }
+}
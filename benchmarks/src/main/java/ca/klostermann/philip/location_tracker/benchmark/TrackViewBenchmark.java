@@ -0,0 +1,117 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import android.graphics.Canvas;
+import android.location.Location;
+import android.view.MotionEvent;
+
+import ca.klostermann.philip.location_tracker.TrackView;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame times of the track view over a synthetic day at one fix per second:
+ * a new point and a frame while following it, a frame while panning, and
+ * loading the day when the activity binds. The canvas is a stand-in that
+ * draws nothing, so this is the view's own culling, level of detail and
+ * buffer work per frame, not rasterization. The view's frame stats are
+ * printed after each trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackViewBenchmark {
+    private static final int DAY = 24 * 60 * 60;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+    /* pixels per frame, about a fling */
+    private static final float PAN = 40;
+    /* frames of swiping in one direction before turning around */
+    private static final int SWEEP = 1000;
+
+    /* m/s */
+    @Param({"1.4", "15"})
+    public double speed;
+
+    private Tracks mTrack;
+    private final Location mLocation = new Location("fused");
+    private final Canvas mCanvas = new Canvas();
+    private TrackView mView;
+    private long mFix;
+    private float mTouchX;
+    private int mPanFrames;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mTrack = Tracks.walk(DAY, speed, 1);
+        mView = load();
+        mFix = DAY;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println("speed " + speed + ": " + mView.getPointCount() + " points, " +
+                mView.getFrameStats());
+    }
+
+    /* what MainActivity does for every MSG_LOCATION */
+    @Benchmark
+    public int followFrame() {
+        mTrack.fill(mFix++, mLocation);
+        mView.addPoint(mLocation.getTime(), mLocation.getLatitude(), mLocation.getLongitude());
+        mView.draw(mCanvas);
+        return mView.getPointCount();
+    }
+
+    /* swipes across the track and back, the buffer is rebuilt whenever it runs out */
+    @Benchmark
+    public int panFrame() {
+        float pan = (mPanFrames++ / SWEEP) % 2 == 0 ? PAN : -PAN;
+        if (mPanFrames == 1 || mTouchX + pan < 0 || mTouchX + pan > WIDTH) {
+            mTouchX = pan > 0 ? 0 : WIDTH;
+            touch(MotionEvent.ACTION_DOWN, mTouchX);
+        }
+        mTouchX += pan;
+        touch(MotionEvent.ACTION_MOVE, mTouchX);
+        mView.draw(mCanvas);
+        return mView.getPointCount();
+    }
+
+    /* MSG_TRACK with the whole day, and the first frame */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int loadDay() {
+        return load().getPointCount();
+    }
+
+    private TrackView load() {
+        TrackView view = new TrackView(null);
+        view.layout(0, 0, WIDTH, HEIGHT);
+        view.setTrack(mTrack.times, mTrack.latitudes, mTrack.longitudes);
+        view.draw(mCanvas);
+        return view;
+    }
+
+    private void touch(int action, float x) {
+        MotionEvent event = MotionEvent.obtain(0, 0, action, x, HEIGHT / 2f, 0);
+        mView.onTouchEvent(event);
+        event.recycle();
+    }
+}
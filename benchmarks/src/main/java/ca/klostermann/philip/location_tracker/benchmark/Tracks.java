@@ -0,0 +1,71 @@
+package ca.klostermann.philip.location_tracker.benchmark;
+
+import android.location.Location;
+
+import java.util.Random;
+
+/**
+ * Seeded synthetic tracks, so every run benchmarks the same input: a walk
+ * with slowly changing heading at one fix per second and noisy accuracy.
+ * Also used by the replay driver.
+ */
+public final class Tracks {
+    public static final long START_TIME = 1767225600000L; // 2026-01-01 UTC
+
+    public final long[] times;
+    public final double[] latitudes;
+    public final double[] longitudes;
+    public final float[] speeds;
+    public final float[] accuracies;
+
+    private Tracks(int length) {
+        times = new long[length];
+        latitudes = new double[length];
+        longitudes = new double[length];
+        speeds = new float[length];
+        accuracies = new float[length];
+    }
+
+    /* speed in m/s, the track starts in Vancouver */
+    public static Tracks walk(int length, double speed, long seed) {
+        Random random = new Random(seed);
+        Tracks track = new Tracks(length);
+        double latitude = 49.2827;
+        double longitude = -123.1207;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < length; i++) {
+            heading += random.nextGaussian() * 0.1;
+            double v = Math.max(0, speed + random.nextGaussian() * speed * 0.2);
+            latitude += Math.cos(heading) * v / 111320.0;
+            longitude += Math.sin(heading) * v / (111320.0 * Math.cos(Math.toRadians(latitude)));
+
+            track.times[i] = START_TIME + i * 1000L;
+            track.latitudes[i] = latitude;
+            track.longitudes[i] = longitude;
+            track.speeds[i] = (float)v;
+            track.accuracies[i] = (float)(4 + random.nextDouble() * 12);
+        }
+        return track;
+    }
+
+    public int length() {
+        return times.length;
+    }
+
+    /* fix n of an endless replay going back and forth along the track, so
+     * positions never jump and time keeps increasing */
+    public void fill(long n, Location location) {
+        int length = times.length;
+        long lap = n / length;
+        int i = (int)(n % length);
+        if (lap % 2 == 1) {
+            i = length - 1 - i;
+        }
+        location.setTime(START_TIME + n * 1000L);
+        location.setLatitude(latitudes[i]);
+        location.setLongitude(longitudes[i]);
+        location.setSpeed(speeds[i]);
+        location.setAccuracy(accuracies[i]);
+        location.setAltitude(70);
+    }
+}
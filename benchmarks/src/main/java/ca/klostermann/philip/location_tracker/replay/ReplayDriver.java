@@ -0,0 +1,356 @@
+package ca.klostermann.philip.location_tracker.replay;
+
+import android.location.Location;
+
+import ca.klostermann.philip.location_tracker.AdaptiveSamplingPolicy;
+import ca.klostermann.philip.location_tracker.DayBucket;
+import ca.klostermann.philip.location_tracker.FixProcessor;
+import ca.klostermann.philip.location_tracker.FixedSamplingPolicy;
+import ca.klostermann.philip.location_tracker.Geofence;
+import ca.klostermann.philip.location_tracker.GeofenceEngine;
+import ca.klostermann.philip.location_tracker.LocationHistoryStore;
+import ca.klostermann.philip.location_tracker.LocationKalmanFilter;
+import ca.klostermann.philip.location_tracker.LocationOutbox;
+import ca.klostermann.philip.location_tracker.LocationPost;
+import ca.klostermann.philip.location_tracker.SamplingPolicy;
+import ca.klostermann.philip.location_tracker.TrajectorySimplifier;
+import ca.klostermann.philip.location_tracker.benchmark.Tracks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a recorded track through the service's fix path: the same
+ * FixProcessor as TrackerService, with the real outbox and history store
+ * in a temporary directory and the upload batching on a virtual clock, so
+ * hours of driving replay in well under a second.
+ *
+ *   --track drive.gpx|drive.csv (or --synthetic 86400 for a day of driving)
+ *   --interval-s 1 --adaptive --tolerance-m 10 --hold-s 60
+ *   --batch-size 20 --max-age-s 120 --ack-ms 500 --compact
+ *   --accuracy-m 10 (for fixes without one) --json results.json
+ *
+ * Fixes come in as recorded, except that one arriving sooner than 90% of
+ * the sampling interval after the last delivered one is skipped, as the
+ * fused provider would not have delivered it. Days are UTC days.
+ *
+ * Reported are the points and bytes uploaded, the bytes written to disk,
+ * the simulated wake time (processing every fix and handing over and
+ * acknowledging every write, as measured) and the time spent per stage of
+ * the fix path.
+ */
+public class ReplayDriver {
+    public static void main(String[] args) throws IOException {
+        File trackFile = null;
+        int synthetic = 0;
+        int intervalSeconds = 1;
+        boolean adaptive = false;
+        int toleranceMeters = 10;
+        int holdSeconds = 60;
+        int batchSize = 20;
+        int maxAgeSeconds = 120;
+        int ackMillis = 500;
+        boolean compact = false;
+        float accuracy = 10;
+        String jsonFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--track": trackFile = new File(args[++i]); break;
+                case "--synthetic": synthetic = Integer.parseInt(args[++i]); break;
+                case "--interval-s": intervalSeconds = Integer.parseInt(args[++i]); break;
+                case "--adaptive": adaptive = true; break;
+                case "--tolerance-m": toleranceMeters = Integer.parseInt(args[++i]); break;
+                case "--hold-s": holdSeconds = Integer.parseInt(args[++i]); break;
+                case "--batch-size": batchSize = Integer.parseInt(args[++i]); break;
+                case "--max-age-s": maxAgeSeconds = Integer.parseInt(args[++i]); break;
+                case "--ack-ms": ackMillis = Integer.parseInt(args[++i]); break;
+                case "--compact": compact = true; break;
+                case "--accuracy-m": accuracy = Float.parseFloat(args[++i]); break;
+                case "--json": jsonFile = args[++i]; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        List<Location> fixes;
+        if (trackFile != null) {
+            fixes = TrackFile.read(trackFile, accuracy);
+        } else if (synthetic > 0) {
+            fixes = new ArrayList<>(synthetic);
+            Tracks track = Tracks.walk(synthetic, 15, 1);
+            for (int i = 0; i < synthetic; i++) {
+                Location fix = new Location("synthetic");
+                track.fill(i, fix);
+                fixes.add(fix);
+            }
+        } else {
+            System.err.println("Need --track <file> or --synthetic <fixes>");
+            System.exit(2);
+            return;
+        }
+        if (fixes.size() < 2) {
+            System.err.println("Nothing to replay");
+            System.exit(1);
+        }
+
+        SamplingPolicy policy = adaptive
+                ? new AdaptiveSamplingPolicy(intervalSeconds * 1000L)
+                : new FixedSamplingPolicy(intervalSeconds * 1000L);
+
+        File dir = File.createTempFile("replay", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Can't create " + dir);
+        }
+        try {
+            Map<String, Object> report = new ReplayDriver(policy, toleranceMeters,
+                    holdSeconds * 1000L, batchSize, maxAgeSeconds * 1000L, ackMillis, compact, dir)
+                    .replay(fixes);
+            print(report);
+            if (jsonFile != null) {
+                Writer out = new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8");
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    writeJson(report, sb);
+                    out.write(sb.toString());
+                } finally {
+                    out.close();
+                }
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private final VirtualClock mClock = new VirtualClock();
+    private final WakeTime mWakeTime = new WakeTime();
+    private final SamplingPolicy mSamplingPolicy;
+    private final FixProcessor mProcessor;
+    private final LocationOutbox mOutbox;
+    private final LocationHistoryStore mHistory;
+    private final ReplayUploader mUploader;
+    private final long mHoldMillis;
+
+    private VirtualClock.Task mHeldFlush;
+    private long mSamplingChanges;
+    private long mGeofenceEvents;
+
+    ReplayDriver(SamplingPolicy samplingPolicy, int toleranceMeters, long holdMillis,
+                 int batchSize, long maxAgeMillis, long ackMillis, boolean compact, File dir)
+            throws IOException {
+        LocationPost.setDayBucket(DayBucket.utc());
+        mSamplingPolicy = samplingPolicy;
+        mHoldMillis = holdMillis;
+        mOutbox = new LocationOutbox(new File(dir, "outbox"));
+        mHistory = new LocationHistoryStore(new File(dir, "history"), 90, 64 * 1024 * 1024);
+        mUploader = new ReplayUploader(mClock, mOutbox, mWakeTime, batchSize, maxAgeMillis,
+                ackMillis, compact);
+
+        GeofenceEngine geofences = new GeofenceEngine(new GeofenceEngine.Listener() {
+            @Override
+            public void onGeofenceEvent(Geofence fence, String event, long time, double latitude,
+                                        double longitude) {
+                mGeofenceEvents++;
+            }
+        });
+        mProcessor = new FixProcessor(new LocationKalmanFilter(), samplingPolicy, geofences,
+                new TrajectorySimplifier(toleranceMeters, 120), new FixProcessor.Listener() {
+                    @Override
+                    public void onSamplingChanged() {
+                        mSamplingChanges++;
+                    }
+
+                    @Override
+                    public void onReported(LocationPost post) {
+                        try {
+                            mHistory.append(post);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+
+                    @Override
+                    public void onKept(LocationPost post) {
+                        try {
+                            mOutbox.append(post);
+                        } catch (IOException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        mUploader.onQueued();
+                    }
+                });
+        mProcessor.setProfiling(true);
+    }
+
+    Map<String, Object> replay(List<Location> fixes) throws IOException {
+        long first = fixes.get(0).getTime();
+        long last = fixes.get(fixes.size() - 1).getTime();
+        mClock.advanceTo(first);
+
+        long[] fixNanos = new long[fixes.size()];
+        int delivered = 0;
+        long lastDelivered = Long.MIN_VALUE;
+        long started = System.nanoTime();
+        for (Location fix : fixes) {
+            long time = fix.getTime();
+            mClock.advanceTo(time);
+            if (lastDelivered != Long.MIN_VALUE
+                    && time - lastDelivered < mSamplingPolicy.getInterval() * 9 / 10) {
+                continue;
+            }
+            lastDelivered = time;
+
+            long t = System.nanoTime();
+            boolean reported = mProcessor.process(fix);
+            if (reported) {
+                mClock.cancel(mHeldFlush);
+                mHeldFlush = null;
+                if (mProcessor.hasHeld()) {
+                    mHeldFlush = mClock.schedule(mHoldMillis, new Runnable() {
+                        @Override
+                        public void run() {
+                            mHeldFlush = null;
+                            mProcessor.flushHeld();
+                        }
+                    });
+                }
+            }
+            long nanos = System.nanoTime() - t;
+            fixNanos[delivered++] = nanos;
+            mWakeTime.add(time * 1000000L, time * 1000000L + nanos);
+        }
+
+        /* stopping the service: release the held post and upload what is left */
+        mClock.cancel(mHeldFlush);
+        mProcessor.flushHeld();
+        mUploader.flush();
+        mClock.drain();
+        long elapsed = System.nanoTime() - started;
+        mOutbox.close();
+        mHistory.close();
+
+        return report(first, last, elapsed, Arrays.copyOf(fixNanos, delivered));
+    }
+
+    private Map<String, Object> report(long first, long last, long elapsedNanos, long[] fixNanos)
+            throws IOException {
+        long duration = last - first;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("trackSeconds", duration / 1000.0);
+        report.put("replayMillis", elapsedNanos / 1e6);
+        report.put("speedup", duration * 1e6 / Math.max(1, elapsedNanos));
+
+        Map<String, Object> fixes = new LinkedHashMap<>();
+        fixes.put("delivered", mProcessor.getFixes());
+        fixes.put("rejected", mProcessor.getRejected());
+        fixes.put("notMoved", mProcessor.getUnchanged());
+        fixes.put("reported", mProcessor.getReported());
+        fixes.put("kept", mProcessor.getKept());
+        fixes.put("samplingChanges", mSamplingChanges);
+        fixes.put("geofenceEvents", mGeofenceEvents);
+        report.put("fixes", fixes);
+
+        long[] delays = mUploader.getSortedDelays();
+        Map<String, Object> uploads = new LinkedHashMap<>();
+        uploads.put("writes", mUploader.getWrites());
+        uploads.put("maxInFlight", mUploader.getMaxInFlight());
+        uploads.put("points", mUploader.getPoints());
+        uploads.put("payloadBytes", mUploader.getPayloadBytes());
+        uploads.put("bytesPerPoint",
+                mUploader.getPayloadBytes() / (double)Math.max(1, mUploader.getPoints()));
+        uploads.put("delayP50Seconds", percentile(delays, 0.50) / 1000.0);
+        uploads.put("delayP99Seconds", percentile(delays, 0.99) / 1000.0);
+        report.put("uploads", uploads);
+
+        Map<String, Object> disk = new LinkedHashMap<>();
+        disk.put("outboxBytesWritten", mOutbox.getBytesWritten());
+        disk.put("historyBytes", mHistory.getDiskUsage());
+        report.put("disk", disk);
+
+        Map<String, Object> wake = new LinkedHashMap<>();
+        wake.put("seconds", mWakeTime.getTotalNanos() / 1e9);
+        wake.put("percentOfTrack", mWakeTime.getTotalNanos() / 1e4 / Math.max(1, duration));
+        wake.put("intervals", mWakeTime.getIntervals());
+        report.put("wake", wake);
+
+        long[] stageNanos = mProcessor.getStageNanos();
+        long count = Math.max(1, fixNanos.length);
+        Map<String, Object> stages = new LinkedHashMap<>();
+        stages.put("filter", stageNanos[FixProcessor.STAGE_FILTER] / count);
+        stages.put("sampling", stageNanos[FixProcessor.STAGE_SAMPLING] / count);
+        stages.put("geofences", stageNanos[FixProcessor.STAGE_GEOFENCES] / count);
+        stages.put("report", stageNanos[FixProcessor.STAGE_REPORT] / count);
+        stages.put("simplify", stageNanos[FixProcessor.STAGE_SIMPLIFY] / count);
+        Arrays.sort(fixNanos);
+        stages.put("fixP50", percentile(fixNanos, 0.50));
+        stages.put("fixP99", percentile(fixNanos, 0.99));
+        stages.put("fixMax", fixNanos.length > 0 ? fixNanos[fixNanos.length - 1] : 0);
+        report.put("nanosPerFix", stages);
+        return report;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int)Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        for (Map.Entry<String, Object> entry : report.entrySet()) {
+            if (entry.getValue() instanceof Map) {
+                System.out.println(entry.getKey() + ":");
+                for (Map.Entry<String, Object> value :
+                        ((Map<String, Object>)entry.getValue()).entrySet()) {
+                    System.out.println("  " + value.getKey() + ": " + format(value.getValue()));
+                }
+            } else {
+                System.out.println(entry.getKey() + ": " + format(entry.getValue()));
+            }
+        }
+    }
+
+    private static String format(Object value) {
+        return value instanceof Double ? String.format("%.2f", (Double)value)
+                : String.valueOf(value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeJson(Object value, StringBuilder sb) {
+        if (value instanceof Map) {
+            sb.append('{');
+            boolean firstEntry = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>)value).entrySet()) {
+                if (!firstEntry) {
+                    sb.append(',');
+                }
+                firstEntry = false;
+                sb.append('"').append(entry.getKey()).append("\":");
+                writeJson(entry.getValue(), sb);
+            }
+            sb.append('}');
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
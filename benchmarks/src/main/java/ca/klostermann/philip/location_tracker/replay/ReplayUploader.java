@@ -0,0 +1,209 @@
+package ca.klostermann.philip.location_tracker.replay;
+
+import ca.klostermann.philip.location_tracker.LocationBatchCodec;
+import ca.klostermann.philip.location_tracker.LocationOutbox;
+import ca.klostermann.philip.location_tracker.LocationPost;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * LocationUploader's batching on the virtual clock: a write goes out once
+ * batchSize posts are queued or the oldest has waited maxAge, and while a
+ * backlog of full batches is left, up to MAX_IN_FLIGHT writes are
+ * outstanding at a time. Each is acknowledged after a fixed latency, and
+ * committed in outbox order. The outbox is the real one. Payload sizes are
+ * those of the JSON the plain or the compact format would send, with paths
+ * of typical length, the compact format sends one node per day in the
+ * batch.
+ *
+ * Like the service, the device is kept awake while a write is built and
+ * handed over and while its acknowledgement is handled, for as long as
+ * that takes here, but not for the round trip in between.
+ */
+final class ReplayUploader {
+    /* LocationUploader.MAX_BATCH_SIZE and MAX_IN_FLIGHT */
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int MAX_IN_FLIGHT = 4;
+    /* locations/<28 character uid>/<16 character device id>/<dateKey>/<push key> */
+    private static final int PATH_LENGTH = 10 + 28 + 1 + 16 + 1 + 13 + 1 + 20;
+    /* the same under location_batches/ */
+    private static final int BATCH_PATH_LENGTH = PATH_LENGTH + 7;
+
+    private static final class Write {
+        final ArrayList<LocationPost> posts;
+        boolean acked;
+
+        Write(ArrayList<LocationPost> posts) {
+            this.posts = posts;
+        }
+    }
+
+    private final VirtualClock mClock;
+    private final LocationOutbox mOutbox;
+    private final WakeTime mWakeTime;
+    private final int mBatchSize;
+    private final long mMaxAgeMillis;
+    private final long mAckMillis;
+    private final boolean mCompact;
+
+    /* oldest first */
+    private final ArrayDeque<Write> mInFlight = new ArrayDeque<>();
+    private VirtualClock.Task mAgeFlush;
+
+    private long mWrites;
+    private long mPoints;
+    private long mPayloadBytes;
+    private int mMaxInFlight;
+    /* fix time to acknowledgement, in ms, of every uploaded post */
+    private long[] mDelays = new long[1024];
+
+    ReplayUploader(VirtualClock clock, LocationOutbox outbox, WakeTime wakeTime, int batchSize,
+                   long maxAgeMillis, long ackMillis, boolean compact) {
+        mClock = clock;
+        mOutbox = outbox;
+        mWakeTime = wakeTime;
+        mBatchSize = Math.min(MAX_BATCH_SIZE, Math.max(1, batchSize));
+        mMaxAgeMillis = maxAgeMillis;
+        mAckMillis = ackMillis;
+        mCompact = compact;
+    }
+
+    void onQueued() {
+        if (mOutbox.getUnreadCount() >= mBatchSize) {
+            flush();
+        } else if (mAgeFlush == null) {
+            mAgeFlush = mClock.schedule(mMaxAgeMillis, new Runnable() {
+                @Override
+                public void run() {
+                    mAgeFlush = null;
+                    flush();
+                }
+            });
+        }
+    }
+
+    void flush() {
+        if (mInFlight.size() >= MAX_IN_FLIGHT) {
+            return;
+        }
+        mClock.cancel(mAgeFlush);
+        mAgeFlush = null;
+
+        /* the first write takes whatever is queued, more only go out for full batches */
+        if (startWrite()) {
+            while (mInFlight.size() < MAX_IN_FLIGHT && mOutbox.getUnreadCount() >= mBatchSize
+                    && startWrite()) {
+            }
+        }
+    }
+
+    private boolean startWrite() {
+        long started = System.nanoTime();
+        ArrayList<LocationPost> posts = new ArrayList<>();
+        try {
+            mOutbox.peek(MAX_BATCH_SIZE, posts);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        if (posts.isEmpty()) {
+            return false;
+        }
+
+        mPayloadBytes += mCompact ? compactBytes(posts) : plainBytes(posts);
+        final Write write = new Write(posts);
+        mInFlight.add(write);
+        mMaxInFlight = Math.max(mMaxInFlight, mInFlight.size());
+        mClock.schedule(mAckMillis, new Runnable() {
+            @Override
+            public void run() {
+                onAcknowledged(write);
+            }
+        });
+        awake(started);
+        return true;
+    }
+
+    private void onAcknowledged(Write write) {
+        long started = System.nanoTime();
+        write.acked = true;
+        long now = mClock.now();
+        while (!mInFlight.isEmpty() && mInFlight.peek().acked) {
+            ArrayList<LocationPost> posts = mInFlight.poll().posts;
+            try {
+                mOutbox.commit(posts.size());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            mWrites++;
+            for (LocationPost post : posts) {
+                if (mPoints == mDelays.length) {
+                    mDelays = Arrays.copyOf(mDelays, mDelays.length * 2);
+                }
+                mDelays[(int)mPoints++] = now - post.getTime();
+            }
+        }
+
+        if (mOutbox.getUnreadCount() >= mBatchSize) {
+            flush();
+        } else if (mOutbox.getUnreadCount() > 0) {
+            onQueued();
+        }
+        awake(started);
+    }
+
+    /* the device was kept awake from now for as long as the work since started took */
+    private void awake(long started) {
+        long now = mClock.now() * 1000000L;
+        mWakeTime.add(now, now + System.nanoTime() - started);
+    }
+
+    long getWrites() {
+        return mWrites;
+    }
+
+    long getPoints() {
+        return mPoints;
+    }
+
+    long getPayloadBytes() {
+        return mPayloadBytes;
+    }
+
+    int getMaxInFlight() {
+        return mMaxInFlight;
+    }
+
+    long[] getSortedDelays() {
+        long[] delays = Arrays.copyOf(mDelays, (int)mPoints);
+        Arrays.sort(delays);
+        return delays;
+    }
+
+    /* {"path":{"accuracy":..,"altitude":..,...},...} */
+    private static long plainBytes(ArrayList<LocationPost> posts) {
+        long bytes = 2;
+        for (LocationPost post : posts) {
+            bytes += PATH_LENGTH + 6;
+            for (Map.Entry<String, Object> entry : post.toMap().entrySet()) {
+                bytes += entry.getKey().length() + String.valueOf(entry.getValue()).length() + 4;
+            }
+        }
+        return bytes;
+    }
+
+    /* one {"count","data","encoding","start"} node per day in the batch, data in base64 */
+    private static long compactBytes(ArrayList<LocationPost> posts) {
+        long bytes = 2;
+        for (int start = 0; start < posts.size(); ) {
+            int end = LocationBatchCodec.dayRun(posts, start);
+            int encoded = LocationBatchCodec.encode(posts.subList(start, end)).length;
+            bytes += BATCH_PATH_LENGTH + 60 + 4 * ((encoded + 2) / 3);
+            start = end;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,178 @@
+package ca.klostermann.philip.location_tracker.replay;
+
+import android.location.Location;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads recorded tracks as fixes. GPX track points need a time; their
+ * accuracy is taken from hdop (5 m per unit) if present. CSV files need a
+ * header naming the columns: time (epoch seconds or milliseconds, or
+ * ISO-8601), latitude and longitude, optionally accuracy, speed and
+ * altitude. Fixes missing an accuracy get the default one, fixes not later
+ * than the one before are dropped.
+ */
+final class TrackFile {
+    private static final double METERS_PER_HDOP = 5;
+
+    private TrackFile() {}
+
+    static List<Location> read(File file, float defaultAccuracy) throws IOException {
+        List<Location> fixes = file.getName().toLowerCase().endsWith(".gpx")
+                ? readGpx(file, defaultAccuracy) : readCsv(file, defaultAccuracy);
+
+        List<Location> ordered = new ArrayList<>(fixes.size());
+        for (Location fix : fixes) {
+            if (ordered.isEmpty() || fix.getTime() > ordered.get(ordered.size() - 1).getTime()) {
+                ordered.add(fix);
+            }
+        }
+        return ordered;
+    }
+
+    private static List<Location> readGpx(File file, float defaultAccuracy) throws IOException {
+        List<Location> fixes = new ArrayList<>();
+        InputStream in = new FileInputStream(file);
+        try {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            Location fix = null;
+            String element = null;
+            StringBuilder text = new StringBuilder();
+            while (xml.hasNext()) {
+                switch (xml.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        element = xml.getLocalName();
+                        text.setLength(0);
+                        if (element.equals("trkpt")) {
+                            fix = new Location("gpx");
+                            fix.setLatitude(Double.parseDouble(xml.getAttributeValue(null, "lat")));
+                            fix.setLongitude(Double.parseDouble(xml.getAttributeValue(null, "lon")));
+                            fix.setAccuracy(defaultAccuracy);
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                        text.append(xml.getText());
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        String name = xml.getLocalName();
+                        String value = text.toString().trim();
+                        if (fix == null) {
+                            break;
+                        } else if (name.equals("trkpt")) {
+                            if (fix.getTime() == 0) {
+                                throw new IOException("Track point without time in " + file);
+                            }
+                            fixes.add(fix);
+                            fix = null;
+                        } else if (name.equals("time")) {
+                            fix.setTime(parseTime(value));
+                        } else if (name.equals("ele")) {
+                            fix.setAltitude(Double.parseDouble(value));
+                        } else if (name.equals("hdop")) {
+                            fix.setAccuracy((float)(Double.parseDouble(value) * METERS_PER_HDOP));
+                        } else if (name.equals("speed")) {
+                            fix.setSpeed(Float.parseFloat(value));
+                        }
+                        text.setLength(0);
+                        break;
+                }
+            }
+            xml.close();
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Reading " + file + " failed: " + e);
+        } finally {
+            in.close();
+        }
+        return fixes;
+    }
+
+    private static List<Location> readCsv(File file, float defaultAccuracy) throws IOException {
+        List<Location> fixes = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String header = in.readLine();
+            if (header == null) {
+                return fixes;
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            String[] names = header.split(",");
+            for (int i = 0; i < names.length; i++) {
+                columns.put(names[i].trim().toLowerCase(), i);
+            }
+            int time = column(columns, "time", "timestamp");
+            int latitude = column(columns, "latitude", "lat");
+            int longitude = column(columns, "longitude", "lon", "lng");
+            int accuracy = column(columns, "accuracy");
+            int speed = column(columns, "speed");
+            int altitude = column(columns, "altitude", "ele");
+            if (time < 0 || latitude < 0 || longitude < 0) {
+                throw new IOException(file + " needs time, latitude and longitude columns");
+            }
+
+            String line;
+            int number = 1;
+            while ((line = in.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] values = line.split(",", -1);
+                try {
+                    Location fix = new Location("csv");
+                    fix.setTime(parseTime(values[time].trim()));
+                    fix.setLatitude(Double.parseDouble(values[latitude].trim()));
+                    fix.setLongitude(Double.parseDouble(values[longitude].trim()));
+                    fix.setAccuracy(accuracy >= 0 && !values[accuracy].trim().isEmpty()
+                            ? Float.parseFloat(values[accuracy].trim()) : defaultAccuracy);
+                    if (speed >= 0 && !values[speed].trim().isEmpty()) {
+                        fix.setSpeed(Float.parseFloat(values[speed].trim()));
+                    }
+                    if (altitude >= 0 && !values[altitude].trim().isEmpty()) {
+                        fix.setAltitude(Double.parseDouble(values[altitude].trim()));
+                    }
+                    fixes.add(fix);
+                } catch (RuntimeException e) {
+                    throw new IOException(file + ":" + number + ": " + e);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return fixes;
+    }
+
+    private static int column(Map<String, Integer> columns, String... names) {
+        for (String name : names) {
+            Integer index = columns.get(name);
+            if (index != null) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /* epoch seconds or milliseconds, or ISO-8601 with an offset */
+    private static long parseTime(String value) {
+        if (!value.isEmpty() && Character.isDigit(value.charAt(value.length() - 1))
+                && value.indexOf('-', 1) < 0) {
+            double number = Double.parseDouble(value);
+            return (long)(number < 1e11 ? number * 1000 : number);
+        }
+        return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+    }
+}
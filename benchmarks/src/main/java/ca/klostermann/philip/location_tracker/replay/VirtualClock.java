@@ -0,0 +1,75 @@
+package ca.klostermann.philip.location_tracker.replay;
+
+import java.util.PriorityQueue;
+
+/**
+ * Replay time. Tasks stand in for the handler callbacks the service
+ * schedules (held post flush, upload age flush, write acknowledgements)
+ * and run in time order as the replay advances, without any waiting.
+ */
+final class VirtualClock {
+    static final class Task implements Comparable<Task> {
+        final long time;
+        final long seq;
+        final Runnable runnable;
+        boolean cancelled;
+
+        Task(long time, long seq, Runnable runnable) {
+            this.time = time;
+            this.seq = seq;
+            this.runnable = runnable;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (time != other.time) {
+                return time < other.time ? -1 : 1;
+            }
+            return Long.compare(seq, other.seq);
+        }
+    }
+
+    private final PriorityQueue<Task> mTasks = new PriorityQueue<>();
+    private long mNow;
+    private long mSeq;
+
+    long now() {
+        return mNow;
+    }
+
+    Task schedule(long delay, Runnable runnable) {
+        Task task = new Task(mNow + delay, mSeq++, runnable);
+        mTasks.add(task);
+        return task;
+    }
+
+    void cancel(Task task) {
+        if (task != null) {
+            task.cancelled = true;
+        }
+    }
+
+    /* runs everything due up to time, then moves the clock there */
+    void advanceTo(long time) {
+        Task task;
+        while ((task = mTasks.peek()) != null && task.time <= time) {
+            mTasks.poll();
+            mNow = Math.max(mNow, task.time);
+            if (!task.cancelled) {
+                task.runnable.run();
+            }
+        }
+        mNow = Math.max(mNow, time);
+    }
+
+    /* runs until nothing is scheduled anymore */
+    void drain() {
+        Task task;
+        while ((task = mTasks.poll()) != null) {
+            mNow = Math.max(mNow, task.time);
+            if (!task.cancelled) {
+                task.runnable.run();
+            }
+        }
+    }
+}
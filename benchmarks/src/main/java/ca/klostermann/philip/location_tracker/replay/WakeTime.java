@@ -0,0 +1,35 @@
+package ca.klostermann.philip.location_tracker.replay;
+
+/**
+ * Simulated time the device is kept awake, the union of all intervals a
+ * wake lock is held for. Intervals are in nanoseconds of replay time and
+ * have to be added roughly in order of their start, which is how the
+ * replay produces them.
+ */
+final class WakeTime {
+    private long mStart = -1;
+    private long mEnd = -1;
+    private long mTotal;
+    private long mIntervals;
+
+    void add(long start, long end) {
+        mIntervals++;
+        if (start > mEnd) {
+            if (mEnd > mStart) {
+                mTotal += mEnd - mStart;
+            }
+            mStart = start;
+            mEnd = end;
+        } else {
+            mEnd = Math.max(mEnd, end);
+        }
+    }
+
+    long getTotalNanos() {
+        return mTotal + Math.max(0, mEnd - mStart);
+    }
+
+    long getIntervals() {
+        return mIntervals;
+    }
+}
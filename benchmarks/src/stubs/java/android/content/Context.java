@@ -0,0 +1,5 @@
+package android.content;
+
+/* JVM stand-in for the platform class, only there so TrackView compiles */
+public abstract class Context {
+}
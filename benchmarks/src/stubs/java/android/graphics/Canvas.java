@@ -0,0 +1,36 @@
+package android.graphics;
+
+/**
+ * JVM stand-in for the platform class, with the parts TrackView uses.
+ * Nothing is rasterized, so what a benchmark measures is the view's own
+ * work to get the lines to the canvas.
+ */
+public class Canvas {
+    private int mSaveCount = 1;
+
+    public int save() {
+        return mSaveCount++;
+    }
+
+    public void restore() {
+        if (mSaveCount <= 1) {
+            throw new IllegalStateException("Underflow in restore");
+        }
+        mSaveCount--;
+    }
+
+    public void translate(float dx, float dy) {
+    }
+
+    public void drawLines(float[] pts, int offset, int count, Paint paint) {
+        if (offset < 0 || count < 0 || offset + count > pts.length) {
+            throw new ArrayIndexOutOfBoundsException();
+        }
+    }
+
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+    }
+
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+    }
+}
@@ -0,0 +1,10 @@
+package android.graphics;
+
+/* JVM stand-in for the platform class, with the parts TrackView uses */
+public class Color {
+    public static final int RED = 0xffff0000;
+
+    public static int rgb(int red, int green, int blue) {
+        return 0xff000000 | (red << 16) | (green << 8) | blue;
+    }
+}
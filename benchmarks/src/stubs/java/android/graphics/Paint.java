@@ -0,0 +1,40 @@
+package android.graphics;
+
+/* JVM stand-in for the platform class, with the parts TrackView uses */
+public class Paint {
+    public static final int ANTI_ALIAS_FLAG = 1;
+
+    public enum Cap {
+        BUTT, ROUND, SQUARE
+    }
+
+    public enum Style {
+        FILL, STROKE, FILL_AND_STROKE
+    }
+
+    private int mFlags;
+    private int mColor;
+    private float mStrokeWidth;
+    private Cap mCap = Cap.BUTT;
+    private Style mStyle = Style.FILL;
+
+    public Paint(int flags) {
+        mFlags = flags;
+    }
+
+    public void setColor(int color) {
+        mColor = color;
+    }
+
+    public void setStrokeWidth(float width) {
+        mStrokeWidth = width;
+    }
+
+    public void setStrokeCap(Cap cap) {
+        mCap = cap;
+    }
+
+    public void setStyle(Style style) {
+        mStyle = style;
+    }
+}
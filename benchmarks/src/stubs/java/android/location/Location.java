@@ -0,0 +1,111 @@
+package android.location;
+
+/**
+ * JVM stand-in for the platform class, with the parts the shared sources
+ * use. distanceTo() is a haversine distance, close to but not the
+ * platform's ellipsoidal one.
+ */
+public class Location {
+    private static final double EARTH_RADIUS = 6371009;
+
+    private final String mProvider;
+    private long mTime;
+    private double mLatitude;
+    private double mLongitude;
+    private double mAltitude;
+    private float mSpeed;
+    private float mAccuracy;
+    private boolean mHasSpeed;
+    private boolean mHasAccuracy;
+
+    public Location(String provider) {
+        mProvider = provider;
+    }
+
+    public Location(Location l) {
+        mProvider = l.mProvider;
+        set(l);
+    }
+
+    public void set(Location l) {
+        mTime = l.mTime;
+        mLatitude = l.mLatitude;
+        mLongitude = l.mLongitude;
+        mAltitude = l.mAltitude;
+        mSpeed = l.mSpeed;
+        mAccuracy = l.mAccuracy;
+        mHasSpeed = l.mHasSpeed;
+        mHasAccuracy = l.mHasAccuracy;
+    }
+
+    public String getProvider() {
+        return mProvider;
+    }
+
+    public long getTime() {
+        return mTime;
+    }
+
+    public void setTime(long time) {
+        mTime = time;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public void setLatitude(double latitude) {
+        mLatitude = latitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public void setLongitude(double longitude) {
+        mLongitude = longitude;
+    }
+
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    public void setAltitude(double altitude) {
+        mAltitude = altitude;
+    }
+
+    public float getSpeed() {
+        return mSpeed;
+    }
+
+    public void setSpeed(float speed) {
+        mSpeed = speed;
+        mHasSpeed = true;
+    }
+
+    public boolean hasSpeed() {
+        return mHasSpeed;
+    }
+
+    public float getAccuracy() {
+        return mAccuracy;
+    }
+
+    public void setAccuracy(float accuracy) {
+        mAccuracy = accuracy;
+        mHasAccuracy = true;
+    }
+
+    public boolean hasAccuracy() {
+        return mHasAccuracy;
+    }
+
+    public float distanceTo(Location dest) {
+        double dLat = Math.toRadians(dest.mLatitude - mLatitude);
+        double dLon = Math.toRadians(dest.mLongitude - mLongitude);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(mLatitude)) * Math.cos(Math.toRadians(dest.mLatitude)) *
+                Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return (float)(2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a))));
+    }
+}
@@ -0,0 +1,22 @@
+package android.os;
+
+/* JVM stand-in for the platform class, only there so LogMessage compiles */
+public final class Parcel {
+    private Parcel() {}
+
+    public void writeLong(long value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeString(String value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public long readLong() {
+        throw new UnsupportedOperationException();
+    }
+
+    public String readString() {
+        throw new UnsupportedOperationException();
+    }
+}
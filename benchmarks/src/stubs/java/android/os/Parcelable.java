@@ -0,0 +1,14 @@
+package android.os;
+
+/* JVM stand-in for the platform interface, so LogMessage compiles */
+public interface Parcelable {
+    int describeContents();
+
+    void writeToParcel(Parcel dest, int flags);
+
+    interface Creator<T> {
+        T createFromParcel(Parcel source);
+
+        T[] newArray(int size);
+    }
+}
@@ -0,0 +1,5 @@
+package android.util;
+
+/* JVM stand-in for the platform interface, only there so TrackView compiles */
+public interface AttributeSet {
+}
@@ -0,0 +1,42 @@
+package android.view;
+
+/* JVM stand-in for the platform class, single pointer events only */
+public final class MotionEvent {
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+
+    private final int mAction;
+    private final float mX;
+    private final float mY;
+
+    private MotionEvent(int action, float x, float y) {
+        mAction = action;
+        mX = x;
+        mY = y;
+    }
+
+    public static MotionEvent obtain(long downTime, long eventTime, int action, float x,
+                                     float y, int metaState) {
+        return new MotionEvent(action, x, y);
+    }
+
+    public void recycle() {
+    }
+
+    public int getActionMasked() {
+        return mAction;
+    }
+
+    public float getX() {
+        return mX;
+    }
+
+    public float getY() {
+        return mY;
+    }
+
+    public int getPointerCount() {
+        return 1;
+    }
+}
@@ -0,0 +1,53 @@
+package android.view;
+
+import android.content.Context;
+
+/* JVM stand-in for the platform class. Single pointer events never scale. */
+public class ScaleGestureDetector {
+    public interface OnScaleGestureListener {
+        boolean onScale(ScaleGestureDetector detector);
+
+        boolean onScaleBegin(ScaleGestureDetector detector);
+
+        void onScaleEnd(ScaleGestureDetector detector);
+    }
+
+    public static class SimpleOnScaleGestureListener implements OnScaleGestureListener {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            return false;
+        }
+
+        @Override
+        public boolean onScaleBegin(ScaleGestureDetector detector) {
+            return true;
+        }
+
+        @Override
+        public void onScaleEnd(ScaleGestureDetector detector) {
+        }
+    }
+
+    public ScaleGestureDetector(Context context, OnScaleGestureListener listener) {
+    }
+
+    public boolean onTouchEvent(MotionEvent event) {
+        return true;
+    }
+
+    public boolean isInProgress() {
+        return false;
+    }
+
+    public float getScaleFactor() {
+        return 1;
+    }
+
+    public float getFocusX() {
+        return 0;
+    }
+
+    public float getFocusY() {
+        return 0;
+    }
+}
@@ -0,0 +1,59 @@
+package android.view;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+
+/**
+ * JVM stand-in for the platform class: layout() sets the size, draw()
+ * calls onDraw() and invalidate() does nothing.
+ */
+public class View {
+    private int mLeft;
+    private int mTop;
+    private int mRight;
+    private int mBottom;
+
+    public View(Context context) {
+    }
+
+    public View(Context context, AttributeSet attrs) {
+    }
+
+    public void layout(int l, int t, int r, int b) {
+        int oldWidth = getWidth();
+        int oldHeight = getHeight();
+        mLeft = l;
+        mTop = t;
+        mRight = r;
+        mBottom = b;
+        if (getWidth() != oldWidth || getHeight() != oldHeight) {
+            onSizeChanged(getWidth(), getHeight(), oldWidth, oldHeight);
+        }
+    }
+
+    public final int getWidth() {
+        return mRight - mLeft;
+    }
+
+    public final int getHeight() {
+        return mBottom - mTop;
+    }
+
+    public void invalidate() {
+    }
+
+    public void draw(Canvas canvas) {
+        onDraw(canvas);
+    }
+
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    }
+
+    protected void onDraw(Canvas canvas) {
+    }
+
+    public boolean onTouchEvent(MotionEvent event) {
+        return false;
+    }
+}
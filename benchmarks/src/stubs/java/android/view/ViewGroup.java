@@ -0,0 +1,10 @@
+package android.view;
+
+import android.content.Context;
+
+/* JVM stand-in for the platform class, only there so LogAdapter compiles */
+public abstract class ViewGroup extends View {
+    public ViewGroup(Context context) {
+        super(context);
+    }
+}
@@ -0,0 +1,18 @@
+package android.widget;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/* JVM stand-in for the platform class, there is no list to notify */
+public abstract class BaseAdapter {
+    public void notifyDataSetChanged() {
+    }
+
+    public abstract int getCount();
+
+    public abstract Object getItem(int position);
+
+    public abstract long getItemId(int position);
+
+    public abstract View getView(int position, View convertView, ViewGroup parent);
+}
@@ -0,0 +1,22 @@
+package android.widget;
+
+import android.content.Context;
+import android.view.View;
+
+/* JVM stand-in for the platform class, setText() copies the text like the
+ * platform does for a plain CharSequence */
+public class TextView extends View {
+    private CharSequence mText = "";
+
+    public TextView(Context context) {
+        super(context);
+    }
+
+    public void setText(CharSequence text) {
+        mText = text.toString();
+    }
+
+    public CharSequence getText() {
+        return mText;
+    }
+}
@@ -0,0 +1,8 @@
+package ca.klostermann.philip.location_tracker;
+
+/* JVM stand-in for the generated resource IDs the shared sources use */
+public final class R {
+    public static final class layout {
+        public static final int log_line = 0x7f030001;
+    }
+}
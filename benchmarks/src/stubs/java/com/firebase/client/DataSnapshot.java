@@ -0,0 +1,20 @@
+package com.firebase.client;
+
+/* JVM stand-in for the client class, only there so Geofence compiles */
+public class DataSnapshot {
+    public String getKey() {
+        throw new UnsupportedOperationException();
+    }
+
+    public Object getValue() {
+        throw new UnsupportedOperationException();
+    }
+
+    public DataSnapshot child(String path) {
+        throw new UnsupportedOperationException();
+    }
+
+    public Iterable<DataSnapshot> getChildren() {
+        throw new UnsupportedOperationException();
+    }
+}
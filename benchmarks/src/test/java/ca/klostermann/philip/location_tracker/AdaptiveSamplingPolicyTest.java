@@ -0,0 +1,178 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSamplingPolicyTest {
+    private static final long START = 1767225600000L;
+    private static final double LATITUDE = 49.2827;
+    private static final double LONGITUDE = -123.1207;
+
+    /* time, latitude, longitude, speed (0 if the provider had none), accuracy */
+    private static final class Fix {
+        final long time;
+        final double latitude;
+        final double longitude;
+        final float speed;
+        final float accuracy;
+
+        Fix(long time, double latitude, double longitude, float speed, float accuracy) {
+            this.time = time;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.speed = speed;
+            this.accuracy = accuracy;
+        }
+    }
+
+    /* parked with GPS jitter of a few meters, one fix every interval */
+    private static List<Fix> parked(long from, long duration, long interval, long seed) {
+        Random random = new Random(seed);
+        List<Fix> fixes = new ArrayList<>();
+        for (long t = 0; t < duration; t += interval) {
+            fixes.add(new Fix(from + t,
+                    LATITUDE + random.nextGaussian() * 5 / Geo.METERS_PER_DEGREE_LAT,
+                    LONGITUDE, 0, 10 + random.nextFloat() * 10));
+        }
+        return fixes;
+    }
+
+    /* heading north at a constant speed, optionally without provider speeds */
+    private static List<Fix> driving(long from, double latitude, long duration, long interval,
+                                     float speed, boolean reportSpeed) {
+        List<Fix> fixes = new ArrayList<>();
+        for (long t = 0; t < duration; t += interval) {
+            fixes.add(new Fix(from + t,
+                    latitude + speed * t / 1000.0 / Geo.METERS_PER_DEGREE_LAT, LONGITUDE,
+                    reportSpeed ? speed : 0, 8));
+        }
+        return fixes;
+    }
+
+    /* feeds the fixes, returns the mode after every fix that changed it as "index:mode" */
+    private static List<String> replay(SamplingPolicy policy, List<Fix> fixes) {
+        List<String> changes = new ArrayList<>();
+        for (int i = 0; i < fixes.size(); i++) {
+            Fix fix = fixes.get(i);
+            if (policy.onFix(fix.time, fix.latitude, fix.longitude, fix.speed, fix.accuracy)) {
+                changes.add(i + ":" + policy.describe());
+            }
+        }
+        return changes;
+    }
+
+    @Test
+    public void parkedBecomesStationaryOnce() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(10000);
+        List<Fix> fixes = parked(START, 20 * 60 * 1000, 10000, 1);
+
+        List<String> changes = replay(policy, fixes);
+
+        /* the first fix anchors, STATIONARY_AFTER later it is stationary */
+        int after = (int)(AdaptiveSamplingPolicy.STATIONARY_AFTER / 10000);
+        assertEquals("[" + after + ":stationary]", changes.toString());
+        assertEquals(40000, policy.getInterval());
+        assertEquals(SamplingPolicy.PRIORITY_BALANCED_POWER_ACCURACY, policy.getPriority());
+    }
+
+    @Test
+    public void stationaryIntervalIsCapped() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(10 * 60 * 1000);
+        replay(policy, parked(START, 2 * 60 * 60 * 1000, 10 * 60 * 1000, 2));
+
+        assertEquals(AdaptiveSamplingPolicy.MODE_STATIONARY, policy.getMode());
+        assertEquals(AdaptiveSamplingPolicy.MAX_STATIONARY_INTERVAL, policy.getInterval());
+    }
+
+    @Test
+    public void walkingStaysMoving() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(10000);
+        List<String> changes = replay(policy, driving(START, LATITUDE, 30 * 60 * 1000, 10000,
+                1.4f, true));
+
+        assertTrue(changes.isEmpty());
+        assertEquals(10000, policy.getInterval());
+        assertEquals(SamplingPolicy.PRIORITY_HIGH_ACCURACY, policy.getPriority());
+    }
+
+    @Test
+    public void fastModeHasHysteresis() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(20000);
+        long minute = 60 * 1000;
+        List<Fix> fixes = new ArrayList<>();
+        fixes.addAll(driving(START, LATITUDE, minute, 5000, 25, true));
+        /* between SLOW_SPEED and FAST_SPEED, stays fast */
+        fixes.addAll(driving(START + minute, LATITUDE, minute, 5000, 12, true));
+        fixes.addAll(driving(START + 2 * minute, LATITUDE, minute, 5000, 8, true));
+
+        List<String> changes = replay(policy, fixes);
+
+        assertEquals("[0:fast, 24:moving]", changes.toString());
+        assertEquals(20000, policy.getInterval());
+    }
+
+    @Test
+    public void fastHalvesTheInterval() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(20000);
+        replay(policy, driving(START, LATITUDE, 60 * 1000, 5000, 30, true));
+
+        assertEquals(AdaptiveSamplingPolicy.MODE_FAST, policy.getMode());
+        assertEquals(10000, policy.getInterval());
+        assertEquals(AdaptiveSamplingPolicy.MIN_INTERVAL, policy.getFastestInterval());
+    }
+
+    @Test
+    public void speedFromDisplacementWithoutProviderSpeed() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(20000);
+        List<String> changes = replay(policy, driving(START, LATITUDE, 60 * 1000, 5000, 25,
+                false));
+
+        /* the first fix has nothing to derive a speed from */
+        assertEquals("[1:fast]", changes.toString());
+    }
+
+    @Test
+    public void leavesStationaryWhenDrivingOff() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(10000);
+        List<Fix> fixes = parked(START, 10 * 60 * 1000, 10000, 3);
+        fixes.addAll(driving(START + 10 * 60 * 1000, LATITUDE, 60 * 1000, 10000, 5, true));
+
+        List<String> changes = replay(policy, fixes);
+
+        assertEquals(2, changes.size());
+        assertTrue(changes.get(0).endsWith(":stationary"));
+        assertTrue(changes.get(1).endsWith(":moving"));
+        assertEquals(10000, policy.getInterval());
+    }
+
+    @Test
+    public void sameFixesSameDecisions() {
+        List<Fix> fixes = parked(START, 10 * 60 * 1000, 5000, 4);
+        fixes.addAll(driving(START + 10 * 60 * 1000, LATITUDE, 10 * 60 * 1000, 5000, 20, false));
+        fixes.addAll(parked(START + 20 * 60 * 1000, 10 * 60 * 1000, 5000, 5));
+
+        List<String> first = replay(new AdaptiveSamplingPolicy(10000), fixes);
+        List<String> second = replay(new AdaptiveSamplingPolicy(10000), fixes);
+
+        assertFalse(first.isEmpty());
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void fixedNeverChanges() {
+        FixedSamplingPolicy policy = new FixedSamplingPolicy(30000);
+        List<Fix> fixes = parked(START, 30 * 60 * 1000, 10000, 6);
+        fixes.addAll(driving(START + 30 * 60 * 1000, LATITUDE, 60 * 1000, 5000, 30, true));
+
+        assertTrue(replay(policy, fixes).isEmpty());
+        assertEquals(30000, policy.getInterval());
+        assertEquals(SamplingPolicy.PRIORITY_HIGH_ACCURACY, policy.getPriority());
+    }
+}
@@ -0,0 +1,67 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoordinateFormatTest {
+    /* what the log line used before, with 0 to 8 decimals */
+    private static final DecimalFormat[] FORMATS = new DecimalFormat[9];
+
+    static {
+        String pattern = "#.########";
+        FORMATS[0] = new DecimalFormat("#", DecimalFormatSymbols.getInstance(Locale.US));
+        for (int i = 1; i < FORMATS.length; i++) {
+            FORMATS[i] = new DecimalFormat(pattern.substring(0, 2 + i),
+                    DecimalFormatSymbols.getInstance(Locale.US));
+        }
+    }
+
+    private static void assertLikeDecimalFormat(double value, int decimals) {
+        assertEquals(value + " to " + decimals, FORMATS[decimals].format(value),
+                CoordinateFormat.append(new StringBuilder(), value, decimals).toString());
+    }
+
+    @Test
+    public void matchesDecimalFormat() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            double value = (random.nextDouble() - 0.5) * 360;
+            assertLikeDecimalFormat(value, 6);
+            assertLikeDecimalFormat(value, random.nextInt(9));
+        }
+        for (double value : new double[] {0, 1, -1, 0.1, 49.2827, -123.1207, 180, -180,
+                0.000001, 0.0000004, -0.0000004, -0.0, 1e-9, 90.0000001}) {
+            assertLikeDecimalFormat(value, 6);
+        }
+    }
+
+    @Test
+    public void roundsHalfEven() {
+        /* exact halves: 2^-7 and 2^-8 at six decimals, and at fewer */
+        for (double value : new double[] {0.0078125, 0.00390625, 0.5, 1.5, 2.5, 0.125, 0.375,
+                12.0078125, 179.00390625}) {
+            for (int decimals = 0; decimals <= 8; decimals++) {
+                assertLikeDecimalFormat(value, decimals);
+            }
+        }
+        assertEquals("0.007812",
+                CoordinateFormat.append(new StringBuilder(), 0.0078125, 6).toString());
+        assertEquals("2", CoordinateFormat.append(new StringBuilder(), 2.5, 0).toString());
+
+        /* neighbours of halves, where the product alone rounds to one */
+        Random random = new Random(2);
+        for (int i = 0; i < 100000; i++) {
+            int decimals = random.nextInt(9);
+            double half = (random.nextInt(1 << 20) + 0.5) / Math.pow(10, decimals);
+            assertLikeDecimalFormat(Math.nextUp(half), decimals);
+            assertLikeDecimalFormat(Math.nextDown(half), decimals);
+            assertLikeDecimalFormat(half, decimals);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares DayBucket with the per-call GregorianCalendar computation it
+ * replaced, in zones with unusual transitions.
+ */
+public class DayBucketTest {
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY = 24 * HOUR;
+
+    /* 2010-01-01 to 2028-01-01 UTC */
+    private static final long FROM = 1262304000000L;
+    private static final long TO = 1830297600000L;
+
+    private static final String[] ZONES = {
+            /* DST starts and ends at midnight */
+            "America/Havana", "America/Santiago", "America/Asuncion", "America/Sao_Paulo",
+            /* until 2011 DST ended at 00:01, midnight came again an hour later */
+            "America/St_Johns",
+            /* half hour DST shift */
+            "Australia/Lord_Howe",
+            /* skipped 2011-12-30 when it moved across the date line */
+            "Pacific/Apia",
+            "Europe/Berlin", "Asia/Kathmandu", "Asia/Tehran", "UTC"
+    };
+
+    /* what LocationPost.getDateKey() did before, in an explicit zone */
+    private static long calendarKey(TimeZone zone, long time) {
+        Calendar calendar = new GregorianCalendar(zone);
+        calendar.setTimeInMillis(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void liveTrackMatchesCalendar() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            assertEquals(id, zone.getID());
+            DayBucket bucket = DayBucket.forZone(zone);
+            /* a fix about every 7 minutes, the way a live track asks */
+            for (long time = FROM; time < TO; time += 7 * 60 * 1000 + 13) {
+                assertEquals(id + " at " + time, calendarKey(zone, time),
+                        bucket.getDateKey(time));
+            }
+        }
+    }
+
+    @Test
+    public void transitionsMatchCalendar() {
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            DayBucket bucket = DayBucket.forZone(zone);
+            for (long hour = FROM; hour < TO; hour += HOUR) {
+                if (zone.getOffset(hour) == zone.getOffset(hour + HOUR)) {
+                    continue;
+                }
+                /* two hours around the transition, minute by minute, then a bit earlier again */
+                for (long time = hour - HOUR; time < hour + 2 * HOUR; time += 60 * 1000) {
+                    assertEquals(id + " at " + time, calendarKey(zone, time),
+                            bucket.getDateKey(time));
+                    long back = time - 3 * HOUR;
+                    assertEquals(id + " at " + back, calendarKey(zone, back),
+                            bucket.getDateKey(back));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomTimesMatchCalendar() {
+        Random random = new Random(1);
+        for (String id : ZONES) {
+            TimeZone zone = TimeZone.getTimeZone(id);
+            DayBucket bucket = DayBucket.forZone(zone);
+            for (int i = 0; i < 20000; i++) {
+                long time = FROM + (long)(random.nextDouble() * (TO - FROM));
+                assertEquals(id + " at " + time, calendarKey(zone, time),
+                        bucket.getDateKey(time));
+            }
+        }
+    }
+
+    @Test
+    public void keysAreOrderedAndClose() {
+        for (String id : ZONES) {
+            DayBucket bucket = DayBucket.forZone(TimeZone.getTimeZone(id));
+            long previous = Long.MIN_VALUE;
+            for (long time = FROM; time < TO; time += 11 * 60 * 1000) {
+                long key = bucket.getDateKey(time);
+                assertTrue(id + " at " + time, key >= previous);
+                /* at most an hour late where midnight repeats, days at most 25 hours */
+                assertTrue(id + " at " + time, key - time <= HOUR);
+                assertTrue(id + " at " + time, time - key < 25 * HOUR);
+                previous = key;
+            }
+        }
+    }
+
+    @Test
+    public void havanaMidnightTransitions() {
+        TimeZone havana = TimeZone.getTimeZone("America/Havana");
+        DayBucket bucket = DayBucket.forZone(havana);
+        /* 2024-03-10: clocks went from 00:00 to 01:00, the day is 23 hours long */
+        long march10 = 1710046800000L;
+        assertEquals(march10, calendarKey(havana, march10));
+        assertEquals(march10, bucket.getDateKey(march10));
+        assertEquals(march10 + 23 * HOUR, bucket.getDateKey(march10 + 23 * HOUR));
+        assertEquals(march10, bucket.getDateKey(march10 + 23 * HOUR - 1));
+    }
+
+    @Test
+    public void lordHoweHalfHourShift() {
+        TimeZone lordHowe = TimeZone.getTimeZone("Australia/Lord_Howe");
+        DayBucket bucket = DayBucket.forZone(lordHowe);
+        /* 2024-10-06, at 02:00 clocks went forward by 30 minutes */
+        long october6 = calendarKey(lordHowe, 1728140400000L);
+        assertEquals(october6, bucket.getDateKey(october6 + HOUR));
+        long october7 = bucket.getDateKey(october6 + 24 * HOUR);
+        assertEquals(23 * HOUR + 30 * 60 * 1000, october7 - october6);
+    }
+
+    @Test
+    public void apiaSkippedDay() {
+        TimeZone apia = TimeZone.getTimeZone("Pacific/Apia");
+        DayBucket bucket = DayBucket.forZone(apia);
+        /* 2011-12-29 00:00 -10:00, the next day was 2011-12-31 */
+        long december29 = 1325152800000L;
+        assertEquals(december29, bucket.getDateKey(december29 + 12 * HOUR));
+        long december31 = bucket.getDateKey(december29 + DAY);
+        assertEquals(DAY, december31 - december29);
+        assertEquals(calendarKey(apia, december29 + DAY), december31);
+        GregorianCalendar calendar = new GregorianCalendar(apia);
+        calendar.setTimeInMillis(december31);
+        assertEquals(31, calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    @Test
+    public void localFollowsTimeZoneChange() {
+        TimeZone saved = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+            DayBucket bucket = DayBucket.local();
+            long time = 1767225600000L + 12 * HOUR;
+            assertEquals(calendarKey(TimeZone.getDefault(), time), bucket.getDateKey(time));
+
+            TimeZone.setDefault(TimeZone.getTimeZone("America/Vancouver"));
+            bucket.onTimeZoneChanged();
+            assertEquals(calendarKey(TimeZone.getDefault(), time), bucket.getDateKey(time));
+            assertEquals("America/Vancouver", bucket.getTimeZone().getID());
+
+            /* explicit zones stay where they are */
+            DayBucket utc = DayBucket.utc();
+            utc.onTimeZoneChanged();
+            assertEquals(time - time % DAY, utc.getDateKey(time));
+        } finally {
+            TimeZone.setDefault(saved);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ca.klostermann.philip.location_tracker;
+
+import android.location.Location;
+
+import ca.klostermann.philip.location_tracker.benchmark.Tracks;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Holds the pipeline thread's part of a fix to its allocation budget: once
+ * the post pool is warm, filtering, sampling, geofences, the simplifier, the
+ * day key and the log line's text allocate nothing. What is left per fix in
+ * the service is the log line's String and LogMessage, and disk and IPC.
+ *
+ * HotSpot may scalar-replace allocations that ART would make, so this only
+ * runs interpreted: ./gradlew :benchmarks:allocationTest, which the test
+ * task depends on, passes -Xint.
+ */
+public class FixAllocationTest {
+    private static final int WARMUP = 20000;
+    private static final int FIXES = 20000;
+    /* bytes per fix, averaged, slack for the measurement itself */
+    private static final double BUDGET = 1;
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static double bytesPerFix(double speed) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        assumeTrue(((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported());
+        assumeTrue(System.getProperty("java.vm.info", "").contains("interpreted"));
+
+        Tracks track = Tracks.walk(10000, speed, 1);
+        /* a fence around every 500th fix, so the track enters and leaves them */
+        List<Geofence> fences = new ArrayList<>();
+        for (int i = 0; i < track.length(); i += 500) {
+            fences.add(Geofence.circle("f" + i, track.latitudes[i], track.longitudes[i], 200,
+                    60 * 1000));
+        }
+        final long[] events = new long[1];
+        GeofenceEngine geofences = new GeofenceEngine(new GeofenceEngine.Listener() {
+            @Override
+            public void onGeofenceEvent(Geofence fence, String event, long time,
+                                        double latitude, double longitude) {
+                events[0]++;
+            }
+        });
+        geofences.setFences(fences);
+
+        final StringBuilder line = new StringBuilder(48);
+        final long[] dateKeys = new long[1];
+        FixProcessor processor = new FixProcessor(new LocationKalmanFilter(),
+                new AdaptiveSamplingPolicy(1000), geofences, new TrajectorySimplifier(10, 120),
+                new FixProcessor.Listener() {
+                    @Override
+                    public void onSamplingChanged() {
+                    }
+
+                    /* what TrackerService does on the pipeline thread, minus disk and IPC */
+                    @Override
+                    public void onReported(LocationPost post) {
+                        dateKeys[0] += LocationPost.getDateKey(post.getTime());
+                        line.setLength(0);
+                        line.append("Location ");
+                        CoordinateFormat.append(line, post.getLatitude(), 6).append(", ");
+                        CoordinateFormat.append(line, post.getLongitude(), 6);
+                    }
+
+                    @Override
+                    public void onKept(LocationPost post) {
+                    }
+                });
+
+        Location location = new Location("fused");
+        long n = 0;
+        while (n < WARMUP) {
+            track.fill(n++, location);
+            processor.process(location);
+        }
+        long before = allocatedBytes();
+        while (n < WARMUP + FIXES) {
+            track.fill(n++, location);
+            processor.process(location);
+        }
+        double perFix = (allocatedBytes() - before) / (double)FIXES;
+
+        assertTrue(events[0] > 0);
+        assertTrue(processor.getReported() > 0);
+        return perFix;
+    }
+
+    @Test
+    public void drivingWithinBudget() {
+        double perFix = bytesPerFix(15);
+        assertTrue(perFix + " bytes per fix", perFix <= BUDGET);
+    }
+
+    @Test
+    public void walkingWithinBudget() {
+        double perFix = bytesPerFix(1.4);
+        assertTrue(perFix + " bytes per fix", perFix <= BUDGET);
+    }
+}
@@ -0,0 +1,88 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoHashTest {
+    private static final int BITS = 45;
+
+    private static boolean covered(List<long[]> ranges, long hash) {
+        for (long[] range : ranges) {
+            if (hash >= range[0] && hash < range[1]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertSortedDisjoint(List<long[]> ranges) {
+        for (int i = 0; i < ranges.size(); i++) {
+            assertTrue(ranges.get(i)[0] < ranges.get(i)[1]);
+            if (i > 0) {
+                assertTrue(ranges.get(i - 1)[1] < ranges.get(i)[0]);
+            }
+        }
+    }
+
+    /* random points of the box, wrapping across the anti-meridian if minLon > maxLon */
+    private static void assertCovers(double minLat, double minLon, double maxLat, double maxLon,
+                                     int maxCells, Random random) {
+        List<long[]> ranges = GeoHash.coveringRanges(minLat, minLon, maxLat, maxLon, BITS,
+                maxCells);
+        assertSortedDisjoint(ranges);
+        assertTrue(ranges.size() <= maxCells);
+        double width = minLon <= maxLon ? maxLon - minLon : maxLon - minLon + 360;
+        for (int i = 0; i < 2000; i++) {
+            double latitude = minLat + random.nextDouble() * (maxLat - minLat);
+            double longitude = minLon + random.nextDouble() * width;
+            if (longitude >= 180) {
+                longitude -= 360;
+            }
+            assertTrue(latitude + "," + longitude,
+                    covered(ranges, GeoHash.encode(latitude, longitude, BITS)));
+        }
+        /* and the corners */
+        assertTrue(covered(ranges, GeoHash.encode(minLat, minLon, BITS)));
+        assertTrue(covered(ranges, GeoHash.encode(maxLat, maxLon, BITS)));
+    }
+
+    @Test
+    public void rangesCoverTheBox() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            double size = Math.pow(10, -4 + random.nextDouble() * 5);
+            double minLat = -80 + random.nextDouble() * 150;
+            double minLon = -179 + random.nextDouble() * 350;
+            assertCovers(minLat, minLon, Math.min(90, minLat + size),
+                    Math.min(180, minLon + size), 64, random);
+        }
+    }
+
+    @Test
+    public void boxAcrossTheAntiMeridian() {
+        Random random = new Random(2);
+        /* Fiji, and a box most of the way around the world */
+        assertCovers(-18.5, 179.5, -16, -179.5, 64, random);
+        assertCovers(-10, 10, 10, -10, 64, random);
+
+        /* nothing on the far side of the globe */
+        List<long[]> ranges = GeoHash.coveringRanges(-18.5, 179.9, -16, -179.9, BITS, 64);
+        assertFalse(covered(ranges, GeoHash.encode(-17, 0, BITS)));
+        assertFalse(covered(ranges, GeoHash.encode(-17, 178, BITS)));
+    }
+
+    @Test
+    public void neighboursShareAPrefix() {
+        long a = GeoHash.encode(49.2827, -123.1207, BITS);
+        long b = GeoHash.encode(49.28271, -123.12071, BITS);
+        assertEquals(a >>> 20, b >>> 20);
+        assertEquals(0, GeoHash.encode(-90, -180, BITS));
+        assertEquals((1L << BITS) - 1, GeoHash.encode(90, 180, BITS));
+    }
+}
@@ -0,0 +1,90 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceEngineTest {
+    private static final long START = 1767225600000L;
+    private static final double LATITUDE = 49.2827;
+    private static final double LONGITUDE = -123.1207;
+
+    /* "id event" for every event reported */
+    private final List<String> mEvents = new ArrayList<>();
+    private final GeofenceEngine mEngine = new GeofenceEngine(new GeofenceEngine.Listener() {
+        @Override
+        public void onGeofenceEvent(Geofence fence, String event, long time, double latitude,
+                                    double longitude) {
+            mEvents.add(fence.id + " " + event);
+        }
+    });
+
+    private static double north(double meters) {
+        return LATITUDE + meters / Geo.METERS_PER_DEGREE_LAT;
+    }
+
+    /* a square of the given side centered on the origin */
+    private static Geofence square(String id, double side) {
+        double dLat = side / 2 / Geo.METERS_PER_DEGREE_LAT;
+        double dLon = side / 2 / (Geo.METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(LATITUDE)));
+        return Geofence.polygon(id,
+                new double[] {LATITUDE - dLat, LATITUDE - dLat, LATITUDE + dLat, LATITUDE + dLat},
+                new double[] {LONGITUDE - dLon, LONGITUDE + dLon, LONGITUDE + dLon, LONGITUDE - dLon},
+                0);
+    }
+
+    @Test
+    public void smallFenceEnteredWithPoorFix() {
+        mEngine.setFences(Arrays.asList(Geofence.circle("small", LATITUDE, LONGITUDE, 8, 0),
+                Geofence.circle("medium", LATITUDE, LONGITUDE, 60, 0), square("square", 40)));
+        /* a cell or Wi-Fi fix in the middle of them, the margin would be 100 m */
+        mEngine.onFix(START, LATITUDE, LONGITUDE, 100);
+        assertEquals(Arrays.asList("small enter", "medium enter", "square enter"), mEvents);
+        assertEquals(3, mEngine.getInsideCount());
+
+        mEvents.clear();
+        mEngine.onFix(START + 1000, north(250), LONGITUDE, 100);
+        assertEquals(3, mEvents.size());
+        assertEquals(0, mEngine.getInsideCount());
+    }
+
+    @Test
+    public void smallFenceNeedsHalfItsRadius() {
+        mEngine.setFences(Arrays.asList(Geofence.circle("small", LATITUDE, LONGITUDE, 10, 0)));
+        mEngine.onFix(START, north(6), LONGITUDE, 100);
+        assertTrue(mEvents.isEmpty());
+        mEngine.onFix(START + 1000, north(4), LONGITUDE, 100);
+        assertEquals(Arrays.asList("small enter"), mEvents);
+    }
+
+    @Test
+    public void largeFenceKeepsTheAccuracyMargin() {
+        mEngine.setFences(Arrays.asList(Geofence.circle("large", LATITUDE, LONGITUDE, 500, 0)));
+        /* 60 m inside with 80 m accuracy is not enough, 90 m inside is */
+        mEngine.onFix(START, north(440), LONGITUDE, 80);
+        assertTrue(mEvents.isEmpty());
+        mEngine.onFix(START + 1000, north(410), LONGITUDE, 80);
+        assertEquals(Arrays.asList("large enter"), mEvents);
+
+        /* jitter across the boundary doesn't leave it */
+        for (int i = 0; i < 20; i++) {
+            mEngine.onFix(START + 2000 + i * 1000, north(i % 2 == 0 ? 490 : 510), LONGITUDE, 20);
+        }
+        assertEquals(Arrays.asList("large enter"), mEvents);
+        mEngine.onFix(START + 30000, north(530), LONGITUDE, 20);
+        assertEquals(Arrays.asList("large enter", "large exit"), mEvents);
+    }
+
+    @Test
+    public void depthOfFences() {
+        assertEquals(8, Geofence.circle("c", LATITUDE, LONGITUDE, 8, 0).depth, 0);
+        /* the grid has a point within 40 / 16 m of the center */
+        double depth = square("s", 40).depth;
+        assertTrue(String.valueOf(depth), depth > 20 - 40 / 16.0 && depth <= 20.01);
+    }
+}
@@ -0,0 +1,181 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LocationBatchCodecTest {
+    /* 2026-01-01 23:50 UTC */
+    private static final long BEFORE_MIDNIGHT = 1767311400000L;
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private DayBucket mDayBucket;
+
+    @Before
+    public void setUp() {
+        mDayBucket = LocationPost.getDayBucket();
+        LocationPost.setDayBucket(DayBucket.utc());
+    }
+
+    @After
+    public void tearDown() {
+        LocationPost.setDayBucket(mDayBucket);
+    }
+
+    private static List<LocationPost> track(int length, long start, long interval, long seed) {
+        Random random = new Random(seed);
+        List<LocationPost> posts = new ArrayList<>(length);
+        double latitude = 49.2827;
+        double longitude = -123.1207;
+        long time = start;
+        for (int i = 0; i < length; i++) {
+            LocationPost post = new LocationPost();
+            post.setTime(time);
+            post.setLatitude(latitude);
+            post.setLongitude(longitude);
+            post.setSpeed(random.nextFloat() * 30);
+            post.setAltitude(50 + random.nextGaussian() * 10);
+            post.setAccuracy(3 + random.nextFloat() * 20);
+            posts.add(post);
+
+            latitude += random.nextGaussian() * 1e-4;
+            longitude += random.nextGaussian() * 1e-4;
+            /* jittery sampling, now and then a gap */
+            time += interval + random.nextInt(200) - 100 +
+                    (random.nextInt(50) == 0 ? 10 * 60 * 1000 : 0);
+        }
+        return posts;
+    }
+
+    private static void assertRoundTrip(List<LocationPost> posts, List<LocationPost> decoded) {
+        assertEquals(posts.size(), decoded.size());
+        for (int i = 0; i < posts.size(); i++) {
+            LocationPost a = posts.get(i);
+            LocationPost b = decoded.get(i);
+            assertEquals(a.getTime(), b.getTime());
+            assertEquals(a.getLatitude(), b.getLatitude(), 0.5e-7);
+            assertEquals(a.getLongitude(), b.getLongitude(), 0.5e-7);
+            assertEquals(a.getSpeed(), b.getSpeed(), 0.005);
+            assertEquals(a.getAltitude(), b.getAltitude(), 0.05);
+            assertEquals(a.getAccuracy(), b.getAccuracy(), 0.05);
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        for (long seed = 1; seed <= 20; seed++) {
+            List<LocationPost> posts = track(500, BEFORE_MIDNIGHT - DAY, 1000, seed);
+            assertRoundTrip(posts, LocationBatchCodec.decode(LocationBatchCodec.encode(posts)));
+        }
+    }
+
+    @Test
+    public void roundTripExtremes() {
+        List<LocationPost> posts = new ArrayList<>();
+        double[][] coordinates = {{90, 180}, {-90, -180}, {0, 0}, {-33.8688, 151.2093},
+                {89.9999999, -179.9999999}, {0, 0}};
+        long[] times = {0, 1, Long.MAX_VALUE / 4, 1000, BEFORE_MIDNIGHT, BEFORE_MIDNIGHT};
+        for (int i = 0; i < times.length; i++) {
+            LocationPost post = new LocationPost();
+            post.setTime(times[i]);
+            post.setLatitude(coordinates[i][0]);
+            post.setLongitude(coordinates[i][1]);
+            post.setAltitude(i % 2 == 0 ? -400 : 8848);
+            posts.add(post);
+        }
+        assertRoundTrip(posts, LocationBatchCodec.decode(LocationBatchCodec.encode(posts)));
+    }
+
+    @Test
+    public void emptyBatch() {
+        List<LocationPost> posts = new ArrayList<>();
+        byte[] data = LocationBatchCodec.encode(posts);
+        assertEquals(2, data.length);
+        assertTrue(LocationBatchCodec.decode(data).isEmpty());
+    }
+
+    @Test
+    public void regularTrackIsCompact() {
+        List<LocationPost> posts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            LocationPost post = new LocationPost();
+            post.setTime(BEFORE_MIDNIGHT - DAY + i * 1000L);
+            post.setLatitude(49.2827 + i * 1e-4);
+            post.setLongitude(-123.1207 + i * 5e-5);
+            post.setSpeed(12.5f);
+            post.setAltitude(42);
+            post.setAccuracy(8);
+            posts.add(post);
+        }
+        byte[] data = LocationBatchCodec.encode(posts);
+        /* unchanged deltas are one byte each, the coordinate deltas mostly two */
+        assertTrue("bytes per post " + data.length / 1000.0, data.length < 1000 * 9);
+        assertRoundTrip(posts, LocationBatchCodec.decode(data));
+    }
+
+    @Test
+    public void rejectsBadInput() {
+        byte[] data = LocationBatchCodec.encode(track(10, BEFORE_MIDNIGHT, 1000, 1));
+        for (byte[] bad : new byte[][] {new byte[0], Arrays.copyOf(data, data.length - 1),
+                {(byte)(LocationBatchCodec.VERSION + 1), 0},
+                /* a count far beyond the data, and one post more than it holds */
+                {LocationBatchCodec.VERSION, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, 0x07},
+                {LocationBatchCodec.VERSION, 2, 0, 0, 0, 0, 0, 0}}) {
+            try {
+                LocationBatchCodec.decode(bad);
+                fail("decoded " + Arrays.toString(bad));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void splitsAtDayBoundary() {
+        /* twenty minutes at 1 Hz across midnight UTC */
+        List<LocationPost> posts = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            LocationPost post = new LocationPost();
+            post.setTime(BEFORE_MIDNIGHT + i * 1000L);
+            post.setLatitude(49.2827);
+            post.setLongitude(-123.1207 + i * 1e-5);
+            posts.add(post);
+        }
+
+        int first = LocationBatchCodec.dayRun(posts, 0);
+        assertEquals(600, first);
+        assertEquals(posts.size(), LocationBatchCodec.dayRun(posts, first));
+        assertEquals(LocationPost.getDateKey(BEFORE_MIDNIGHT) + DAY,
+                LocationPost.getDateKey(posts.get(first).getTime()));
+
+        /* each day's batch decodes on its own and together they are the whole track */
+        List<LocationPost> decoded = new ArrayList<>();
+        for (int start = 0; start < posts.size(); ) {
+            int end = LocationBatchCodec.dayRun(posts, start);
+            List<LocationPost> day = LocationBatchCodec.decode(
+                    LocationBatchCodec.encode(posts.subList(start, end)));
+            for (LocationPost post : day) {
+                assertEquals(LocationPost.getDateKey(posts.get(start).getTime()),
+                        LocationPost.getDateKey(post.getTime()));
+            }
+            decoded.addAll(day);
+            start = end;
+        }
+        assertRoundTrip(posts, decoded);
+    }
+
+    @Test
+    public void singleDayIsOneRun() {
+        List<LocationPost> posts = track(100, BEFORE_MIDNIGHT - DAY / 2, 1000, 3);
+        assertEquals(posts.size(), LocationBatchCodec.dayRun(posts, 0));
+        assertEquals(posts.size(), LocationBatchCodec.dayRun(posts, posts.size() - 1));
+    }
+}
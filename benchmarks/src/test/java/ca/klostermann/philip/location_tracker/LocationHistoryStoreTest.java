@@ -0,0 +1,192 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocationHistoryStoreTest {
+    /* 2026-01-01 00:00 UTC */
+    private static final long START = 1767225600000L;
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private DayBucket mDayBucket;
+    private File mDir;
+    private LocationHistoryStore mStore;
+    /* everything appended, as stored: coordinates rounded to 1e-7 degrees */
+    private final List<LocationPost> mAppended = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mDayBucket = LocationPost.getDayBucket();
+        LocationPost.setDayBucket(DayBucket.utc());
+        mDir = new File(mFolder.getRoot(), "history");
+        mStore = new LocationHistoryStore(mDir, 90, 64 * 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+        LocationPost.setDayBucket(mDayBucket);
+    }
+
+    /* a random walk around the point, one fix every interval */
+    private void walk(long from, long to, long interval, double latitude, double longitude,
+                      long seed) throws IOException {
+        Random random = new Random(seed);
+        for (long time = from; time < to; time += interval) {
+            LocationPost post = new LocationPost();
+            post.setTime(time);
+            post.setLatitude(latitude);
+            post.setLongitude(longitude);
+            mStore.append(post);
+
+            LocationPost stored = new LocationPost();
+            stored.setTime(time);
+            stored.setLatitude(Math.round(latitude * 1e7) / 1e7);
+            stored.setLongitude(Math.round(longitude * 1e7) / 1e7);
+            mAppended.add(stored);
+
+            latitude += random.nextGaussian() * 2e-4;
+            longitude += random.nextGaussian() * 2e-4;
+            if (longitude >= 180) {
+                longitude -= 360;
+            } else if (longitude < -180) {
+                longitude += 360;
+            }
+        }
+    }
+
+    private List<Long> bruteForce(double minLat, double minLon, double maxLat, double maxLon,
+                                  long from, long to) {
+        /* in stored units, with the box rounded outwards to them like the store does */
+        long minLatE7 = (long)Math.floor(minLat * 1e7), maxLatE7 = (long)Math.ceil(maxLat * 1e7);
+        long minLonE7 = (long)Math.floor(minLon * 1e7), maxLonE7 = (long)Math.ceil(maxLon * 1e7);
+        List<Long> times = new ArrayList<>();
+        for (LocationPost post : mAppended) {
+            long lat = Math.round(post.getLatitude() * 1e7);
+            long lon = Math.round(post.getLongitude() * 1e7);
+            boolean insideLon = minLonE7 <= maxLonE7 ? lon >= minLonE7 && lon <= maxLonE7
+                    : lon >= minLonE7 || lon <= maxLonE7;
+            if (post.getTime() >= from && post.getTime() <= to && insideLon
+                    && lat >= minLatE7 && lat <= maxLatE7) {
+                times.add(post.getTime());
+            }
+        }
+        return times;
+    }
+
+    private List<Long> queryBox(double minLat, double minLon, double maxLat, double maxLon,
+                                long from, long to) throws IOException {
+        List<LocationPost> posts = new ArrayList<>();
+        mStore.queryBox(minLat, minLon, maxLat, maxLon, from, to, posts);
+        List<Long> times = new ArrayList<>();
+        for (LocationPost post : posts) {
+            times.add(post.getTime());
+        }
+        Collections.sort(times);
+        return times;
+    }
+
+    @Test
+    public void queryTimeAcrossDays() throws IOException {
+        walk(START + DAY / 2, START + 3 * DAY + DAY / 3, 60 * 1000, 49.2827, -123.1207, 1);
+        for (long[] range : new long[][] {
+                {START, START + 4 * DAY},
+                {START + DAY - 5 * 60 * 1000, START + DAY + 5 * 60 * 1000},
+                {START + 2 * DAY, START + 2 * DAY},
+                {START + 5 * DAY, START + 6 * DAY}}) {
+            List<LocationPost> posts = new ArrayList<>();
+            mStore.queryTime(range[0], range[1], posts);
+            int n = 0;
+            for (LocationPost post : mAppended) {
+                if (post.getTime() >= range[0] && post.getTime() <= range[1]) {
+                    LocationPost got = posts.get(n++);
+                    assertEquals(post.getTime(), got.getTime());
+                    assertEquals(post.getLatitude(), got.getLatitude(), 1e-9);
+                    assertEquals(post.getLongitude(), got.getLongitude(), 1e-9);
+                }
+            }
+            assertEquals(n, posts.size());
+        }
+    }
+
+    @Test
+    public void queryBoxMatchesScan() throws IOException {
+        walk(START, START + 3 * DAY + DAY / 2, 30 * 1000, 49.2827, -123.1207, 2);
+        /* the past days are indexed once the next one is opened, today is scanned */
+        for (int d = 0; d < 3; d++) {
+            assertTrue(new File(mDir, (START + d * DAY) + LocationHistoryStore.INDEX_SUFFIX)
+                    .exists());
+        }
+        assertFalse(new File(mDir, (START + 3 * DAY) + LocationHistoryStore.INDEX_SUFFIX)
+                .exists());
+
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            LocationPost center = mAppended.get(random.nextInt(mAppended.size()));
+            double size = Math.pow(10, -4 + random.nextDouble() * 3);
+            double minLat = center.getLatitude() - random.nextDouble() * size;
+            double minLon = center.getLongitude() - random.nextDouble() * size;
+            long from = START + (long)(random.nextDouble() * 4 * DAY);
+            long to = from + (long)(random.nextDouble() * 2 * DAY);
+            assertEquals(bruteForce(minLat, minLon, minLat + size, minLon + size, from, to),
+                    queryBox(minLat, minLon, minLat + size, minLon + size, from, to));
+        }
+
+        /* and the same after reopening */
+        mStore.close();
+        mStore = new LocationHistoryStore(mDir, 90, 64 * 1024 * 1024);
+        assertEquals(bruteForce(-90, -180, 90, 180, START, START + 4 * DAY),
+                queryBox(-90, -180, 90, 180, START, START + 4 * DAY));
+    }
+
+    @Test
+    public void queryBoxAcrossTheAntiMeridian() throws IOException {
+        /* around Taveuni, Fiji, which the 180th meridian runs through */
+        walk(START, START + 2 * DAY + DAY / 2, 20 * 1000, -16.8, 179.99, 4);
+        int east = 0, west = 0;
+        for (LocationPost post : mAppended) {
+            if (post.getLongitude() < 0) {
+                west++;
+            } else {
+                east++;
+            }
+        }
+        assertTrue(east > 100 && west > 100);
+
+        for (double half : new double[] {0.001, 0.01, 0.1, 1}) {
+            List<Long> expected = bruteForce(-17.5, 180 - half, -16, -180 + half,
+                    START, START + 3 * DAY);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected,
+                    queryBox(-17.5, 180 - half, -16, -180 + half, START, START + 3 * DAY));
+        }
+    }
+
+    @Test
+    public void oldestDaysAreEvicted() throws IOException {
+        mStore.close();
+        mStore = new LocationHistoryStore(mDir, 3, 64 * 1024 * 1024);
+        walk(START, START + 6 * DAY, 10 * 60 * 1000, 49.2827, -123.1207, 5);
+        List<LocationPost> posts = new ArrayList<>();
+        mStore.queryTime(START, START + 6 * DAY, posts);
+        assertEquals(START + 3 * DAY, posts.get(0).getTime());
+        assertEquals(3 * DAY / (10 * 60 * 1000), posts.size());
+    }
+}
@@ -0,0 +1,140 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocationKalmanFilterTest {
+    private static final long START = 1767225600000L;
+    private static final double LATITUDE = 49.2827;
+    private static final double LONGITUDE = -123.1207;
+    private static final double METERS_PER_DEGREE_LON =
+            Geo.METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(LATITUDE));
+
+    private static double latitude(double north) {
+        return LATITUDE + north / Geo.METERS_PER_DEGREE_LAT;
+    }
+
+    private static double longitude(double east) {
+        return LONGITUDE + east / METERS_PER_DEGREE_LON;
+    }
+
+    /* drives north at speed for the given seconds at 1 Hz with Gaussian noise, returns
+     * the RMS error of the estimate after the filter settled */
+    private static double drive(LocationKalmanFilter filter, int seconds, double speed,
+                                double noise, float accuracy, long seed) {
+        Random random = new Random(seed);
+        double squaredError = 0;
+        int counted = 0;
+        for (int i = 0; i < seconds; i++) {
+            double north = speed * i;
+            assertTrue("fix " + i + " rejected", filter.update(START + i * 1000L,
+                    latitude(north + random.nextGaussian() * noise),
+                    longitude(random.nextGaussian() * noise), accuracy));
+            if (i >= 30) {
+                double error = Geo.distance(latitude(north), LONGITUDE,
+                        filter.getLatitude(), filter.getLongitude());
+                squaredError += error * error;
+                counted++;
+            }
+        }
+        return Math.sqrt(squaredError / counted);
+    }
+
+    @Test
+    public void plausibleTrackPasses() {
+        for (long seed = 1; seed <= 10; seed++) {
+            LocationKalmanFilter filter = new LocationKalmanFilter();
+            drive(filter, 600, 25, 5, 5, seed);
+            assertEquals(0, filter.getRejectedCount());
+            assertEquals(25, filter.getSpeed(), 5);
+        }
+    }
+
+    @Test
+    public void smoothsNoise() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        /* raw fixes are off by 5 m per axis, about 7 m in total */
+        double error = drive(filter, 600, 15, 5, 5, 11);
+        assertTrue("RMS error " + error, error < 5);
+    }
+
+    @Test
+    public void keepsLowAccuracyFixes() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        drive(filter, 600, 1.4, 30, 50, 12);
+        assertEquals(0, filter.getRejectedCount());
+    }
+
+    @Test
+    public void rejectsSpeedJump() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        drive(filter, 60, 10, 3, 5, 13);
+        double latitude = filter.getLatitude();
+        double longitude = filter.getLongitude();
+
+        /* 2 km away one second later */
+        assertFalse(filter.update(START + 60 * 1000, latitude(600 + 2000), LONGITUDE, 5));
+        assertEquals(1, filter.getRejectedCount());
+        assertEquals(latitude, filter.getLatitude(), 0);
+        assertEquals(longitude, filter.getLongitude(), 0);
+
+        /* the track goes on as if nothing happened */
+        assertTrue(filter.update(START + 61 * 1000, latitude(610), LONGITUDE, 5));
+    }
+
+    @Test
+    public void rejectsAccelerationJump() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        drive(filter, 60, 10, 1, 5, 14);
+
+        /* 300 m to the side five seconds later: 60 m/s is a possible speed, but not
+         * after driving straight at 10 m/s */
+        long time = START + 64 * 1000;
+        double speed = Math.hypot(50, 300) / 5;
+        assertTrue(speed < LocationKalmanFilter.MAX_SPEED);
+        assertFalse(filter.update(time, latitude(640), longitude(300), 5));
+        assertEquals(1, filter.getRejectedCount());
+
+        /* the same fix after a long gap is plausible */
+        assertTrue(filter.update(time + LocationKalmanFilter.ACCELERATION_GATE_MAX_DT,
+                latitude(640), longitude(300), 5));
+    }
+
+    @Test
+    public void restartsAfterConsecutiveRejects() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        drive(filter, 60, 10, 1, 5, 15);
+
+        /* the estimate was wrong, e.g. the first fixes came from a cell tower */
+        double north = 50 * 1000;
+        for (int i = 1; i < LocationKalmanFilter.MAX_CONSECUTIVE_REJECTS; i++) {
+            assertFalse(filter.update(START + (60 + i) * 1000L, latitude(north), LONGITUDE, 5));
+        }
+        assertTrue(filter.update(START + (60 + LocationKalmanFilter.MAX_CONSECUTIVE_REJECTS)
+                * 1000L, latitude(north), LONGITUDE, 5));
+        assertEquals(latitude(north), filter.getLatitude(), 1e-9);
+    }
+
+    @Test
+    public void rejectsOutOfOrderFixes() {
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        drive(filter, 10, 10, 1, 5, 16);
+        assertFalse(filter.update(START + 9 * 1000, latitude(90), LONGITUDE, 5));
+        assertFalse(filter.update(START + 5 * 1000, latitude(50), LONGITUDE, 5));
+        assertEquals(2, filter.getRejectedCount());
+    }
+
+    @Test
+    public void staysAccurateFarFromTheStart() {
+        /* 3 hours at 30 m/s, the projection is re-centered along the way */
+        LocationKalmanFilter filter = new LocationKalmanFilter();
+        double error = drive(filter, 3 * 60 * 60, 30, 5, 5, 17);
+        assertEquals(0, filter.getRejectedCount());
+        assertTrue("RMS error " + error, error < 5);
+    }
+}
@@ -0,0 +1,189 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocationOutboxTest {
+    private static final long START = 1767225600000L;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private LocationOutbox mOutbox;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.getRoot(), "outbox");
+        mOutbox = new LocationOutbox(mFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mOutbox.close();
+    }
+
+    private void reopen() throws IOException {
+        mOutbox.close();
+        mOutbox = new LocationOutbox(mFile);
+    }
+
+    private static LocationPost post(int i) {
+        LocationPost post = new LocationPost();
+        post.setTime(START + i * 1000L);
+        post.setLatitude(49.2827 + i * 1e-5);
+        post.setLongitude(-123.1207 - i * 1e-5);
+        post.setAltitude(50 + i);
+        post.setSpeed(i % 30);
+        post.setAccuracy(5 + i % 7);
+        return post;
+    }
+
+    private void append(int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            mOutbox.append(post(i));
+        }
+    }
+
+    /* peeks max records and checks they are posts first, first + 1, ... */
+    private void assertPeek(int max, int first, int expected) throws IOException {
+        List<LocationPost> posts = new ArrayList<>();
+        assertEquals(expected, mOutbox.peek(max, posts));
+        assertEquals(expected, posts.size());
+        for (int i = 0; i < expected; i++) {
+            LocationPost want = post(first + i);
+            LocationPost got = posts.get(i);
+            assertEquals(want.getTime(), got.getTime());
+            assertEquals(want.getLatitude(), got.getLatitude(), 0);
+            assertEquals(want.getLongitude(), got.getLongitude(), 0);
+            assertEquals(want.getAltitude(), got.getAltitude(), 0);
+            assertEquals(want.getSpeed(), got.getSpeed(), 0);
+            assertEquals(want.getAccuracy(), got.getAccuracy(), 0);
+        }
+    }
+
+    @Test
+    public void peekCommitInOrder() throws IOException {
+        append(0, 10);
+        assertEquals(10, mOutbox.getDepth());
+        assertPeek(4, 0, 4);
+        assertPeek(4, 4, 4);
+        assertEquals(2, mOutbox.getUnreadCount());
+        assertEquals(10, mOutbox.getDepth());
+
+        mOutbox.commit(4);
+        assertEquals(6, mOutbox.getDepth());
+        assertPeek(10, 8, 2);
+        assertPeek(10, 10, 0);
+
+        /* can't commit more than was handed out */
+        mOutbox.commit(100);
+        assertEquals(0, mOutbox.getDepth());
+        assertEquals(LocationOutbox.HEADER_SIZE, mFile.length());
+    }
+
+    @Test
+    public void rewindHandsOutUncommittedAgain() throws IOException {
+        append(0, 10);
+        assertPeek(3, 0, 3);
+        mOutbox.commit(3);
+        assertPeek(5, 3, 5);
+        mOutbox.rewind();
+        assertEquals(7, mOutbox.getUnreadCount());
+        assertPeek(10, 3, 7);
+    }
+
+    @Test
+    public void cursorSurvivesReopen() throws IOException {
+        append(0, 10);
+        assertPeek(6, 0, 6);
+        mOutbox.commit(4);
+
+        /* records handed out but not committed come back after a restart */
+        reopen();
+        assertEquals(6, mOutbox.getDepth());
+        assertEquals(6, mOutbox.getUnreadCount());
+        assertPeek(10, 4, 6);
+
+        append(10, 12);
+        reopen();
+        assertPeek(10, 4, 8);
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        append(0, 5);
+        mOutbox.close();
+        /* the process died halfway through the sixth record */
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(file.length());
+            file.write(new byte[LocationOutbox.RECORD_SIZE / 2]);
+        }
+
+        mOutbox = new LocationOutbox(mFile);
+        assertEquals(5, mOutbox.getDepth());
+        assertEquals(LocationOutbox.HEADER_SIZE + 5 * LocationOutbox.RECORD_SIZE, mFile.length());
+        append(5, 7);
+        assertPeek(10, 0, 7);
+    }
+
+    @Test
+    public void badHeaderStartsOver() throws IOException {
+        append(0, 5);
+        mOutbox.close();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.writeInt(0);
+        }
+        mOutbox = new LocationOutbox(mFile);
+        assertEquals(0, mOutbox.getDepth());
+        assertEquals(LocationOutbox.HEADER_SIZE, mFile.length());
+    }
+
+    @Test
+    public void misalignedCursorRestartsAtFirstRecord() throws IOException {
+        append(0, 5);
+        mOutbox.close();
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(8);
+            file.writeLong(LocationOutbox.HEADER_SIZE + LocationOutbox.RECORD_SIZE + 3);
+        }
+        mOutbox = new LocationOutbox(mFile);
+        assertEquals(5, mOutbox.getDepth());
+        assertPeek(10, 0, 5);
+    }
+
+    @Test
+    public void compactsOnceMostOfTheFileIsDrained() throws IOException {
+        /* a bit over 4 MB of records, never drained completely */
+        int total = 120000;
+        append(0, total);
+        int committed = 0;
+        while (committed < 110000) {
+            assertPeek(500, committed, 500);
+            mOutbox.commit(500);
+            committed += 500;
+        }
+
+        int left = total - committed;
+        assertEquals(left, mOutbox.getDepth());
+        assertTrue(mFile.length() + " bytes",
+                mFile.length() < LocationOutbox.HEADER_SIZE + 20000L * LocationOutbox.RECORD_SIZE);
+
+        append(total, total + 10);
+        reopen();
+        assertEquals(left + 10, mOutbox.getDepth());
+        assertPeek(left + 10, committed, left + 10);
+    }
+}
@@ -0,0 +1,146 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogRingFileTest {
+    private static final long START = 1767225600000L;
+    private static final int CAPACITY = 1024;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static String message(int i, Random random) {
+        StringBuilder s = new StringBuilder("line " + i);
+        int pad = random.nextInt(120);
+        for (int j = 0; j < pad; j++) {
+            s.append((char)('a' + j % 26));
+        }
+        return s.toString();
+    }
+
+    /* the ring holds a suffix of what was appended, and readLast(k) is its last k */
+    private static void assertSuffix(LogRingFile ring, List<LogMessage> appended) {
+        int count = ring.size();
+        assertTrue(count <= appended.size());
+        int bytes = 0;
+        for (int i = appended.size() - count; i < appended.size(); i++) {
+            bytes += LogRingFile.RECORD_OVERHEAD + appended.get(i).message.length();
+        }
+        assertTrue(bytes + " bytes in " + count + " records", bytes <= CAPACITY);
+
+        for (int k : new int[] {1, 2, count / 2, count, count + 5}) {
+            List<LogMessage> last = ring.readLast(k);
+            int n = Math.min(k, count);
+            assertEquals(n, last.size());
+            for (int i = 0; i < n; i++) {
+                LogMessage want = appended.get(appended.size() - n + i);
+                assertEquals(want.time, last.get(i).time);
+                assertEquals(want.message, last.get(i).message);
+            }
+        }
+    }
+
+    @Test
+    public void wrapAroundEvictsOldest() throws IOException {
+        Random random = new Random(1);
+        List<LogMessage> appended = new ArrayList<>();
+        LogRingFile ring = new LogRingFile(mFolder.newFile(), CAPACITY);
+        /* many laps, checking after every append so every wrap position is seen */
+        for (int i = 0; i < 2000; i++) {
+            LogMessage log = new LogMessage(START + i, message(i, random));
+            ring.append(log.time, log.message);
+            appended.add(log);
+            assertSuffix(ring, appended);
+        }
+        /* eviction leaves no more than one record's worth of space unused */
+        assertTrue(ring.size() >= CAPACITY / (LogRingFile.RECORD_OVERHEAD + 128) - 1);
+        ring.close();
+    }
+
+    @Test
+    public void recordEndingExactlyAtCapacity() throws IOException {
+        LogRingFile ring = new LogRingFile(mFolder.newFile(), CAPACITY);
+        List<LogMessage> appended = new ArrayList<>();
+        /* four records of 256 bytes fill the data area exactly */
+        StringBuilder s = new StringBuilder();
+        while (s.length() < 256 - LogRingFile.RECORD_OVERHEAD) {
+            s.append('x');
+        }
+        for (int i = 0; i < 9; i++) {
+            LogMessage log = new LogMessage(START + i, i + s.substring(1));
+            ring.append(log.time, log.message);
+            appended.add(log);
+            assertSuffix(ring, appended);
+        }
+        assertEquals(4, ring.size());
+        ring.close();
+    }
+
+    @Test
+    public void reopenRecovers() throws IOException {
+        File file = mFolder.newFile();
+        Random random = new Random(2);
+        List<LogMessage> appended = new ArrayList<>();
+        for (int lap = 0; lap < 20; lap++) {
+            LogRingFile ring = new LogRingFile(file, CAPACITY);
+            assertSuffix(ring, appended);
+            for (int i = 0; i < 1 + random.nextInt(30); i++) {
+                LogMessage log = new LogMessage(START + appended.size(),
+                        message(appended.size(), random));
+                ring.append(log.time, log.message);
+                appended.add(log);
+            }
+            ring.close();
+        }
+    }
+
+    @Test
+    public void longMessagesAreTruncated() throws IOException {
+        LogRingFile ring = new LogRingFile(mFolder.newFile(), 4 * CAPACITY);
+        StringBuilder s = new StringBuilder();
+        while (s.length() < 3 * LogRingFile.MAX_MESSAGE_BYTES) {
+            s.append("0123456789");
+        }
+        ring.append(START, s.toString());
+        ring.append(START + 1, "short");
+        List<LogMessage> last = ring.readLast(2);
+        assertEquals(s.substring(0, LogRingFile.MAX_MESSAGE_BYTES), last.get(0).message);
+        assertEquals("short", last.get(1).message);
+        ring.close();
+    }
+
+    @Test
+    public void otherCapacityOrBadHeaderStartsOver() throws IOException {
+        File file = mFolder.newFile();
+        LogRingFile ring = new LogRingFile(file, CAPACITY);
+        ring.append(START, "kept");
+        ring.close();
+
+        ring = new LogRingFile(file, 2 * CAPACITY);
+        assertEquals(0, ring.size());
+        ring.append(START, "kept");
+        ring.close();
+
+        /* a head past the end of the data area */
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(12);
+            raw.writeInt(4 * CAPACITY);
+        }
+        ring = new LogRingFile(file, 2 * CAPACITY);
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.readLast(10).size());
+        ring.close();
+    }
+}
@@ -0,0 +1,156 @@
+package ca.klostermann.philip.location_tracker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs seeded synthetic tracks through the simplifier and checks every
+ * dropped fix against the simplified track it ended up on.
+ */
+public class TrajectorySimplifierTest {
+    private static final long START = 1767225600000L;
+    private static final double TOLERANCE = 10;
+
+    /* one fix per second, speed in m/s, turn rate and GPS noise per fix */
+    private static double[][] track(int length, double speed, double turnRate, double noise,
+                                    long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[length][2];
+        double north = 0;
+        double east = 0;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < length; i++) {
+            heading += random.nextGaussian() * turnRate;
+            north += Math.cos(heading) * speed;
+            east += Math.sin(heading) * speed;
+            points[i][0] = 49.2827 + (north + random.nextGaussian() * noise)
+                    / Geo.METERS_PER_DEGREE_LAT;
+            points[i][1] = -123.1207 + (east + random.nextGaussian() * noise)
+                    / (Geo.METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(49.2827)));
+        }
+        return points;
+    }
+
+    /* city blocks: straight runs with right angle turns */
+    private static double[][] grid(int length, long seed) {
+        Random random = new Random(seed);
+        double[][] points = new double[length][2];
+        double north = 0;
+        double east = 0;
+        double heading = 0;
+        int untilTurn = 60;
+        for (int i = 0; i < length; i++) {
+            if (--untilTurn == 0) {
+                heading += random.nextBoolean() ? Math.PI / 2 : -Math.PI / 2;
+                untilTurn = 30 + random.nextInt(90);
+            }
+            north += Math.cos(heading) * 10;
+            east += Math.sin(heading) * 10;
+            points[i][0] = 49.2827 + north / Geo.METERS_PER_DEGREE_LAT;
+            points[i][1] = -123.1207
+                    + east / (Geo.METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(49.2827)));
+        }
+        return points;
+    }
+
+    private static LocationPost post(double[][] points, int i) {
+        LocationPost post = new LocationPost();
+        post.setTime(START + i * 1000L);
+        post.setLatitude(points[i][0]);
+        post.setLongitude(points[i][1]);
+        return post;
+    }
+
+    /* returns the indexes of the kept fixes, the simplifier recycles the posts themselves */
+    private static List<Integer> simplify(TrajectorySimplifier simplifier, double[][] points) {
+        List<Integer> kept = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            LocationPost out = simplifier.offer(post(points, i));
+            if (out != null) {
+                kept.add((int)((out.getTime() - START) / 1000));
+            }
+        }
+        LocationPost held = simplifier.flush();
+        if (held != null) {
+            kept.add((int)((held.getTime() - START) / 1000));
+        }
+        return kept;
+    }
+
+    /* largest distance of any fix from the kept segment it falls between */
+    private static double maxError(double[][] points, List<Integer> kept) {
+        double max = 0;
+        for (int k = 1; k < kept.size(); k++) {
+            LocationPost a = post(points, kept.get(k - 1));
+            LocationPost b = post(points, kept.get(k));
+            for (int i = kept.get(k - 1) + 1; i < kept.get(k); i++) {
+                max = Math.max(max, TrajectorySimplifier.deviation(post(points, i), a, b));
+            }
+        }
+        return max;
+    }
+
+    private static void check(String name, double[][] points, int maxWindow) {
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(TOLERANCE, maxWindow);
+        List<Integer> kept = simplify(simplifier, points);
+
+        double error = maxError(points, kept);
+        assertEquals(0, (int)kept.get(0));
+        assertEquals(points.length - 1, (int)kept.get(kept.size() - 1));
+        for (int k = 1; k < kept.size(); k++) {
+            assertTrue(kept.get(k) > kept.get(k - 1));
+            assertTrue(kept.get(k) - kept.get(k - 1) <= maxWindow);
+        }
+        assertTrue(name + " error " + error, error <= TOLERANCE + 1e-6);
+        assertTrue(simplifier.getMaxError() <= TOLERANCE);
+        assertEquals(points.length, simplifier.getPointsIn());
+        assertEquals(kept.size(), simplifier.getPointsOut());
+    }
+
+    @Test
+    public void highway() {
+        double[][] points = track(3600, 30, 0.002, 3, 1);
+        check("highway", points, 120);
+        /* an almost straight road needs few points */
+        TrajectorySimplifier simplifier = new TrajectorySimplifier(TOLERANCE, 120);
+        assertTrue(simplify(simplifier, points).size() < points.length / 10);
+    }
+
+    @Test
+    public void winding() {
+        check("winding", track(3600, 8, 0.15, 2, 2), 120);
+    }
+
+    @Test
+    public void walking() {
+        check("walking", track(3600, 1.4, 0.05, 4, 3), 120);
+    }
+
+    @Test
+    public void cityGrid() {
+        check("grid", grid(3600, 4), 120);
+    }
+
+    @Test
+    public void parkedWithNoise() {
+        check("parked", track(3600, 0, 0, 5, 5), 120);
+    }
+
+    @Test
+    public void windowBoundsHeldFixes() {
+        check("window", track(3600, 30, 0, 0, 6), 30);
+    }
+
+    @Test
+    public void zeroToleranceKeepsEverything() {
+        double[][] points = track(100, 10, 0.1, 2, 7);
+        List<Integer> kept = simplify(new TrajectorySimplifier(0, 120), points);
+        assertEquals(points.length, kept.size());
+    }
+}
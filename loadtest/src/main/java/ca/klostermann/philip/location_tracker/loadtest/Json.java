@@ -0,0 +1,257 @@
+package ca.klostermann.philip.location_tracker.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the stand-in server and the load generator: objects
+ * become LinkedHashMaps, arrays ArrayLists, numbers Longs or Doubles.
+ */
+final class Json {
+    private final String mText;
+    private int mPos;
+
+    private Json(String text) {
+        mText = text;
+    }
+
+    static Object parse(String text) {
+        Json json = new Json(text);
+        json.skipWhitespace();
+        Object value = json.value();
+        json.skipWhitespace();
+        if (json.mPos != text.length()) {
+            throw json.error("trailing characters");
+        }
+        return value;
+    }
+
+    static String write(Object value) {
+        StringBuilder sb = new StringBuilder();
+        write(value, sb);
+        return sb.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    static void write(Object value, StringBuilder sb) {
+        if (value == null) {
+            sb.append("null");
+        } else if (value instanceof String) {
+            quote((String)value, sb);
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else if (value instanceof Map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>)value).entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                quote(entry.getKey(), sb);
+                sb.append(':');
+                write(entry.getValue(), sb);
+            }
+            sb.append('}');
+        } else if (value instanceof List) {
+            sb.append('[');
+            boolean first = true;
+            for (Object item : (List<Object>)value) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                write(item, sb);
+            }
+            sb.append(']');
+        } else {
+            throw new IllegalArgumentException("Can't write " + value.getClass());
+        }
+    }
+
+    private static void quote(String s, StringBuilder sb) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int)c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private Object value() {
+        if (mPos >= mText.length()) {
+            throw error("unexpected end");
+        }
+        char c = mText.charAt(mPos);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default: return number();
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        mPos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            mPos++;
+            return map;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("expected a key");
+            }
+            String key = string();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            map.put(key, value());
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                return map;
+            } else if (c != ',') {
+                throw error("expected , or }");
+            }
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> list = new ArrayList<>();
+        mPos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            mPos++;
+            return list;
+        }
+        while (true) {
+            skipWhitespace();
+            list.add(value());
+            skipWhitespace();
+            char c = next();
+            if (c == ']') {
+                return list;
+            } else if (c != ',') {
+                throw error("expected , or ]");
+            }
+        }
+    }
+
+    private String string() {
+        mPos++;
+        StringBuilder sb = null;
+        int start = mPos;
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                if (sb == null) {
+                    return mText.substring(start, mPos - 1);
+                }
+                return sb.append(mText, start, mPos - 1).toString();
+            }
+            if (c == '\\') {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(mText, start, mPos - 1);
+                char e = next();
+                switch (e) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        if (mPos + 4 > mText.length()) {
+                            throw error("bad escape");
+                        }
+                        sb.append((char)Integer.parseInt(mText.substring(mPos, mPos + 4), 16));
+                        mPos += 4;
+                        break;
+                    default: sb.append(e);
+                }
+                start = mPos;
+            }
+        }
+    }
+
+    private Object number() {
+        int start = mPos;
+        boolean decimal = false;
+        while (mPos < mText.length()) {
+            char c = mText.charAt(mPos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            mPos++;
+        }
+        if (start == mPos) {
+            throw error("unexpected character");
+        }
+        String s = mText.substring(start, mPos);
+        try {
+            return decimal ? (Object)Double.parseDouble(s) : (Object)Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            throw error("bad number " + s);
+        }
+    }
+
+    private Object literal(String word, Object value) {
+        if (!mText.startsWith(word, mPos)) {
+            throw error("unexpected character");
+        }
+        mPos += word.length();
+        return value;
+    }
+
+    private void skipWhitespace() {
+        while (mPos < mText.length() && Character.isWhitespace(mText.charAt(mPos))) {
+            mPos++;
+        }
+    }
+
+    private char peek() {
+        if (mPos >= mText.length()) {
+            throw error("unexpected end");
+        }
+        return mText.charAt(mPos);
+    }
+
+    private char next() {
+        char c = peek();
+        mPos++;
+        return c;
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw error("expected " + c);
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("JSON " + message + " at " + mPos);
+    }
+}
@@ -0,0 +1,357 @@
+package ca.klostermann.philip.location_tracker.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives the upload path of a stand-in server (or anything else speaking
+ * HttpBackend's protocol) the way LocationUploader does: each client is a
+ * device posting one multi-path /update per batch, one request in flight
+ * at a time, and waits for the answer before sending the next one.
+ *
+ * The track is a seeded random walk at one fix per second and keys are
+ * generated from the fix times, so the same options produce byte for byte
+ * the same requests and batch sizes can be compared on equal terms. Days
+ * are UTC days here, not the device's.
+ *
+ *   --url http://localhost:8080 --batch-sizes 1,10,50,100,500 --points 20000
+ *   --clients 1 --warmup 20 --seed 42 --json results.json
+ *
+ * Latencies are per request, measured from sending the first byte to
+ * reading the whole answer. The first --warmup requests of each client, at
+ * most a tenth of them, are left out of the percentiles.
+ */
+public class LoadGenerator {
+    private static final long START_TIME = 1767225600000L; // 2026-01-01 UTC
+    private static final long DAY = 24 * 3600 * 1000L;
+
+    private final String mUrl;
+    private final int mPoints;
+    private final int mClients;
+    private final int mWarmup;
+    private final long mSeed;
+
+    private String mUid;
+    private String mToken;
+
+    LoadGenerator(String url, int points, int clients, int warmup, long seed) {
+        mUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        mPoints = points;
+        mClients = clients;
+        mWarmup = warmup;
+        mSeed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:8080";
+        int[] batchSizes = { 1, 10, 50, 100, 500 };
+        int points = 20000;
+        int clients = 1;
+        int warmup = 20;
+        long seed = 42;
+        String jsonFile = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url": url = args[++i]; break;
+                case "--batch-sizes": batchSizes = parseInts(args[++i]); break;
+                case "--points": points = Integer.parseInt(args[++i]); break;
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--json": jsonFile = args[++i]; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(url, points, clients, warmup, seed);
+        generator.signIn("loadtest@example.com", "loadtest");
+
+        System.out.println(String.format("%6s %8s %9s %9s %9s %9s %10s %8s %7s",
+                "batch", "requests", "p50 ms", "p90 ms", "p99 ms", "max ms", "points/s",
+                "B/point", "errors"));
+        List<Object> results = new ArrayList<>();
+        for (int batchSize : batchSizes) {
+            Map<String, Object> result = generator.run(batchSize);
+            results.add(result);
+            System.out.println(String.format("%6d %8d %9.2f %9.2f %9.2f %9.2f %10.0f %8.1f %7d",
+                    batchSize, result.get("requests"), result.get("p50Ms"), result.get("p90Ms"),
+                    result.get("p99Ms"), result.get("maxMs"), result.get("pointsPerSecond"),
+                    result.get("bytesPerPoint"), result.get("errors")));
+        }
+        System.out.println("Server: " + generator.get("/stats"));
+
+        if (jsonFile != null) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("url", url);
+            report.put("points", points);
+            report.put("clients", clients);
+            report.put("warmup", warmup);
+            report.put("seed", seed);
+            report.put("results", results);
+            Writer out = new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8");
+            try {
+                out.write(Json.write(report));
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    void signIn(String email, String password) throws IOException {
+        Map<String, Object> credentials = new LinkedHashMap<>();
+        credentials.put("email", email);
+        credentials.put("password", password);
+        /* fails with EMAIL_TAKEN after the first run against the same server */
+        post("/auth/signup", Json.write(credentials), null);
+
+        Map<String, Object> response = (Map<String, Object>)Json.parse(
+                post("/auth/login", Json.write(credentials), null));
+        if (response.containsKey("error")) {
+            throw new IOException("Login failed: " + response.get("error"));
+        }
+        mUid = (String)response.get("uid");
+        mToken = (String)response.get("token");
+    }
+
+    Map<String, Object> run(final int batchSize) throws InterruptedException {
+        final List<long[]> latencies = new ArrayList<>();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final List<List<String>> bodies = new ArrayList<>();
+        for (int c = 0; c < mClients; c++) {
+            bodies.add(buildBodies("loadtest-" + c, mSeed + c, batchSize));
+            latencies.add(new long[bodies.get(c).size()]);
+        }
+
+        Thread[] threads = new Thread[mClients];
+        for (int c = 0; c < mClients; c++) {
+            final List<String> requests = bodies.get(c);
+            final long[] nanos = latencies.get(c);
+            threads[c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < requests.size(); i++) {
+                        String body = requests.get(i);
+                        long start = System.nanoTime();
+                        try {
+                            String response = post("/update", body, mToken);
+                            if (response.contains("\"error\"")) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                        nanos[i] = System.nanoTime() - start;
+                        bytes.addAndGet(body.length());
+                    }
+                }
+            });
+        }
+
+        long started = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - started;
+
+        /* percentiles without the warm up requests, at most a tenth of them,
+         * throughput over everything */
+        int measured = 0;
+        for (long[] nanos : latencies) {
+            measured += nanos.length - Math.min(mWarmup, nanos.length / 10);
+        }
+        long[] all = new long[measured];
+        int n = 0;
+        for (long[] nanos : latencies) {
+            for (int i = Math.min(mWarmup, nanos.length / 10); i < nanos.length; i++) {
+                all[n++] = nanos[i];
+            }
+        }
+        Arrays.sort(all);
+
+        long points = (long)mPoints * mClients;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("batchSize", batchSize);
+        result.put("requests", all.length);
+        result.put("p50Ms", percentile(all, 0.50));
+        result.put("p90Ms", percentile(all, 0.90));
+        result.put("p99Ms", percentile(all, 0.99));
+        result.put("maxMs", all.length > 0 ? all[all.length - 1] / 1e6 : 0.0);
+        result.put("pointsPerSecond", points / (elapsed / 1e9));
+        result.put("bytesPerPoint", bytes.get() / (double)points);
+        result.put("errors", errors.get());
+        return result;
+    }
+
+    /* the /update bodies of one device, in the shape LocationUploader writes */
+    private List<String> buildBodies(String deviceId, long seed, int batchSize) {
+        Random random = new Random(seed);
+        PushIds keys = new PushIds(seed);
+        String locations = "locations/" + mUid + "/" + deviceId + "/";
+        String dayPath = "devices/" + mUid + "/" + deviceId + "/day";
+
+        List<String> bodies = new ArrayList<>();
+        double latitude = 49.2827;
+        double longitude = -123.1207;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        long announced = -1;
+        Map<String, Object> updates = new LinkedHashMap<>();
+        int batched = 0;
+        for (int i = 0; i < mPoints; i++) {
+            long time = START_TIME + i * 1000L;
+            heading += random.nextGaussian() * 0.2;
+            double speed = Math.max(0, 1.4 + random.nextGaussian() * 0.3);
+            latitude += Math.cos(heading) * speed / 111320.0;
+            longitude += Math.sin(heading) * speed /
+                    (111320.0 * Math.cos(Math.toRadians(latitude)));
+
+            Map<String, Object> post = new LinkedHashMap<>();
+            post.put("time", time);
+            post.put("latitude", latitude);
+            post.put("longitude", longitude);
+            post.put("speed", (float)speed);
+            post.put("altitude", 70 + random.nextGaussian() * 2);
+            post.put("accuracy", (float)(5 + random.nextDouble() * 10));
+
+            long dateKey = time - time % DAY;
+            updates.put(locations + dateKey + "/" + keys.next(time), post);
+            batched++;
+            if (dateKey > announced) {
+                updates.put(dayPath, dateKey);
+                announced = dateKey;
+            }
+
+            if (batched == batchSize || i == mPoints - 1) {
+                bodies.add(Json.write(updates));
+                updates = new LinkedHashMap<>();
+                batched = 0;
+            }
+        }
+        return bodies;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int)Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    String get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)new URL(mUrl + path).openConnection();
+        try {
+            return readFully(connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private String post(String path, String body, String token) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection)new URL(mUrl + path).openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        if (token != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        byte[] bytes = body.getBytes("UTF-8");
+        connection.setFixedLengthStreamingMode(bytes.length);
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        /* read the error stream too so the connection can be kept alive */
+        InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        return in != null ? readFully(in) : "";
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static int[] parseInts(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    /* push keys like HttpBackend's, but seeded so runs are repeatable */
+    static class PushIds {
+        private static final String CHARS =
+                "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+        private final Random mRandom;
+        private final int[] mLastRandom = new int[12];
+        private long mLastTime = -1;
+
+        PushIds(long seed) {
+            mRandom = new Random(seed);
+        }
+
+        String next(long now) {
+            boolean sameTime = now == mLastTime;
+            mLastTime = now;
+
+            char[] key = new char[20];
+            for (int i = 7; i >= 0; i--) {
+                key[i] = CHARS.charAt((int)(now % 64));
+                now /= 64;
+            }
+            if (!sameTime) {
+                for (int i = 0; i < 12; i++) {
+                    mLastRandom[i] = mRandom.nextInt(64);
+                }
+            } else {
+                int i = 11;
+                while (i >= 0 && mLastRandom[i] == 63) {
+                    mLastRandom[i] = 0;
+                    i--;
+                }
+                if (i >= 0) {
+                    mLastRandom[i]++;
+                }
+            }
+            for (int i = 0; i < 12; i++) {
+                key[8 + i] = CHARS.charAt(mLastRandom[i]);
+            }
+            return new String(key);
+        }
+    }
+}
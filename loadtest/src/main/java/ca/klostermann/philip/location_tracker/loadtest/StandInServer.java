@@ -0,0 +1,302 @@
+package ca.klostermann.philip.location_tracker.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for Firebase, speaking the protocol of the app's
+ * HttpBackend. Users and data are kept in memory only. Like the database
+ * rules a user may only write below <collection>/<uid>/, and a write is
+ * applied completely or not at all.
+ *
+ * Latency and failures can be injected, drawn from a seeded random so runs
+ * with the same requests in the same order are repeatable:
+ *
+ *   --port 8080 --threads 8 --latency-ms 0 --jitter-ms 0 --error-rate 0
+ *   --seed 1 --discard (count writes without keeping them)
+ *
+ * GET /stats reports what the server has seen, POST /reset forgets the
+ * data and counters but keeps the users.
+ */
+public class StandInServer {
+    private final Map<String, String[]> mUsers = new ConcurrentHashMap<>();
+    private final Map<String, String> mTokens = new ConcurrentHashMap<>();
+    private final Map<String, Object> mData = new ConcurrentHashMap<>();
+    private final Random mRandom;
+    private final Random mTokenRandom = new Random();
+
+    private final int mLatencyMs;
+    private final int mJitterMs;
+    private final double mErrorRate;
+    private final boolean mDiscard;
+
+    private final AtomicLong mWrites = new AtomicLong();
+    private final AtomicLong mPaths = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mInjectedFailures = new AtomicLong();
+
+    StandInServer(int latencyMs, int jitterMs, double errorRate, long seed, boolean discard) {
+        mLatencyMs = latencyMs;
+        mJitterMs = jitterMs;
+        mErrorRate = errorRate;
+        mRandom = new Random(seed);
+        mDiscard = discard;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threads = 8;
+        int latencyMs = 0;
+        int jitterMs = 0;
+        double errorRate = 0;
+        long seed = 1;
+        boolean discard = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--latency-ms": latencyMs = Integer.parseInt(args[++i]); break;
+                case "--jitter-ms": jitterMs = Integer.parseInt(args[++i]); break;
+                case "--error-rate": errorRate = Double.parseDouble(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--discard": discard = true; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        /* the JDK server otherwise leaves Nagle on, which adds delayed ACK
+         * stalls of tens of milliseconds to every small response */
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        StandInServer server = new StandInServer(latencyMs, jitterMs, errorRate, seed, discard);
+        HttpServer http = server.start(new InetSocketAddress(port), threads);
+        System.out.println("Stand-in server listening on port " + http.getAddress().getPort());
+    }
+
+    HttpServer start(InetSocketAddress address, int threads) throws IOException {
+        HttpServer http = HttpServer.create(address, 0);
+        http.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (RuntimeException e) {
+                    send(exchange, 500, error("OPERATION_FAILED", e.toString()));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        http.setExecutor(Executors.newFixedThreadPool(threads));
+        http.start();
+        return http;
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+
+        if (path.equals("/stats") && method.equals("GET")) {
+            send(exchange, 200, stats());
+            return;
+        }
+        if (!method.equals("POST")) {
+            send(exchange, 405, error("OPERATION_FAILED", method + " not allowed"));
+            return;
+        }
+
+        byte[] body = read(exchange.getRequestBody());
+        Object json;
+        try {
+            json = Json.parse(new String(body, "UTF-8"));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error("OPERATION_FAILED", e.getMessage()));
+            return;
+        }
+        if (!(json instanceof Map)) {
+            send(exchange, 400, error("OPERATION_FAILED", "Expected an object"));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> request = (Map<String, Object>)json;
+
+        if (path.equals("/reset")) {
+            reset();
+            send(exchange, 200, new LinkedHashMap<String, Object>());
+            return;
+        }
+
+        if (injectDelayAndFailure()) {
+            mInjectedFailures.incrementAndGet();
+            send(exchange, 503, error("OPERATION_FAILED", "Injected failure"));
+            return;
+        }
+
+        switch (path) {
+            case "/auth/signup": signup(exchange, request); break;
+            case "/auth/login": login(exchange, request); break;
+            case "/update": update(exchange, request, body.length); break;
+            default: send(exchange, 404, error("OPERATION_FAILED", "No such endpoint " + path));
+        }
+    }
+
+    private void signup(HttpExchange exchange, Map<String, Object> request) throws IOException {
+        Object email = request.get("email");
+        Object password = request.get("password");
+        if (!(email instanceof String) || !((String)email).contains("@")) {
+            send(exchange, 400, error("INVALID_EMAIL", "The specified email address is invalid."));
+            return;
+        }
+        if (!(password instanceof String) || ((String)password).isEmpty()) {
+            send(exchange, 400, error("INVALID_PASSWORD", "The specified password is empty."));
+            return;
+        }
+        String uid;
+        synchronized (mUsers) {
+            if (mUsers.containsKey(email)) {
+                send(exchange, 400, error("EMAIL_TAKEN",
+                        "The specified email address is already in use."));
+                return;
+            }
+            uid = "standin:" + (mUsers.size() + 1);
+            mUsers.put((String)email, new String[] { (String)password, uid });
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("uid", uid);
+        send(exchange, 200, response);
+    }
+
+    private void login(HttpExchange exchange, Map<String, Object> request) throws IOException {
+        String[] user = mUsers.get(String.valueOf(request.get("email")));
+        if (user == null) {
+            send(exchange, 401, error("USER_DOES_NOT_EXIST", "The specified user does not exist."));
+            return;
+        }
+        if (!user[0].equals(request.get("password"))) {
+            send(exchange, 401, error("INVALID_PASSWORD", "The specified password is incorrect."));
+            return;
+        }
+        String token;
+        synchronized (mTokenRandom) {
+            token = Long.toHexString(mTokenRandom.nextLong()) +
+                    Long.toHexString(mTokenRandom.nextLong());
+        }
+        mTokens.put(token, user[1]);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("uid", user[1]);
+        response.put("token", token);
+        send(exchange, 200, response);
+    }
+
+    private void update(HttpExchange exchange, Map<String, Object> updates, int bytes)
+            throws IOException {
+        String auth = exchange.getRequestHeaders().getFirst("Authorization");
+        String uid = auth != null && auth.startsWith("Bearer ")
+                ? mTokens.get(auth.substring(7)) : null;
+        if (uid == null) {
+            mFailures.incrementAndGet();
+            send(exchange, 401, error("PERMISSION_DENIED", "Not signed in"));
+            return;
+        }
+        /* validate everything first, a write is all or nothing */
+        for (String path : updates.keySet()) {
+            String[] segments = path.split("/");
+            if (segments.length < 3 || !segments[1].equals(uid)) {
+                mFailures.incrementAndGet();
+                send(exchange, 403, error("PERMISSION_DENIED", "Can't write to " + path));
+                return;
+            }
+        }
+        if (!mDiscard) {
+            mData.putAll(updates);
+        }
+        mWrites.incrementAndGet();
+        mPaths.addAndGet(updates.size());
+        mBytes.addAndGet(bytes);
+        send(exchange, 200, new LinkedHashMap<String, Object>());
+    }
+
+    /* returns true if the request should fail */
+    private boolean injectDelayAndFailure() {
+        int delay;
+        boolean fail;
+        synchronized (mRandom) {
+            delay = mLatencyMs + (mJitterMs > 0 ? mRandom.nextInt(mJitterMs + 1) : 0);
+            fail = mErrorRate > 0 && mRandom.nextDouble() < mErrorRate;
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return fail;
+    }
+
+    private void reset() {
+        mData.clear();
+        mWrites.set(0);
+        mPaths.set(0);
+        mBytes.set(0);
+        mFailures.set(0);
+        mInjectedFailures.set(0);
+    }
+
+    private Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("users", mUsers.size());
+        stats.put("writes", mWrites.get());
+        stats.put("paths", mPaths.get());
+        stats.put("bytes", mBytes.get());
+        stats.put("stored", mData.size());
+        stats.put("failures", mFailures.get());
+        stats.put("injectedFailures", mInjectedFailures.get());
+        return stats;
+    }
+
+    private static Map<String, Object> error(String code, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", code);
+        error.put("message", message);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", error);
+        return response;
+    }
+
+    private static void send(HttpExchange exchange, int status, Map<String, Object> json)
+            throws IOException {
+        byte[] bytes = Json.write(json).getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}